@@ -0,0 +1,155 @@
+//
+// Fused bitmap to tensor preprocessing for the det model.
+//
+
+#include "bitmap_tensor.h"
+#include <algorithm>
+#include <cmath>
+
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+#include <arm_neon.h>
+#define BITMAP_TENSOR_NEON 1
+#endif
+
+namespace ppredictor {
+
+// RGBA byte feeding each output plane, so that the planes are B, G, R
+static const int kSrcChannel[3] = {2, 1, 0};
+
+/**
+ * Source positions and weights of every output column, computed once per
+ * (src_w, dst_w) pair
+ */
+static void prepare_columns(int src_w, int dst_w, TensorScratch &scratch) {
+  if (scratch.src_w == src_w && scratch.dst_w == dst_w) {
+    return;
+  }
+  scratch.x_ofs0.resize(dst_w);
+  scratch.x_ofs1.resize(dst_w);
+  scratch.x_beta.resize(dst_w);
+  const double scale_x = double(src_w) / dst_w;
+  for (int dx = 0; dx < dst_w; dx++) {
+    float fx = float((dx + 0.5) * scale_x - 0.5);
+    int sx = int(std::floor(fx));
+    fx -= sx;
+    if (sx < 0) {
+      sx = 0;
+      fx = 0.f;
+    }
+    if (sx >= src_w - 1) {
+      sx = src_w - 1;
+      fx = 0.f;
+    }
+    scratch.x_ofs0[dx] = sx * 4;
+    scratch.x_ofs1[dx] = std::min(sx + 1, src_w - 1) * 4;
+    scratch.x_beta[dx] = fx;
+  }
+  scratch.rows.resize(2 * 3 * dst_w);
+  scratch.src_w = src_w;
+  scratch.dst_w = dst_w;
+}
+
+/**
+ * Horizontal pass of one source row into 3 planar float rows of dst_w
+ */
+static void resize_row(const uint8_t *src_row, const TensorScratch &scratch,
+                       float *out) {
+  const int dst_w = scratch.dst_w;
+  const int *ofs0 = scratch.x_ofs0.data();
+  const int *ofs1 = scratch.x_ofs1.data();
+  const float *beta = scratch.x_beta.data();
+  for (int c = 0; c < 3; c++) {
+    const uint8_t *s = src_row + kSrcChannel[c];
+    float *o = out + c * dst_w;
+    for (int dx = 0; dx < dst_w; dx++) {
+      float v0 = s[ofs0[dx]];
+      float v1 = s[ofs1[dx]];
+      o[dx] = v0 + (v1 - v0) * beta[dx];
+    }
+  }
+}
+
+/**
+ * Vertical blend of two horizontally resized rows and normalization:
+ * out = (r0 + (r1 - r0) * beta) * mul + add
+ */
+static void blend_normalize(const float *r0, const float *r1, float beta,
+                            float mul, float add, float *out, int n) {
+  int i = 0;
+#ifdef BITMAP_TENSOR_NEON
+  float32x4_t vbeta = vdupq_n_f32(beta);
+  float32x4_t vmul = vdupq_n_f32(mul);
+  float32x4_t vadd = vdupq_n_f32(add);
+  for (; i + 4 <= n; i += 4) {
+    float32x4_t v0 = vld1q_f32(r0 + i);
+    float32x4_t v1 = vld1q_f32(r1 + i);
+    float32x4_t v = vmlaq_f32(v0, vsubq_f32(v1, v0), vbeta);
+    vst1q_f32(out + i, vmlaq_f32(vadd, v, vmul));
+  }
+#endif
+  for (; i < n; i++) {
+    float v = r0[i] + (r1[i] - r0[i]) * beta;
+    out[i] = v * mul + add;
+  }
+}
+
+void rgba_to_nchw(const uint8_t *src, int src_w, int src_h, int src_stride,
+                  int dst_w, int dst_h, const float *mean, const float *scale,
+                  float *dst, TensorScratch &scratch) {
+  if (src_w <= 0 || src_h <= 0 || dst_w <= 0 || dst_h <= 0) {
+    return;
+  }
+  prepare_columns(src_w, dst_w, scratch);
+  // a row cached by a previous image is stale
+  scratch.row_y[0] = -1;
+  scratch.row_y[1] = -1;
+
+  float mul[3];
+  float add[3];
+  for (int c = 0; c < 3; c++) {
+    mul[c] = scale[c] / 255.f;
+    add[c] = -mean[c] * scale[c];
+  }
+
+  const int row_floats = 3 * dst_w;
+  const int plane = dst_w * dst_h;
+  float *rows[2] = {scratch.rows.data(), scratch.rows.data() + row_floats};
+  const double scale_y = double(src_h) / dst_h;
+  for (int dy = 0; dy < dst_h; dy++) {
+    float fy = float((dy + 0.5) * scale_y - 0.5);
+    int sy = int(std::floor(fy));
+    fy -= sy;
+    if (sy < 0) {
+      sy = 0;
+      fy = 0.f;
+    }
+    if (sy >= src_h - 1) {
+      sy = src_h - 1;
+      fy = 0.f;
+    }
+    const int sy1 = std::min(sy + 1, src_h - 1);
+
+    // source rows only move forward, so the second cached row is usually
+    // the first one of the next output row
+    if (scratch.row_y[0] != sy && scratch.row_y[1] == sy) {
+      std::swap(rows[0], rows[1]);
+      std::swap(scratch.row_y[0], scratch.row_y[1]);
+    }
+    if (scratch.row_y[0] != sy) {
+      resize_row(src + sy * src_stride, scratch, rows[0]);
+      scratch.row_y[0] = sy;
+    }
+    if (fy > 0.f && scratch.row_y[1] != sy1) {
+      resize_row(src + sy1 * src_stride, scratch, rows[1]);
+      scratch.row_y[1] = sy1;
+    }
+    const float *r1 = fy > 0.f ? rows[1] : rows[0];
+
+    for (int c = 0; c < 3; c++) {
+      blend_normalize(rows[0] + c * dst_w, r1 + c * dst_w, fy, mul[c], add[c],
+                      dst + c * plane + dy * dst_w, dst_w);
+    }
+  }
+}
+
+} // namespace ppredictor
@@ -0,0 +1,43 @@
+//
+// Fused bitmap to tensor preprocessing for the det model.
+//
+
+#pragma once
+
+#include <cstdint>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * Buffers reused by rgba_to_nchw between calls, so a steady stream of images
+ * of the same size does not allocate
+ */
+struct TensorScratch {
+  std::vector<int> x_ofs0;   // byte offset of the left source pixel
+  std::vector<int> x_ofs1;   // byte offset of the right source pixel
+  std::vector<float> x_beta; // weight of the right source pixel
+  std::vector<float> rows;   // two horizontally resized rows, planar
+  int row_y[2] = {-1, -1};   // source row held by each half of rows
+  int src_w = -1;
+  int dst_w = -1;
+};
+
+/**
+ * Bilinear resize of an RGBA_8888 image straight into a normalized NCHW float
+ * tensor, in a single pass over the source rows: replaces the copy, cvtColor,
+ * resize, convertTo and neon_mean_scale of the old det preprocessing.
+ *
+ * Sampling follows cv::resize INTER_LINEAR (pixel centers aligned). Planes are
+ * written in BGR order, as cvtColor(RGBA2BGR) produced before, and each value
+ * is (v / 255 - mean[c]) * scale[c]. The alpha channel is ignored.
+ *
+ * @param src first pixel of the image
+ * @param src_stride bytes between two source rows
+ * @param dst output of 3 * dst_w * dst_h floats
+ */
+void rgba_to_nchw(const uint8_t *src, int src_w, int src_h, int src_stride,
+                  int dst_w, int dst_h, const float *mean, const float *scale,
+                  float *dst, TensorScratch &scratch);
+
+} // namespace ppredictor
@@ -3,6 +3,7 @@
 //
 
 #pragma once
+#import <chrono>
 #import <numeric>
 #import <vector>
 
@@ -35,3 +36,12 @@ template <typename T> inline T product(const std::vector<T> &vec) {
   }
   return std::accumulate(vec.begin(), vec.end(), 1, std::multiplies<T>());
 }
+
+/**
+ * Monotonic clock in milliseconds, for latency measurements
+ */
+inline double monotonic_ms() {
+  return std::chrono::duration<double, std::milli>(
+             std::chrono::steady_clock::now().time_since_epoch())
+      .count();
+}
@@ -0,0 +1,328 @@
+//
+// Greedy CTC decoding of the rec model output, optionally restricted to a
+// subset of classes and to fixed length plate grammars.
+//
+
+#include "ctc_decoder.h"
+#include <algorithm>
+#include <cmath>
+#include <utility>
+
+namespace ppredictor {
+
+static const float kNegInf = -1e30f;
+
+static inline float safe_log(float p) { return std::log(std::max(p, 1e-30f)); }
+
+void CtcDecoder::set_classes(const std::vector<int> &class_ids,
+                             const std::vector<int> &kinds) {
+  std::vector<std::pair<int, int>> classes;
+  for (size_t i = 0; i < class_ids.size(); i++) {
+    int kind = i < kinds.size() ? kinds[i] : KIND_LETTER;
+    // The blank is always scanned, and unknown kinds can not be placed
+    if (class_ids[i] > 0 && kind >= 0 && kind < KIND_NUM) {
+      classes.emplace_back(class_ids[i], kind);
+    }
+  }
+  std::sort(classes.begin(), classes.end());
+  classes.erase(std::unique(classes.begin(), classes.end(),
+                            [](const std::pair<int, int> &a,
+                               const std::pair<int, int> &b) {
+                              return a.first == b.first;
+                            }),
+                classes.end());
+  _ids.clear();
+  _kinds.clear();
+  for (int k = 0; k < KIND_NUM; k++) {
+    _ids_by_kind[k].clear();
+  }
+  for (const auto &c : classes) {
+    _ids.push_back(c.first);
+    _kinds.push_back(c.second);
+    _ids_by_kind[c.second].push_back(c.first);
+  }
+}
+
+void CtcDecoder::set_grammar(const std::vector<std::string> &patterns) {
+  _patterns.clear();
+  for (const std::string &text : patterns) {
+    std::vector<int> pattern;
+    bool valid = !text.empty();
+    for (char c : text) {
+      if (c == 'L') {
+        pattern.push_back(KIND_LETTER);
+      } else if (c == 'D') {
+        pattern.push_back(KIND_DIGIT);
+      } else {
+        valid = false;
+      }
+    }
+    if (valid) {
+      _patterns.push_back(pattern);
+    }
+  }
+}
+
+void CtcDecoder::decode(const float *probs, int time_steps, int class_num,
+                        std::vector<int> &word_index, float &score) {
+  if (_ids.empty()) {
+    decode_full(probs, time_steps, class_num, word_index, score);
+    return;
+  }
+  size_t begin = word_index.size();
+  decode_subset(probs, time_steps, class_num, word_index, score);
+  if (_patterns.empty() || matches_grammar(word_index, begin)) {
+    return;
+  }
+
+  std::vector<int> best_word;
+  float best_score = 0.f;
+  float best_log_prob = kNegInf;
+  bool found = false;
+  for (const auto &pattern : _patterns) {
+    std::vector<int> word;
+    float pattern_score = 0.f;
+    float log_prob = kNegInf;
+    if (decode_pattern(probs, time_steps, class_num, pattern, word,
+                       pattern_score, log_prob) &&
+        (!found || log_prob > best_log_prob)) {
+      best_word.swap(word);
+      best_score = pattern_score;
+      best_log_prob = log_prob;
+      found = true;
+    }
+  }
+  if (found) {
+    word_index.resize(begin);
+    word_index.insert(word_index.end(), best_word.begin(), best_word.end());
+    score = best_score;
+  }
+}
+
+void CtcDecoder::decode_full(const float *probs, int time_steps, int class_num,
+                             std::vector<int> &word_index,
+                             float &score) const {
+  int last_index = 0;
+  int count = 0;
+  score = 0.f;
+  for (int n = 0; n < time_steps; n++) {
+    // argmax and max in one pass; ties keep the first class, like argmax
+    const float *row = probs + n * class_num;
+    int argmax_idx = 0;
+    float max_value = row[0];
+    for (int c = 1; c < class_num; c++) {
+      if (row[c] > max_value) {
+        max_value = row[c];
+        argmax_idx = c;
+      }
+    }
+    if (argmax_idx > 0 && (!(n > 0 && argmax_idx == last_index))) {
+      score += max_value;
+      count += 1;
+      word_index.push_back(argmax_idx);
+    }
+    last_index = argmax_idx;
+  }
+  if (count > 0) {
+    score /= count;
+  }
+}
+
+void CtcDecoder::decode_subset(const float *probs, int time_steps,
+                               int class_num, std::vector<int> &word_index,
+                               float &score) const {
+  // Ids beyond the model output (a different dictionary) are skipped
+  const int id_num = int(std::lower_bound(_ids.begin(), _ids.end(), class_num) -
+                         _ids.begin());
+  const int *ids = _ids.data();
+  int last_index = 0;
+  int count = 0;
+  score = 0.f;
+  for (int n = 0; n < time_steps; n++) {
+    const float *row = probs + n * class_num;
+    int argmax_idx = 0;
+    float max_value = row[0];
+    for (int i = 0; i < id_num; i++) {
+      if (row[ids[i]] > max_value) {
+        max_value = row[ids[i]];
+        argmax_idx = ids[i];
+      }
+    }
+    if (argmax_idx > 0 && (!(n > 0 && argmax_idx == last_index))) {
+      score += max_value;
+      count += 1;
+      word_index.push_back(argmax_idx);
+    }
+    last_index = argmax_idx;
+  }
+  if (count > 0) {
+    score /= count;
+  }
+}
+
+int CtcDecoder::kind_of(int class_id) const {
+  auto it = std::lower_bound(_ids.begin(), _ids.end(), class_id);
+  if (it == _ids.end() || *it != class_id) {
+    return -1;
+  }
+  return _kinds[it - _ids.begin()];
+}
+
+bool CtcDecoder::matches_grammar(const std::vector<int> &word_index,
+                                 size_t begin) const {
+  const size_t length = word_index.size() - begin;
+  for (const auto &pattern : _patterns) {
+    if (pattern.size() != length) {
+      continue;
+    }
+    size_t i = 0;
+    while (i < length && kind_of(word_index[begin + i]) == pattern[i]) {
+      i++;
+    }
+    if (i == length) {
+      return true;
+    }
+  }
+  return false;
+}
+
+/**
+ * States of level k hold the paths that emitted k characters: one blank state
+ * (last frame blank) and one state per class allowed at position k (last
+ * frame is that character). Level 0 only has the blank state, which is also
+ * the start. A frame either stays in its state (blank or repeated character),
+ * moves from a blank state to a character of the next level, or moves from a
+ * character to a different character of the next level
+ */
+bool CtcDecoder::decode_pattern(const float *probs, int time_steps,
+                                int class_num, const std::vector<int> &pattern,
+                                std::vector<int> &word_index, float &score,
+                                float &log_prob) {
+  const int length = int(pattern.size());
+  if (time_steps < length) {
+    return false;
+  }
+  std::vector<int> offset(length + 2);
+  std::vector<const int *> level_ids(length + 1, nullptr);
+  std::vector<int> level_num(length + 1, 0);
+  offset[0] = 0;
+  offset[1] = 1;
+  for (int k = 1; k <= length; k++) {
+    const std::vector<int> &ids = _ids_by_kind[pattern[k - 1]];
+    level_ids[k] = ids.data();
+    level_num[k] = int(std::lower_bound(ids.begin(), ids.end(), class_num) -
+                       ids.begin());
+    if (level_num[k] == 0) {
+      return false;
+    }
+    offset[k + 1] = offset[k] + 1 + level_num[k];
+  }
+  const int state_num = offset[length + 1];
+
+  _dp_prev.assign(state_num, kNegInf);
+  _dp_cur.assign(state_num, kNegInf);
+  _backtrack.assign(size_t(time_steps) * state_num, -1);
+  _dp_prev[0] = 0.f;
+
+  for (int t = 0; t < time_steps; t++) {
+    const float *row = probs + t * class_num;
+    short *bt = _backtrack.data() + size_t(t) * state_num;
+    const float lp_blank = safe_log(row[0]);
+
+    _dp_cur[0] = _dp_prev[0] + lp_blank;
+    bt[0] = 0;
+
+    for (int k = 1; k <= length; k++) {
+      const int base = offset[k];
+      const int prev_base = offset[k - 1];
+      const int num = level_num[k];
+      const int *ids = level_ids[k];
+
+      // Blank after k characters: from any state of level k
+      int best_state = base;
+      for (int s = base + 1; s <= base + num; s++) {
+        if (_dp_prev[s] > _dp_prev[best_state]) {
+          best_state = s;
+        }
+      }
+      _dp_cur[base] = _dp_prev[best_state] + lp_blank;
+      bt[base] = short(best_state);
+
+      // Best and second best character states of level k - 1, to move to a
+      // different character without scanning them all for every target
+      int first = -1;
+      int second = -1;
+      if (k > 1) {
+        for (int s = prev_base + 1; s <= prev_base + level_num[k - 1]; s++) {
+          if (first < 0 || _dp_prev[s] > _dp_prev[first]) {
+            second = first;
+            first = s;
+          } else if (second < 0 || _dp_prev[s] > _dp_prev[second]) {
+            second = s;
+          }
+        }
+      }
+
+      for (int j = 0; j < num; j++) {
+        const int state = base + 1 + j;
+        const int class_id = ids[j];
+        int from = state;
+        float value = _dp_prev[state];
+        if (_dp_prev[prev_base] > value) {
+          from = prev_base;
+          value = _dp_prev[prev_base];
+        }
+        int other = first;
+        if (other >= 0 && level_ids[k - 1][other - prev_base - 1] == class_id) {
+          other = second;
+        }
+        if (other >= 0 && _dp_prev[other] > value) {
+          from = other;
+          value = _dp_prev[other];
+        }
+        _dp_cur[state] = value + safe_log(row[class_id]);
+        bt[state] = short(from);
+      }
+    }
+    _dp_prev.swap(_dp_cur);
+  }
+
+  int end_state = offset[length];
+  for (int s = offset[length] + 1; s < state_num; s++) {
+    if (_dp_prev[s] > _dp_prev[end_state]) {
+      end_state = s;
+    }
+  }
+  if (_dp_prev[end_state] <= kNegInf / 2) {
+    return false;
+  }
+  log_prob = _dp_prev[end_state];
+
+  // Walk back, emitting a character on every frame that entered a new level
+  std::vector<int> reversed;
+  score = 0.f;
+  int state = end_state;
+  int level = length;
+  for (int t = time_steps - 1; t >= 0; t--) {
+    const int from = _backtrack[size_t(t) * state_num + state];
+    const int from_level =
+        int(std::upper_bound(offset.begin(), offset.begin() + length + 1,
+                             from) -
+            offset.begin()) -
+        1;
+    if (from_level < level) {
+      const int class_id = level_ids[level][state - offset[level] - 1];
+      reversed.push_back(class_id);
+      score += probs[t * class_num + class_id];
+    }
+    state = from;
+    level = from_level;
+  }
+  if (!reversed.empty()) {
+    score /= reversed.size();
+  }
+  word_index.assign(reversed.rbegin(), reversed.rend());
+  return true;
+}
+
+} // namespace ppredictor
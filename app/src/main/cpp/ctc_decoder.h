@@ -0,0 +1,80 @@
+//
+// Greedy CTC decoding of the rec model output, optionally restricted to a
+// subset of classes and to fixed length plate grammars.
+//
+
+#pragma once
+
+#include <string>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * Decodes [T, C] probability maps. By default every class is scanned, in a
+ * single pass per time step. With set_classes only the blank (class 0) and the
+ * given ids are scanned, e.g. the 36 plate characters instead of the ~6.6k
+ * classes of ppocr_keys_v1, so other glyphs can never be emitted.
+ *
+ * With set_grammar each class also has a kind (0 letter, 1 digit) and results
+ * must spell one of the kind patterns. The greedy result is kept when it
+ * already does; otherwise the most probable CTC path that collapses to a valid
+ * plate is searched with a small dynamic program. If no path fits (fewer time
+ * steps than characters) the greedy result is returned.
+ */
+class CtcDecoder {
+public:
+  enum Kind { KIND_LETTER = 0, KIND_DIGIT = 1, KIND_NUM = 2 };
+
+  /**
+   * Restricts decoding to class_ids (blank excluded, it is always scanned).
+   * kinds[i] is the kind of class_ids[i]. Empty ids restore full decoding
+   */
+  void set_classes(const std::vector<int> &class_ids,
+                   const std::vector<int> &kinds);
+
+  /**
+   * Patterns of 'L' (letter) and 'D' (digit), e.g. {"LLLLDD", "LLDDDD"}.
+   * Only used together with set_classes. Empty disables the grammar
+   */
+  void set_grammar(const std::vector<std::string> &patterns);
+
+  /**
+   * @param word_index emitted class ids, appended
+   * @param score mean probability of the emitted characters
+   */
+  void decode(const float *probs, int time_steps, int class_num,
+              std::vector<int> &word_index, float &score);
+
+private:
+  void decode_full(const float *probs, int time_steps, int class_num,
+                   std::vector<int> &word_index, float &score) const;
+
+  void decode_subset(const float *probs, int time_steps, int class_num,
+                     std::vector<int> &word_index, float &score) const;
+
+  bool matches_grammar(const std::vector<int> &word_index, size_t begin) const;
+
+  /**
+   * Best path for one pattern. Returns false if no path fits
+   */
+  bool decode_pattern(const float *probs, int time_steps, int class_num,
+                      const std::vector<int> &pattern,
+                      std::vector<int> &word_index, float &score,
+                      float &log_prob);
+
+  int kind_of(int class_id) const;
+
+  std::vector<int> _ids;   // sorted
+  std::vector<int> _kinds; // kind of _ids[i]
+  std::vector<int> _ids_by_kind[KIND_NUM];
+  std::vector<std::vector<int>> _patterns;
+
+  // Dynamic program buffers, reused between calls
+  std::vector<float> _dp_prev;
+  std::vector<float> _dp_cur;
+  std::vector<short> _backtrack;
+  std::vector<float> _log_probs;
+};
+
+} // namespace ppredictor
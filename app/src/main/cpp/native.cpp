@@ -6,6 +6,7 @@
 #include "ocr_ppredictor.h"
 #include <algorithm>
 #include <paddle_api.h>
+#include <cstring>
 #include <string>
 
 static paddle::lite_api::PowerMode str_to_cpu_mode(const std::string &cpu_mode);
@@ -14,7 +15,7 @@ extern "C" JNIEXPORT jlong JNICALL
 Java_com_example_test_1ocr_1sbw_OCRPredictorNative_init(
     JNIEnv *env, jobject thiz, jstring j_det_model_path,
     jstring j_rec_model_path, jstring j_cls_model_path, jint j_use_opencl,
-    jint j_thread_num, jstring j_cpu_mode) {
+    jint j_thread_num, jstring j_cpu_mode, jint j_rec_batch_num) {
   std::string det_model_path = jstring_to_cpp_string(env, j_det_model_path);
   std::string rec_model_path = jstring_to_cpp_string(env, j_rec_model_path);
   std::string cls_model_path = jstring_to_cpp_string(env, j_cls_model_path);
@@ -24,12 +25,63 @@ Java_com_example_test_1ocr_1sbw_OCRPredictorNative_init(
   conf.use_opencl = j_use_opencl;
   conf.thread_num = thread_num;
   conf.mode = str_to_cpu_mode(cpu_mode);
+  conf.rec_batch_num = j_rec_batch_num > 0 ? j_rec_batch_num : 1;
   ppredictor::OCR_PPredictor *orc_predictor =
       new ppredictor::OCR_PPredictor{conf};
   orc_predictor->init_from_file(det_model_path, rec_model_path, cls_model_path);
   return reinterpret_cast<jlong>(orc_predictor);
 }
 
+/**
+ * Copies the [position, limit) window of a direct ByteBuffer into a string.
+ * Reading straight from a mapped asset keeps the model bytes out of the Java
+ * heap; Paddle Lite 2.10 only accepts the model buffer as a std::string.
+ */
+static bool direct_buffer_to_string(JNIEnv *env, jobject j_buffer,
+                                    std::string &out) {
+  const char *data =
+      j_buffer == nullptr
+          ? nullptr
+          : static_cast<const char *>(env->GetDirectBufferAddress(j_buffer));
+  if (data == nullptr) {
+    LOGE("model buffer is not a direct buffer");
+    return false;
+  }
+  jclass buffer_class = env->FindClass("java/nio/Buffer");
+  jint position = env->CallIntMethod(
+      j_buffer, env->GetMethodID(buffer_class, "position", "()I"));
+  jint limit = env->CallIntMethod(
+      j_buffer, env->GetMethodID(buffer_class, "limit", "()I"));
+  env->DeleteLocalRef(buffer_class);
+  out.assign(data + position, static_cast<size_t>(limit - position));
+  return true;
+}
+
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_test_1ocr_1sbw_OCRPredictorNative_initFromBuffers(
+    JNIEnv *env, jobject thiz, jobject j_det_model, jobject j_rec_model,
+    jobject j_cls_model, jint j_use_opencl, jint j_thread_num,
+    jstring j_cpu_mode, jint j_rec_batch_num) {
+  std::string det_model_content;
+  std::string rec_model_content;
+  std::string cls_model_content;
+  if (!direct_buffer_to_string(env, j_det_model, det_model_content) ||
+      !direct_buffer_to_string(env, j_rec_model, rec_model_content) ||
+      !direct_buffer_to_string(env, j_cls_model, cls_model_content)) {
+    return 0;
+  }
+  std::string cpu_mode = jstring_to_cpp_string(env, j_cpu_mode);
+  ppredictor::OCR_Config conf;
+  conf.use_opencl = j_use_opencl;
+  conf.thread_num = j_thread_num;
+  conf.mode = str_to_cpu_mode(cpu_mode);
+  conf.rec_batch_num = j_rec_batch_num > 0 ? j_rec_batch_num : 1;
+  ppredictor::OCR_PPredictor *orc_predictor =
+      new ppredictor::OCR_PPredictor{conf};
+  orc_predictor->init(det_model_content, rec_model_content, cls_model_content);
+  return reinterpret_cast<jlong>(orc_predictor);
+}
+
 /**
  * "LITE_POWER_HIGH" convert to paddle::lite_api::LITE_POWER_HIGH
  * @param cpu_mode
@@ -56,21 +108,106 @@ str_to_cpu_mode(const std::string &cpu_mode) {
   }
 }
 
-extern "C" JNIEXPORT jfloatArray JNICALL
+/**
+ * Size in bytes of the binary result layout read by OcrResultReader.java:
+ *   int32 result_count
+ *   per result: int32 point_num, int32 word_num, float score, int32 cls_label,
+ *               float cls_score, float rec_time, int32 points[point_num * 2],
+ *               int32 word_index[word_num]
+ *   int32 stage_num, float stage_ms[stage_num]
+ * Everything is 4 bytes wide and in native byte order.
+ */
+static int64_t
+serialized_results_size(const std::vector<ppredictor::OCRPredictResult> &results) {
+  int64_t words = 1 + 1 + ppredictor::STAGE_NUM;
+  for (const ppredictor::OCRPredictResult &r : results) {
+    words += 6 + r.points.size() * 2 + r.word_index.size();
+  }
+  return words * 4;
+}
+
+static inline void put_int(uint8_t *&cursor, int32_t value) {
+  memcpy(cursor, &value, 4);
+  cursor += 4;
+}
+
+static inline void put_float(uint8_t *&cursor, float value) {
+  memcpy(cursor, &value, 4);
+  cursor += 4;
+}
+
+static void
+serialize_results(const std::vector<ppredictor::OCRPredictResult> &results,
+                  const ppredictor::OCRStageTimes &times, uint8_t *out) {
+  uint8_t *cursor = out;
+  put_int(cursor, results.size());
+  for (const ppredictor::OCRPredictResult &r : results) {
+    put_int(cursor, r.points.size());
+    put_int(cursor, r.word_index.size());
+    put_float(cursor, r.score);
+    put_int(cursor, r.cls_label);
+    put_float(cursor, r.cls_score);
+    put_float(cursor, r.rec_time);
+    // add det point
+    for (const std::vector<int> &point : r.points) {
+      put_int(cursor, point.at(0));
+      put_int(cursor, point.at(1));
+    }
+    // add rec word idx
+    if (!r.word_index.empty()) {
+      memcpy(cursor, r.word_index.data(), r.word_index.size() * 4);
+      cursor += r.word_index.size() * 4;
+    }
+  }
+  // add stage timings
+  put_int(cursor, ppredictor::STAGE_NUM);
+  for (int i = 0; i < ppredictor::STAGE_NUM; i++) {
+    put_float(cursor, times.ms[i]);
+  }
+}
+
+/**
+ * Writes the results into the direct buffer if they fit.
+ * @return bytes written, or -(bytes required) if the buffer is too small; in
+ * that case the results are kept so that fetchResults can copy them later.
+ */
+static jint write_results(JNIEnv *env, ppredictor::OCR_PPredictor *ppredictor,
+                          std::vector<ppredictor::OCRPredictResult> &results,
+                          jobject j_out) {
+  int64_t required = serialized_results_size(results);
+  uint8_t *out = j_out == nullptr
+                     ? nullptr
+                     : static_cast<uint8_t *>(env->GetDirectBufferAddress(j_out));
+  int64_t capacity =
+      out == nullptr ? 0 : env->GetDirectBufferCapacity(j_out);
+  if (out == nullptr || capacity < required) {
+    ppredictor->pending_results().swap(results);
+    return -static_cast<jint>(required);
+  }
+  serialize_results(results, ppredictor->last_stage_times(), out);
+  ppredictor->pending_results().clear();
+  return static_cast<jint>(required);
+}
+
+extern "C" JNIEXPORT jint JNICALL
 Java_com_example_test_1ocr_1sbw_OCRPredictorNative_forward(
     JNIEnv *env, jobject thiz, jlong java_pointer, jobject original_image,
-    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec) {
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec,
+    jobject j_out) {
   LOGI("begin to run native forward");
   if (java_pointer == 0) {
     LOGE("JAVA pointer is NULL");
-    return cpp_array_to_jfloatarray(env, nullptr, 0);
+    return 0;
   }
 
-  cv::Mat origin = bitmap_to_cv_mat(env, original_image);
-  if (origin.size == 0) {
+  // the RGBA pixels are read in place; det converts them while resizing and
+  // rec only converts its crops
+  LockedBitmap origin_bitmap(env, original_image);
+  if (!origin_bitmap.valid()) {
     LOGE("origin bitmap cannot convert to CV Mat");
-    return cpp_array_to_jfloatarray(env, nullptr, 0);
+    return 0;
   }
+  cv::Mat &origin = origin_bitmap.mat();
 
   int max_size_len = j_max_size_len;
   int run_det = j_run_det;
@@ -79,32 +216,72 @@ Java_com_example_test_1ocr_1sbw_OCRPredictorNative_forward(
 
   ppredictor::OCR_PPredictor *ppredictor =
       (ppredictor::OCR_PPredictor *)java_pointer;
-  std::vector<int64_t> dims_arr;
   std::vector<ppredictor::OCRPredictResult> results =
       ppredictor->infer_ocr(origin, max_size_len, run_det, run_cls, run_rec);
   LOGI("infer_ocr finished with boxes %ld", results.size());
 
-  // 这里将std::vector<ppredictor::OCRPredictResult> 序列化成
-  // float数组，传输到java层再反序列化
-  std::vector<float> float_arr;
-  for (const ppredictor::OCRPredictResult &r : results) {
-    float_arr.push_back(r.points.size());
-    float_arr.push_back(r.word_index.size());
-    float_arr.push_back(r.score);
-    // add det point
-    for (const std::vector<int> &point : r.points) {
-      float_arr.push_back(point.at(0));
-      float_arr.push_back(point.at(1));
+  return write_results(env, ppredictor, results, j_out);
+}
+
+/**
+ * Copies the results that did not fit in the buffer passed to forward.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_test_1ocr_1sbw_OCRPredictorNative_fetchResults(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jobject j_out) {
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  std::vector<ppredictor::OCRPredictResult> results;
+  results.swap(ppredictor->pending_results());
+  return write_results(env, ppredictor, results, j_out);
+}
+
+/**
+ * Restricts rec decoding to the given class ids (kinds: 0 letter, 1 digit).
+ * j_grammar holds '|' separated patterns of 'L' and 'D'; empty disables it.
+ * An empty j_class_ids restores decoding over every class.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_test_1ocr_1sbw_OCRPredictorNative_setRecClasses(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jintArray j_class_ids,
+    jintArray j_kinds, jstring j_grammar) {
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return;
+  }
+  std::vector<int> class_ids;
+  std::vector<int> kinds;
+  if (j_class_ids != nullptr) {
+    class_ids.resize(env->GetArrayLength(j_class_ids));
+    env->GetIntArrayRegion(j_class_ids, 0, jsize(class_ids.size()),
+                           reinterpret_cast<jint *>(class_ids.data()));
+  }
+  if (j_kinds != nullptr) {
+    kinds.resize(env->GetArrayLength(j_kinds));
+    env->GetIntArrayRegion(j_kinds, 0, jsize(kinds.size()),
+                           reinterpret_cast<jint *>(kinds.data()));
+  }
+  std::vector<std::string> patterns;
+  std::string grammar =
+      j_grammar != nullptr ? jstring_to_cpp_string(env, j_grammar) : "";
+  size_t begin = 0;
+  while (begin < grammar.size()) {
+    size_t end = grammar.find('|', begin);
+    if (end == std::string::npos) {
+      end = grammar.size();
     }
-    // add rec word idx
-    for (int index : r.word_index) {
-      float_arr.push_back(index);
+    if (end > begin) {
+      patterns.push_back(grammar.substr(begin, end - begin));
     }
-    // add cls result
-    float_arr.push_back(r.cls_label);
-    float_arr.push_back(r.cls_score);
+    begin = end + 1;
   }
-  return cpp_array_to_jfloatarray(env, float_arr.data(), float_arr.size());
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  ppredictor->set_rec_classes(class_ids, kinds, patterns);
 }
 
 extern "C" JNIEXPORT void JNICALL
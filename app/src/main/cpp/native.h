@@ -135,3 +135,50 @@ inline cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap) {
    */
   return mat;
 }
+
+/**
+ * Locks the pixels of an RGBA_8888 bitmap and wraps them in a CV_8UC4 Mat,
+ * without copying. The Mat is only valid while this object is alive.
+ */
+class LockedBitmap {
+public:
+  LockedBitmap(JNIEnv *env, jobject bitmap) : _env(env), _bitmap(bitmap) {
+    AndroidBitmapInfo info;
+    int result = AndroidBitmap_getInfo(env, bitmap, &info);
+    if (result != ANDROID_BITMAP_RESULT_SUCCESS) {
+      LOGE("AndroidBitmap_getInfo failed, result: %d", result);
+      return;
+    }
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+      LOGE("Bitmap format is not RGBA_8888 !");
+      return;
+    }
+    void *pixels = nullptr;
+    result = AndroidBitmap_lockPixels(env, bitmap, &pixels);
+    if (result != ANDROID_BITMAP_RESULT_SUCCESS || pixels == nullptr) {
+      LOGE("AndroidBitmap_lockPixels failed, result: %d", result);
+      return;
+    }
+    _locked = true;
+    _mat = cv::Mat(info.height, info.width, CV_8UC4, pixels, info.stride);
+  }
+
+  ~LockedBitmap() {
+    if (_locked) {
+      AndroidBitmap_unlockPixels(_env, _bitmap);
+    }
+  }
+
+  LockedBitmap(const LockedBitmap &) = delete;
+  LockedBitmap &operator=(const LockedBitmap &) = delete;
+
+  bool valid() const { return _locked; }
+
+  cv::Mat &mat() { return _mat; }
+
+private:
+  JNIEnv *_env;
+  jobject _bitmap;
+  bool _locked = false;
+  cv::Mat _mat;
+};
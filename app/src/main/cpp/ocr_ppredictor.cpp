@@ -8,6 +8,7 @@
 #include "ocr_crnn_process.h"
 #include "ocr_db_post_process.h"
 #include "preprocess.h"
+#include <algorithm>
 
 namespace ppredictor {
 
@@ -81,6 +82,8 @@ OCR_PPredictor::infer_ocr(cv::Mat &origin, int max_size_len, int run_det,
                           int run_cls, int run_rec) {
   LOGI("ocr cpp start *****************");
   LOGI("ocr cpp det: %d, cls: %d, rec: %d", run_det, run_cls, run_rec);
+  _stage_times.reset();
+  double start = monotonic_ms();
   std::vector<OCRPredictResult> ocr_results;
   if (run_det) {
     infer_det(origin, max_size_len, ocr_results);
@@ -90,26 +93,38 @@ OCR_PPredictor::infer_ocr(cv::Mat &origin, int max_size_len, int run_det,
       OCRPredictResult res;
       ocr_results.emplace_back(std::move(res));
     }
-    for (int i = 0; i < ocr_results.size(); i++) {
-      infer_rec(origin, run_cls, ocr_results[i]);
+    if (_config.rec_batch_num > 1 && ocr_results.size() > 1) {
+      infer_rec_batch(origin, run_cls, ocr_results);
+    } else {
+      for (int i = 0; i < ocr_results.size(); i++) {
+        infer_rec(origin, run_cls, ocr_results[i]);
+      }
     }
   } else if (run_cls) {
-    ClsPredictResult cls_res = infer_cls(origin);
+    double cls_start = monotonic_ms();
+    cv::Mat cls_img = origin;
+    if (cls_img.channels() == 4) {
+      cv::cvtColor(origin, cls_img, cv::COLOR_RGBA2BGR);
+    }
+    ClsPredictResult cls_res = infer_cls(cls_img);
+    _stage_times.ms[STAGE_CLS] += monotonic_ms() - cls_start;
     OCRPredictResult res;
     res.cls_score = cls_res.cls_score;
     res.cls_label = cls_res.cls_label;
     ocr_results.push_back(res);
   }
+  _stage_times.ms[STAGE_TOTAL] = monotonic_ms() - start;
 
   LOGI("ocr cpp end *****************");
   return ocr_results;
 }
 
-cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
-                     std::vector<float> &ratio_hw) {
-  int w = img.cols;
-  int h = img.rows;
-
+/**
+ * Det input size: the long side is limited to max_size_len and both sides are
+ * rounded to a multiple of 32
+ */
+static void det_resize_shape(int w, int h, int max_size_len, int &resize_w,
+                             int &resize_h) {
   float ratio = 1.f;
   int max_wh = w >= h ? w : h;
   if (max_wh > max_size_len) {
@@ -120,8 +135,8 @@ cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
     }
   }
 
-  int resize_h = static_cast<int>(float(h) * ratio);
-  int resize_w = static_cast<int>(float(w) * ratio);
+  resize_h = static_cast<int>(float(h) * ratio);
+  resize_w = static_cast<int>(float(w) * ratio);
   if (resize_h % 32 == 0)
     resize_h = resize_h;
   else if (resize_h / 32 < 1 + 1e-5)
@@ -135,6 +150,15 @@ cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
     resize_w = 32;
   else
     resize_w = (resize_w / 32 - 1) * 32;
+}
+
+cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
+                     std::vector<float> &ratio_hw) {
+  int w = img.cols;
+  int h = img.rows;
+  int resize_w = 0;
+  int resize_h = 0;
+  det_resize_shape(w, h, max_size_len, resize_w, resize_h);
 
   cv::Mat resize_img;
   cv::resize(img, resize_img, cv::Size(resize_w, resize_h));
@@ -149,24 +173,43 @@ void OCR_PPredictor::infer_det(cv::Mat &origin, int max_size_len,
   std::vector<float> mean = {0.485f, 0.456f, 0.406f};
   std::vector<float> scale = {1 / 0.229f, 1 / 0.224f, 1 / 0.225f};
 
+  double pre_start = monotonic_ms();
   PredictorInput input = _det_predictor->get_first_input();
 
-  std::vector<float> ratio_hw;
-  cv::Mat input_image = DetResizeImg(origin, max_size_len, ratio_hw);
-  input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
-  const float *dimg = reinterpret_cast<const float *>(input_image.data);
-  int input_size = input_image.rows * input_image.cols;
+  int input_rows = 0;
+  int input_cols = 0;
+  if (origin.type() == CV_8UC4) {
+    // bitmap pixels: resize, BGR order and normalization in one pass
+    det_resize_shape(origin.cols, origin.rows, max_size_len, input_cols,
+                     input_rows);
+    input.set_dims({1, 3, input_rows, input_cols});
+    rgba_to_nchw(origin.data, origin.cols, origin.rows, int(origin.step),
+                 input_cols, input_rows, mean.data(), scale.data(),
+                 input.get_mutable_float_data(), _det_scratch);
+  } else {
+    std::vector<float> ratio_hw;
+    cv::Mat input_image = DetResizeImg(origin, max_size_len, ratio_hw);
+    input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
+    const float *dimg = reinterpret_cast<const float *>(input_image.data);
+    input_rows = input_image.rows;
+    input_cols = input_image.cols;
 
-  input.set_dims({1, 3, input_image.rows, input_image.cols});
+    input.set_dims({1, 3, input_rows, input_cols});
 
-  neon_mean_scale(dimg, input.get_mutable_float_data(), input_size, mean,
-                  scale);
-  LOGI("ocr cpp det shape %d,%d", input_image.rows, input_image.cols);
+    neon_mean_scale(dimg, input.get_mutable_float_data(),
+                    input_rows * input_cols, mean, scale);
+  }
+  LOGI("ocr cpp det shape %d,%d", input_rows, input_cols);
+  double infer_start = monotonic_ms();
+  _stage_times.ms[STAGE_DET_PRE] += infer_start - pre_start;
   std::vector<PredictorOutput> results = _det_predictor->infer();
   PredictorOutput &res = results.at(0);
+  double post_start = monotonic_ms();
+  _stage_times.ms[STAGE_DET_INFER] += post_start - infer_start;
   std::vector<std::vector<std::vector<int>>> filtered_box =
-      calc_filtered_boxes(res.get_float_data(), res.get_size(),
-                          input_image.rows, input_image.cols, origin);
+      calc_filtered_boxes(res.get_float_data(), res.get_size(), input_rows,
+                          input_cols, origin);
+  _stage_times.ms[STAGE_DET_POST] += monotonic_ms() - post_start;
   LOGI("ocr cpp det Filter_box size %ld", filtered_box.size());
 
   for (int i = 0; i < filtered_box.size(); i++) {
@@ -180,14 +223,9 @@ void OCR_PPredictor::infer_det(cv::Mat &origin, int max_size_len,
   }
 }
 
-void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls,
-                               OCRPredictResult &ocr_result) {
-  std::vector<float> mean = {0.5f, 0.5f, 0.5f};
-  std::vector<float> scale = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
-  std::vector<int64_t> dims = {1, 3, 0, 0};
-
-  PredictorInput input = _rec_predictor->get_first_input();
-
+cv::Mat OCR_PPredictor::crop_box(const cv::Mat &origin_img, int run_cls,
+                                 OCRPredictResult &ocr_result) {
+  double crop_start = monotonic_ms();
   const std::vector<std::vector<int>> &box = ocr_result.points;
   cv::Mat crop_img;
   if (box.size() > 0) {
@@ -195,14 +233,37 @@ void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls,
   } else {
     crop_img = origin_img;
   }
+  if (crop_img.channels() == 4) {
+    // origin holds the bitmap pixels; only the crop is converted
+    cv::Mat bgr_img;
+    cv::cvtColor(crop_img, bgr_img, cv::COLOR_RGBA2BGR);
+    crop_img = bgr_img;
+  }
+  double cls_start = monotonic_ms();
+  _stage_times.ms[STAGE_REC_PRE] += cls_start - crop_start;
 
   if (run_cls) {
     ClsPredictResult cls_res = infer_cls(crop_img);
     crop_img = cls_res.img;
     ocr_result.cls_score = cls_res.cls_score;
     ocr_result.cls_label = cls_res.cls_label;
+    _stage_times.ms[STAGE_CLS] += monotonic_ms() - cls_start;
   }
+  return crop_img;
+}
+
+void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls,
+                               OCRPredictResult &ocr_result) {
+  std::vector<float> mean = {0.5f, 0.5f, 0.5f};
+  std::vector<float> scale = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
+  std::vector<int64_t> dims = {1, 3, 0, 0};
+
+  double box_start = monotonic_ms();
+  PredictorInput input = _rec_predictor->get_first_input();
 
+  cv::Mat crop_img = crop_box(origin_img, run_cls, ocr_result);
+
+  double pre_start = monotonic_ms();
   float wh_ratio = float(crop_img.cols) / float(crop_img.rows);
   cv::Mat input_image = crnn_resize_img(crop_img, wh_ratio);
   input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
@@ -216,33 +277,106 @@ void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls,
   neon_mean_scale(dimg, input.get_mutable_float_data(), input_size, mean,
                   scale);
 
+  double infer_start = monotonic_ms();
+  _stage_times.ms[STAGE_REC_PRE] += infer_start - pre_start;
   std::vector<PredictorOutput> results = _rec_predictor->infer();
   const float *predict_batch = results.at(0).get_float_data();
   const std::vector<int64_t> predict_shape = results.at(0).get_shape();
 
-  // ctc decode
-  int argmax_idx;
-  int last_index = 0;
-  float score = 0.f;
-  int count = 0;
-  float max_value = 0.0f;
-
-  for (int n = 0; n < predict_shape[1]; n++) {
-    argmax_idx = int(argmax(&predict_batch[n * predict_shape[2]],
-                            &predict_batch[(n + 1) * predict_shape[2]]));
-    max_value =
-        float(*std::max_element(&predict_batch[n * predict_shape[2]],
-                                &predict_batch[(n + 1) * predict_shape[2]]));
-    if (argmax_idx > 0 && (!(n > 0 && argmax_idx == last_index))) {
-      score += max_value;
-      count += 1;
-      ocr_result.word_index.push_back(argmax_idx);
+  double post_start = monotonic_ms();
+  _stage_times.ms[STAGE_REC_INFER] += post_start - infer_start;
+  ctc_decode(predict_batch, predict_shape[1], predict_shape[2], ocr_result);
+  double end = monotonic_ms();
+  _stage_times.ms[STAGE_REC_POST] += end - post_start;
+  ocr_result.rec_time = end - box_start;
+}
+
+void OCR_PPredictor::infer_rec_batch(
+    const cv::Mat &origin_img, int run_cls,
+    std::vector<OCRPredictResult> &ocr_results) {
+  const float mean[3] = {0.5f, 0.5f, 0.5f};
+  const float scale[3] = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
+  const int img_h = REC_IMAGE_SHAPE[1];
+  const int box_num = ocr_results.size();
+  const int batch_num = _config.rec_batch_num;
+
+  std::vector<cv::Mat> crops(box_num);
+  std::vector<float> wh_ratios(box_num);
+  for (int i = 0; i < box_num; i++) {
+    double crop_start = monotonic_ms();
+    crops[i] = crop_box(origin_img, run_cls, ocr_results[i]);
+    wh_ratios[i] = float(crops[i].cols) / float(crops[i].rows);
+    ocr_results[i].rec_time = monotonic_ms() - crop_start;
+  }
+
+  // boxes with a similar aspect ratio share a batch, so little width is padded
+  std::vector<int> order(box_num);
+  for (int i = 0; i < box_num; i++) {
+    order[i] = i;
+  }
+  std::stable_sort(order.begin(), order.end(), [&wh_ratios](int a, int b) {
+    return wh_ratios[a] < wh_ratios[b];
+  });
+
+  PredictorInput input = _rec_predictor->get_first_input();
+  for (int beg = 0; beg < box_num; beg += batch_num) {
+    double pre_start = monotonic_ms();
+    int end = std::min(box_num, beg + batch_num);
+    int n = end - beg;
+    float max_wh_ratio = wh_ratios[order[end - 1]];
+    int batch_w = std::max(1, int(img_h * max_wh_ratio));
+    int plane = img_h * batch_w;
+
+    input.set_dims({n, 3, img_h, batch_w});
+    float *dst = input.get_mutable_float_data();
+    // padding is zero after normalization, as in crnn_resize_norm_img
+    std::fill(dst, dst + n * 3 * plane, 0.f);
+
+    for (int b = 0; b < n; b++) {
+      cv::Mat resized = crnn_resize_img(crops[order[beg + b]], max_wh_ratio);
+      float *dst_c0 = dst + b * 3 * plane;
+      for (int y = 0; y < resized.rows; y++) {
+        const uint8_t *src = resized.ptr<uint8_t>(y);
+        float *row_c0 = dst_c0 + y * batch_w;
+        float *row_c1 = row_c0 + plane;
+        float *row_c2 = row_c1 + plane;
+        for (int x = 0; x < resized.cols; x++) {
+          row_c0[x] = (src[x * 3] / 255.f - mean[0]) * scale[0];
+          row_c1[x] = (src[x * 3 + 1] / 255.f - mean[1]) * scale[1];
+          row_c2[x] = (src[x * 3 + 2] / 255.f - mean[2]) * scale[2];
+        }
+      }
+    }
+
+    double infer_start = monotonic_ms();
+    _stage_times.ms[STAGE_REC_PRE] += infer_start - pre_start;
+    std::vector<PredictorOutput> results = _rec_predictor->infer();
+    const float *predict_batch = results.at(0).get_float_data();
+    const std::vector<int64_t> predict_shape = results.at(0).get_shape();
+    int time_steps = predict_shape[1];
+    int class_num = predict_shape[2];
+    double post_start = monotonic_ms();
+    _stage_times.ms[STAGE_REC_INFER] += post_start - infer_start;
+    for (int b = 0; b < n; b++) {
+      ctc_decode(predict_batch + b * time_steps * class_num, time_steps,
+                 class_num, ocr_results[order[beg + b]]);
     }
-    last_index = argmax_idx;
+    double end_time = monotonic_ms();
+    _stage_times.ms[STAGE_REC_POST] += end_time - post_start;
+    // the shared batch cost is split evenly between its boxes
+    float share = float(end_time - pre_start) / n;
+    for (int b = 0; b < n; b++) {
+      ocr_results[order[beg + b]].rec_time += share;
+    }
+    LOGI("ocr cpp rec batch of %d boxes, width %d", n, batch_w);
   }
-  score /= count;
-  ocr_result.score = score;
-  LOGI("ocr cpp rec word size %ld", count);
+}
+
+void OCR_PPredictor::ctc_decode(const float *predict_batch, int time_steps,
+                                int class_num, OCRPredictResult &ocr_result) {
+  _ctc_decoder.decode(predict_batch, time_steps, class_num,
+                      ocr_result.word_index, ocr_result.score);
+  LOGI("ocr cpp rec word size %ld", ocr_result.word_index.size());
 }
 
 ClsPredictResult OCR_PPredictor::infer_cls(const cv::Mat &img, float thresh) {
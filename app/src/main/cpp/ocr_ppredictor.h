@@ -4,9 +4,12 @@
 
 #pragma once
 
+#include "bitmap_tensor.h"
+#include "ctc_decoder.h"
 #include "ppredictor.h"
 #include <opencv2/opencv.hpp>
 #include <paddle_api.h>
+#include <algorithm>
 #include <string>
 
 namespace ppredictor {
@@ -19,6 +22,7 @@ struct OCR_Config {
   int thread_num = 4; // Thread num
   paddle::lite_api::PowerMode mode =
       paddle::lite_api::LITE_POWER_HIGH; // PaddleLite Mode
+  int rec_batch_num = 1; // Boxes recognized per rec Run(), 1 disables batching
 };
 
 /**
@@ -27,13 +31,39 @@ struct OCR_Config {
 struct OCRPredictResult {
   std::vector<int> word_index;
   std::vector<std::vector<int>> points;
-  float score;
-  float cls_score;
+  float score = 0.f;
+  float cls_score = 0.f;
   int cls_label = -1;
+  float rec_time = 0.f; // ms spent on crop, cls and rec for this box
+};
+
+/**
+ * Pipeline stages timed by infer_ocr. The order is part of the result format
+ * read by StageTimings.java
+ */
+enum OCR_STAGE {
+  STAGE_DET_PRE = 0,
+  STAGE_DET_INFER,
+  STAGE_DET_POST,
+  STAGE_CLS,
+  STAGE_REC_PRE,
+  STAGE_REC_INFER,
+  STAGE_REC_POST,
+  STAGE_TOTAL,
+  STAGE_NUM
+};
+
+/**
+ * Latency of each stage of the last infer_ocr call, in ms
+ */
+struct OCRStageTimes {
+  float ms[STAGE_NUM] = {0};
+
+  void reset() { std::fill(ms, ms + STAGE_NUM, 0.f); }
 };
 
 struct ClsPredictResult {
-  float cls_score;
+  float cls_score = 0.f;
   int cls_label = -1;
   cv::Mat img;
 };
@@ -61,7 +91,8 @@ public:
                      const std::string &rec_model_path,
                      const std::string &cls_model_path);
   /**
-   * Return OCR result
+   * Return OCR result. origin may be BGR or, to skip a full image copy, the
+   * RGBA pixels of the bitmap; crops are converted to BGR as they are taken
    * @param dims
    * @param input_data
    * @param input_len
@@ -75,6 +106,29 @@ public:
 
   virtual NET_TYPE get_net_flag() const;
 
+  /**
+   * Results of the last call that did not fit in the Java result buffer
+   * @return
+   */
+  std::vector<OCRPredictResult> &pending_results() { return _pending_results; }
+
+  /**
+   * Per stage timings of the last infer_ocr call
+   * @return
+   */
+  const OCRStageTimes &last_stage_times() const { return _stage_times; }
+
+  /**
+   * Restricts rec decoding to class_ids and, if patterns is not empty, to the
+   * plate grammars. See CtcDecoder
+   */
+  void set_rec_classes(const std::vector<int> &class_ids,
+                       const std::vector<int> &kinds,
+                       const std::vector<std::string> &patterns) {
+    _ctc_decoder.set_classes(class_ids, kinds);
+    _ctc_decoder.set_grammar(patterns);
+  }
+
 private:
   /**
    * calcul Polygone from the result image of first model
@@ -100,6 +154,40 @@ private:
   void infer_rec(const cv::Mat &origin, int run_cls,
                  OCRPredictResult &ocr_result);
 
+  /**
+   * infer for rec model on all boxes at once: crops are sorted by aspect ratio,
+   * grouped in batches of rec_batch_num, padded to the widest crop of the batch
+   * and run as one [N, 3, H, W] tensor
+   *
+   * @param origin
+   * @param run_cls
+   * @param ocr_results
+   */
+  void infer_rec_batch(const cv::Mat &origin, int run_cls,
+                       std::vector<OCRPredictResult> &ocr_results);
+
+  /**
+   * greedy ctc decode of one [T, C] probability map
+   *
+   * @param probs
+   * @param time_steps
+   * @param class_num
+   * @param ocr_result
+   */
+  void ctc_decode(const float *probs, int time_steps, int class_num,
+                  OCRPredictResult &ocr_result);
+
+  /**
+   * crop the box from the origin image, and rotate it if cls is enabled
+   *
+   * @param origin
+   * @param run_cls
+   * @param ocr_result
+   * @return
+   */
+  cv::Mat crop_box(const cv::Mat &origin, int run_cls,
+                   OCRPredictResult &ocr_result);
+
   /**
    * infer for cls model
    *
@@ -126,6 +214,10 @@ private:
   std::unique_ptr<PPredictor> _det_predictor;
   std::unique_ptr<PPredictor> _rec_predictor;
   std::unique_ptr<PPredictor> _cls_predictor;
+  std::vector<OCRPredictResult> _pending_results;
+  OCRStageTimes _stage_times;
+  TensorScratch _det_scratch;
+  CtcDecoder _ctc_decoder;
   OCR_Config _config;
 };
 } // namespace ppredictor
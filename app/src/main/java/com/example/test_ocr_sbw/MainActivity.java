@@ -6,7 +6,6 @@ import androidx.documentfile.provider.DocumentFile;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.net.Uri;
 import android.os.Bundle;
@@ -15,25 +14,44 @@ import android.widget.Button;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import com.example.test_ocr_sbw.benchmark.BenchmarkScheduler;
+import com.example.test_ocr_sbw.benchmark.ConfigSweep;
+import com.example.test_ocr_sbw.benchmark.LatencyHistogram;
+import com.example.test_ocr_sbw.benchmark.ResultCache;
+import com.example.test_ocr_sbw.benchmark.SweepMatrix;
+import com.example.test_ocr_sbw.engine.CascadeEngine;
+import com.example.test_ocr_sbw.engine.EarlyExitEngine;
+import com.example.test_ocr_sbw.engine.EngineRegistry;
+import com.example.test_ocr_sbw.engine.ManagedEngine;
+import com.example.test_ocr_sbw.engine.MlKitEngine;
+import com.example.test_ocr_sbw.engine.MosaicEngine;
+import com.example.test_ocr_sbw.engine.OcrEngine;
+import com.example.test_ocr_sbw.engine.PaddleEngine;
+import com.example.test_ocr_sbw.engine.YoloEngine;
 import com.example.test_ocr_sbw.ocr.MlKitOcrHelper;
-import com.example.test_ocr_sbw.ocr.OcrResult;
 import com.example.test_ocr_sbw.ocr.YoloTFLiteHelper;
+import com.example.test_ocr_sbw.utils.BitmapDecoder;
+import com.example.test_ocr_sbw.utils.BitmapPool;
+import com.example.test_ocr_sbw.utils.CsvResultWriter;
 import com.example.test_ocr_sbw.utils.CsvUtils;
+import com.example.test_ocr_sbw.utils.PlateFilter;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = MainActivity.class.getSimpleName();
     private static final int REQUEST_CODE_SELECT_FOLDER = 300;
     private Button btnSelectFolder;
     private Button btnProcessFolder;
+    private Button btnSweep;
     private TextView tvFolderOutput;
     private ProgressBar progressBar;
 
@@ -41,6 +59,76 @@ public class MainActivity extends AppCompatActivity {
     private MlKitOcrHelper mlKitOcrHelper;
     // Para YOLO, se asume que tienes un modelo de OCR basado en YOLO; por ejemplo:
     private String chosenYoloModel = "best_int8.tflite";
+    // Número de imágenes que se decodifican por adelantado en el pipeline
+    private static final int DECODE_AHEAD = 4;
+    // Inferencias de calentamiento por motor antes de empezar a medir
+    private static final int WARMUP_ITERATIONS = 2;
+    // Inferencias medidas por imagen y motor; con más de una se reportan percentiles por imagen
+    private static final int TIMED_ITERATIONS = 5;
+    // SEQUENTIAL para latencias limpias por motor, CONCURRENT para el máximo de imágenes por segundo
+    private static final BenchmarkScheduler.Mode SCHEDULER_MODE = BenchmarkScheduler.Mode.SEQUENTIAL;
+    // Retomar ocr_results.csv de una corrida interrumpida en vez de sobrescribirlo
+    private static final boolean RESUME_RESULTS = true;
+    // Instancias nativas de Paddle y total de hilos que se reparten entre ellas (p. ej. 2 x 2 o 1 x 4)
+    private static final int PADDLE_INSTANCES = 1;
+    private static final int PADDLE_CPU_THREADS = 4;
+    // Reconocimiento de Paddle restringido a A-Z y 0-9 (36 clases en vez del diccionario completo)
+    // y, además, a los formatos de patente. La gramática aplica por caja: sirve cuando cada caja es
+    // la patente completa en una línea, no si la detección la separa en varias
+    private static final boolean PADDLE_PLATE_ALPHABET = true;
+    private static final boolean PADDLE_PLATE_GRAMMAR = false;
+    // Reconocimientos de MLKit en curso a la vez (también el límite por motor en modo concurrente)
+    // y tiempo máximo de espera por imagen
+    private static final int MLKIT_MAX_IN_FLIGHT = 2;
+    private static final long MLKIT_TIMEOUT_MS = 10_000;
+    // Cascada YOLO -> reconocimiento de Paddle sobre el recorte, sin detección. El modelo YOLO
+    // actual detecta caracteres, así que la patente es la unión de sus cajas (UNION); con un
+    // modelo de patentes corresponde BEST_BOX
+    private static final boolean ENABLE_CASCADE = true;
+    // Modelo de patentes en assets para el localizador; null usa el intérprete del motor YOLO
+    private static final String CASCADE_PLATE_MODEL = null;
+    private static final CascadeEngine.CropStrategy CASCADE_CROP = CascadeEngine.CropStrategy.UNION;
+    private static final float CASCADE_PADDING = 0.15f;
+    // Paddle en mosaico: varias imágenes chicas (carpetas de recortes de patentes) en un solo
+    // lienzo de detección. Sólo junta imágenes en modo CONCURRENT; un mosaico incompleto se
+    // procesa igual tras MOSAIC_MAX_WAIT_MS
+    private static final boolean ENABLE_MOSAIC = false;
+    private static final int MOSAIC_MAX_IMAGES = 8;
+    private static final long MOSAIC_MAX_WAIT_MS = 50;
+    private static final int MOSAIC_GUTTER = 16;
+    // Qué corre el planificador: cada motor por separado (ALL_ENGINES), sólo la cascada con salida
+    // temprana (EARLY_EXIT), o ambas sobre las mismas imágenes para medir la ganancia (COMPARE)
+    private enum RunMode {
+        ALL_ENGINES,
+        EARLY_EXIT,
+        COMPARE
+    }
+
+    private static final RunMode RUN_MODE = RunMode.ALL_ENGINES;
+    // Cascada con salida temprana: corre los motores del más barato al más caro (medido al
+    // calentar) y se detiene en la primera patente válida con al menos esa confianza
+    private static final String[] EARLY_EXIT_STAGES = {"YOLO", "MLKit", "Cascade", "Paddle"};
+    private static final float EARLY_EXIT_MIN_CONFIDENCE = 0.6f;
+    // Reutilizar resultados de corridas anteriores para las imágenes y modelos que no cambiaron
+    private static final boolean USE_RESULT_CACHE = true;
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    // Tamaño mínimo al que resizeIfNeeded lleva las imágenes; forma parte de la clave de caché
+    private static final int MIN_IMAGE_SIZE = 256;
+    // Memoria máxima de bitmaps libres que se guardan para reutilizar al decodificar
+    private static final long BITMAP_POOL_BYTES = 32L * 1024 * 1024;
+    // Barrido de configuraciones: se mide cada combinación sobre las primeras SWEEP_SAMPLE_SIZE
+    // imágenes de la carpeta. Si el nombre del archivo contiene la patente ("ABCD12_1.jpg") se
+    // mide la exactitud; si no, sólo la fracción de patentes leídas. Los modelos YOLO son todos
+    // los .tflite de models/yolo. Las imágenes por segundo se miden con SWEEP_IN_FLIGHT imágenes en
+    // curso, así que el número de instancias de Paddle también se barre
+    private static final int SWEEP_SAMPLE_SIZE = 16;
+    private static final int SWEEP_TIMED_ITERATIONS = 3;
+    private static final int SWEEP_IN_FLIGHT = 4;
+    private static final int[] SWEEP_PADDLE_INSTANCES = {1, 2};
+    private static final int[] SWEEP_PADDLE_THREADS = {1, 2, 4};
+    private static final String[] SWEEP_PADDLE_POWER_MODES = {"LITE_POWER_HIGH", "LITE_POWER_NO_BIND"};
+    private static final int[] SWEEP_PADDLE_DET_SIZES = {480, 640, 960};
+    private static final int[] SWEEP_YOLO_THREADS = {1, 2, 4};
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,10 +137,11 @@ public class MainActivity extends AppCompatActivity {
 
         btnSelectFolder = findViewById(R.id.btn_select_folder);
         btnProcessFolder = findViewById(R.id.btn_process_folder);
+        btnSweep = findViewById(R.id.btn_sweep);
         tvFolderOutput = findViewById(R.id.tv_folder_output);
         progressBar = findViewById(R.id.progress_bar);
 
-        mlKitOcrHelper = new MlKitOcrHelper();
+        mlKitOcrHelper = new MlKitOcrHelper(MLKIT_MAX_IN_FLIGHT, MLKIT_TIMEOUT_MS);
 
         btnSelectFolder.setOnClickListener(v -> {
             Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
@@ -66,6 +155,14 @@ public class MainActivity extends AppCompatActivity {
                 tvFolderOutput.setText("Seleccione una carpeta primero.");
             }
         });
+
+        btnSweep.setOnClickListener(v -> {
+            if (selectedFolderUri != null) {
+                new SweepTask().execute(selectedFolderUri);
+            } else {
+                tvFolderOutput.setText("Seleccione una carpeta primero.");
+            }
+        });
     }
 
     @Override
@@ -77,6 +174,30 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Redimensiona la imagen para que su ancho o alto sea al menos minDimension.
+     * Se mantiene la relación de aspecto.
+     */
+    private Bitmap resizeIfNeeded(Bitmap bmp, int minDimension) {
+        int width = bmp.getWidth();
+        int height = bmp.getHeight();
+        if (width >= minDimension && height >= minDimension) {
+            return bmp;
+        }
+        float scale = (float) minDimension / Math.min(width, height);
+        int newWidth = Math.round(width * scale);
+        int newHeight = Math.round(height * scale);
+        return Bitmap.createScaledBitmap(bmp, newWidth, newHeight, true);
+    }
+
+    private boolean isImage(DocumentFile file) {
+        if (!file.isFile() || file.getName() == null) {
+            return false;
+        }
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".png");
+    }
+
     /**
      * Clase para encapsular el progreso del procesamiento.
      */
@@ -94,7 +215,8 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * AsyncTask para procesar la carpeta sin bloquear la UI.
-     * Para cada imagen se ejecuta OCR con MLKit, YOLO y Paddle, y se estima el tiempo restante.
+     * Para cada imagen se ejecuta OCR con los motores registrados (MLKit, YOLO y Paddle) a través
+     * de un {@link BenchmarkScheduler}, que decodifica por adelantado y arma el CSV en paralelo.
      */
     private class ProcessFolderTask extends AsyncTask<Uri, ProgressData, String> {
 
@@ -113,130 +235,210 @@ public class MainActivity extends AppCompatActivity {
                 return "La carpeta seleccionada no es válida.";
             }
 
-            DocumentFile[] files = directory.listFiles();
-            List<String> csvLines = new ArrayList<>();
-            // Agregamos columnas para MLKit, YOLO y Paddle OCR
-            csvLines.add("FileName,MLKitText,MLKitConfidence,MLKitTime(ms),YOLOText,YOLOAvgConfidence,YOLOTime(ms),PaddleText,PaddleAvgConfidence,PaddleTime(ms)");
+            final DocumentFile[] allFiles = directory.listFiles();
+            // Archivos que faltan por procesar; se completa al abrir el CSV de resultados
+            final List<DocumentFile> files = new ArrayList<>();
+
+            // Filtro de formato de patente chilena (AAAA99 o AA9999)
+            final PlateFilter plateFilter = new PlateFilter();
+
+            // Cada motor se crea una única vez para toda la carpeta y se libera al terminar. Para
+            // comparar otro motor o variante de modelo basta con registrarlo aquí
+            final EngineRegistry registry = new EngineRegistry();
+            registry.register("MLKit", () -> new MlKitEngine(mlKitOcrHelper, plateFilter));
+            registry.register("YOLO", () -> new YoloEngine(MainActivity.this, "models/yolo/" + chosenYoloModel));
+            registry.register("Paddle", () -> {
+                // Asumimos que los modelos y etiquetas están en la ruta "models/paddle" y "models/paddle/labels.txt" respectivamente.
+                PredictorPool.Config config = new PredictorPool.Config();
+                config.modelPath = "models/paddle";
+                config.labelPath = "models/paddle/labels.txt";
+                config.instances = PADDLE_INSTANCES;
+                config.cpuThreadNum = PADDLE_CPU_THREADS;
+                config.cpuPowerMode = "LITE_POWER_HIGH";
+                config.plateAlphabetOnly = PADDLE_PLATE_ALPHABET;
+                config.plateGrammar = PADDLE_PLATE_GRAMMAR;
+                return new PaddleEngine(PredictorPool.create(MainActivity.this, config));
+            });
+            if (ENABLE_CASCADE) {
+                // Comparte el pool de Paddle y, salvo que haya un modelo de patentes propio, el
+                // intérprete de YOLO: los modelos se cargan una sola vez
+                registry.register("Cascade", () -> {
+                    PredictorPool pool = registry.<PaddleEngine>get("Paddle").getPool();
+                    if (CASCADE_PLATE_MODEL == null) {
+                        return new CascadeEngine(registry.<YoloEngine>get("YOLO").getHelper(), false, pool,
+                                CASCADE_CROP, CASCADE_PADDING, true);
+                    }
+                    return new CascadeEngine(new YoloTFLiteHelper(MainActivity.this, CASCADE_PLATE_MODEL, null, null,
+                            message -> { }), true, pool, CASCADE_CROP, CASCADE_PADDING, true);
+                });
+            }
+            if (ENABLE_MOSAIC) {
+                registry.register("Mosaic", () -> new MosaicEngine(registry.<PaddleEngine>get("Paddle").getPool(),
+                        MOSAIC_MAX_IMAGES, MOSAIC_MAX_WAIT_MS, MOSAIC_GUTTER));
+            }
+            // Motores de la pasada con todos los motores; la cascada se registra después y corre
+            // en su propia pasada
+            final List<String> allEngines = registry.getNames();
+            final List<String> earlyExitOnly = Collections.singletonList("EarlyExit");
+            if (RUN_MODE != RunMode.ALL_ENGINES) {
+                // Reutiliza las instancias de los motores ya registrados
+                registry.register("EarlyExit", () -> {
+                    EarlyExitEngine engine = new EarlyExitEngine(plateFilter, true);
+                    for (String name : EARLY_EXIT_STAGES) {
+                        if (registry.contains(name)) {
+                            engine.addStage(name, registry.get(name), EARLY_EXIT_MIN_CONFIDENCE);
+                        }
+                    }
+                    return engine;
+                });
+            }
+            try {
+                registry.get("Paddle");
+            } catch (Exception e) {
+                registry.closeAll();
+                return "Error al cargar el modelo Paddle OCR.";
+            }
 
-            int totalFiles = files.length;
-            long totalProcessingTime = 0; // suma del tiempo de procesamiento de cada imagen
+            // Bitmaps que los motores ya liberaron, para decodificar las siguientes imágenes sobre ellos
+            final BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_BYTES);
+            BenchmarkScheduler.ImageSource source = new BenchmarkScheduler.ImageSource() {
+                @Override
+                public int size() {
+                    return files.size();
+                }
 
-            // Regex para extraer formato de patente chilena (ejemplo: 3 letras seguidas de 3 dígitos)
-            Pattern patentePattern = Pattern.compile("^([A-Z]{4}[0-9]{2}|[A-Z]{2}[0-9]{4})$");
+                @Override
+                public String getName(int index) {
+                    return files.get(index).getName();
+                }
 
-            // Inicializamos Paddle OCR (una única vez para todas las imágenes)
-            Predictor paddleOcr = new Predictor();
-            // Asumimos que los modelos y etiquetas están en la ruta "models/paddle" y "models/paddle/labels.txt" respectivamente.
-            boolean paddleLoaded = paddleOcr.init(MainActivity.this, "models/paddle", "models/paddle/labels.txt", 0, 4, "LITE_POWER_HIGH");
-            if (!paddleLoaded) {
-                return "Error al cargar el modelo Paddle OCR.";
-            }
+                @Override
+                public Bitmap decode(int index) throws IOException {
+                    return decode(index, 0);
+                }
 
-            for (int i = 0; i < totalFiles; i++) {
-                DocumentFile file = files[i];
-                if (file.isFile() && file.getName() != null &&
-                        (file.getName().toLowerCase().endsWith(".jpg") || file.getName().toLowerCase().endsWith(".png"))) {
-                    try {
-                        InputStream is = getContentResolver().openInputStream(file.getUri());
-                        Bitmap bmp = BitmapFactory.decodeStream(is);
-                        if (is != null) is.close();
-
-                        // Redimensionar la imagen si alguna dimensión es menor a 128 píxeles
-                        bmp = resizeIfNeeded(bmp, 256);
-
-                        // MLKit OCR
-                        long startMLKit = System.currentTimeMillis();
-                        OcrResult mlkitResult = mlKitOcrHelper.runOcrSync(bmp);
-                        long mlkitTime = System.currentTimeMillis() - startMLKit;
-
-                        // Filtrar el texto obtenido para conservar sólo el formato de patente (alfanumérico)
-                        String mlkitText = mlkitResult.getText();
-                        Matcher matcher = patentePattern.matcher(mlkitText);
-                        String filteredMlkitText = "";
-                        if (matcher.find()) {
-                            filteredMlkitText = matcher.group(0);
-                        }
-                        filteredMlkitText = filteredMlkitText.replace(",", " ");
-
-                        // YOLO OCR
-                        long startYOLO = System.currentTimeMillis();
-                        YoloTFLiteHelper yoloHelper = new YoloTFLiteHelper(
-                                MainActivity.this,
-                                "models/yolo/" + chosenYoloModel,
-                                null,
-                                null,
-                                message -> { }
-                        );
-                        // Ejecuta inferencia sobre la imagen completa
-                        List<YoloTFLiteHelper.YoloDetection> detections = yoloHelper.runInference(
-                                bmp,
-                                bmp.getWidth(),
-                                bmp.getHeight()
-                        );
-                        long yoloTime = System.currentTimeMillis() - startYOLO;
-
-                        // Ordenar detecciones de izquierda a derecha
-                        Collections.sort(detections, new Comparator<YoloTFLiteHelper.YoloDetection>() {
-                            @Override
-                            public int compare(YoloTFLiteHelper.YoloDetection d1, YoloTFLiteHelper.YoloDetection d2) {
-                                return Float.compare(d1.left, d2.left);
-                            }
-                        });
-
-                        StringBuilder yoloTextBuilder = new StringBuilder();
-                        float sumConfidence = 0f;
-                        for (YoloTFLiteHelper.YoloDetection det : detections) {
-                            yoloTextBuilder.append(det.label);
-                            sumConfidence += det.confidence;
-                        }
-                        float avgYoloConfidence = detections.isEmpty() ? 0 : sumConfidence / detections.size();
-                        String yoloText = yoloTextBuilder.toString().replace(",", " ");
-
-                        // Paddle OCR
-                        long startPaddle = System.currentTimeMillis();
-                        paddleOcr.setInputImage(bmp);
-                        // Se asume que se ejecutan detección, clasificación y reconocimiento (banderas = 1)
-                        Predictor.PredictionResult paddleResult = paddleOcr.runModelSync();
-                        long paddleTime = System.currentTimeMillis() - startPaddle;
-                        // Calcular promedio de confianza de Paddle (si hay detalles)
-                        float sumPaddleConfidence = 0f;
-                        int count = 0;
-                        if (paddleResult.details != null) {
-                            for (OcrResultModel det : paddleResult.details) {
-                                sumPaddleConfidence += det.getConfidence();
-                                count++;
-                            }
-                        }
-                        float avgPaddleConfidence = count > 0 ? sumPaddleConfidence / count : 0;
-                        String paddleText = paddleResult.ocr.replace(",", " ");
+                @Override
+                public Bitmap decode(int index, int targetSize) throws IOException {
+                    DocumentFile file = files.get(index);
+                    if (!isImage(file)) {
+                        return null;
+                    }
+                    // Se submuestrea al tamaño que usan los motores, sin bajar de MIN_IMAGE_SIZE
+                    Bitmap bmp = BitmapDecoder.decode(getContentResolver(), file.getUri(), targetSize,
+                            MIN_IMAGE_SIZE, bitmapPool);
+                    if (bmp == null) {
+                        return null;
+                    }
+                    // Redimensionar la imagen si alguna dimensión es menor a MIN_IMAGE_SIZE píxeles
+                    Bitmap resized = resizeIfNeeded(bmp, MIN_IMAGE_SIZE);
+                    if (resized != bmp) {
+                        bitmapPool.put(bmp);
+                    }
+                    return resized;
+                }
 
-                        long totalTimeForFile = mlkitTime + yoloTime + paddleTime;
-                        totalProcessingTime += totalTimeForFile;
+                @Override
+                public void release(Bitmap bitmap) {
+                    bitmapPool.put(bitmap);
+                }
 
-                        String line = file.getName() + "," +
-                                filteredMlkitText + "," + mlkitResult.getConfidence() + "," + mlkitTime +
-                                "," + yoloText + "," + avgYoloConfidence + "," + yoloTime +
-                                "," + paddleText + "," + avgPaddleConfidence + "," + paddleTime;
-                        csvLines.add(line);
-                    } catch (IOException e) {
-                        Log.e("FolderProcess", "Error procesando " + file.getName(), e);
-                    } catch (Exception ex) {
-                        Log.e("FolderProcess", "Error con Paddle OCR en " + file.getName(), ex);
+                @Override
+                public String getContentHash(int index) throws IOException {
+                    DocumentFile file = files.get(index);
+                    if (!isImage(file)) {
+                        return null;
+                    }
+                    try (InputStream is = getContentResolver().openInputStream(file.getUri())) {
+                        if (is == null) {
+                            return null;
+                        }
+                        return ResultCache.key(ResultCache.sha256(is), "min=" + MIN_IMAGE_SIZE);
                     }
                 }
-                // Publica progreso: calcula tiempo restante estimado
-                int processed = i + 1;
-                long avgTimePerFile = processed > 0 ? totalProcessingTime / processed : 0;
-                long estimatedRemainingTime = avgTimePerFile * (totalFiles - processed);
-                publishProgress(new ProgressData(processed, totalFiles, estimatedRemainingTime));
+            };
+
+            BenchmarkScheduler.Config schedulerConfig = new BenchmarkScheduler.Config();
+            schedulerConfig.mode = SCHEDULER_MODE;
+            schedulerConfig.decodeAhead = DECODE_AHEAD;
+            schedulerConfig.warmupIterations = WARMUP_ITERATIONS;
+            schedulerConfig.timedIterations = TIMED_ITERATIONS;
+            schedulerConfig.maxInFlightPerEngine = MLKIT_MAX_IN_FLIGHT;
+            // Al comparar, ninguna de las dos pasadas puede salir de la caché: sus tiempos no
+            // medirían nada
+            if (USE_RESULT_CACHE && RUN_MODE != RunMode.COMPARE) {
+                try {
+                    schedulerConfig.resultCache = ResultCache.open(
+                            new File(getFilesDir(), "result_cache"), RESULT_CACHE_MAX_BYTES);
+                } catch (IOException e) {
+                    // Sin caché se infiere todo, como antes
+                    Log.w(TAG, "No se pudo abrir la caché de resultados", e);
+                }
             }
-            String csvData = String.join("\n", csvLines);
-            String savedPath = CsvUtils.saveCsv(MainActivity.this, csvData, "ocr_results.csv");
-            if (savedPath != null) {
-                return "CSV guardado en:\n" + savedPath;
-            } else {
-                return "Error al guardar CSV.";
+            BenchmarkScheduler.BatchResult batch;
+            BenchmarkScheduler.BatchResult earlyExitBatch = null;
+            String csvPath;
+            try {
+                if (RUN_MODE == RunMode.EARLY_EXIT) {
+                    batch = runPass(source, registry, earlyExitOnly, schedulerConfig, "ocr_early_exit_results.csv",
+                            RESUME_RESULTS, allFiles, files);
+                    csvPath = CsvUtils.getOutputFile(MainActivity.this, "ocr_early_exit_results.csv").getAbsolutePath();
+                } else {
+                    if (RUN_MODE == RunMode.COMPARE) {
+                        // Calentamiento (y orden de la cascada) antes de medir: así ninguna de
+                        // las dos pasadas paga el calentamiento de los motores
+                        prepareAll(registry, allFiles);
+                    }
+                    batch = runPass(source, registry, allEngines, schedulerConfig, "ocr_results.csv",
+                            RESUME_RESULTS, allFiles, files);
+                    csvPath = CsvUtils.getOutputFile(MainActivity.this, "ocr_results.csv").getAbsolutePath();
+                    if (RUN_MODE == RunMode.COMPARE) {
+                        // Las mismas imágenes, ahora sólo con la cascada
+                        earlyExitBatch = runPass(source, registry, earlyExitOnly, schedulerConfig,
+                                "ocr_early_exit_results.csv", false, null, files);
+                    }
+                }
+                if (registry.contains("EarlyExit") && RUN_MODE != RunMode.ALL_ENGINES) {
+                    EarlyExitEngine earlyExit = registry.get("EarlyExit");
+                    CsvUtils.saveCsv(MainActivity.this, earlyExit.summaryCsv(), "ocr_early_exit_summary.csv");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Procesamiento interrumpido.";
+            } catch (CsvWriteException e) {
+                Log.e(TAG, "Error al escribir el CSV", e.getCause());
+                return "Error al guardar CSV: " + e.getCause().getMessage();
+            } catch (Exception e) {
+                // Carga de un motor, calentamiento o falla del planificador
+                Log.e(TAG, "Error durante el procesamiento", e);
+                return "Error durante el procesamiento: " + e;
+            } finally {
+                registry.closeAll();
+                bitmapPool.clear();
+                closeQuietly(schedulerConfig.resultCache);
             }
+
+            CsvUtils.saveCsv(MainActivity.this, batch.latencySummaryCsv(), "ocr_latency_summary.csv");
+            StringBuilder message = new StringBuilder("CSV guardado en:\n").append(csvPath)
+                    .append("\nImágenes: ").append(batch.imageCount)
+                    .append(" (").append(String.format("%.2f", batch.imagesPerSecond())).append(" img/s)");
+            if (batch.cachedResults > 0) {
+                message.append("\nDesde caché: ").append(batch.cachedResults).append(" resultados");
+            }
+            if (earlyExitBatch != null && earlyExitBatch.imagesPerSecond() > 0 && batch.imagesPerSecond() > 0) {
+                // Ganancia medida: tiempo real de ambas pasadas sobre las mismas imágenes
+                message.append("\nSalida temprana: ")
+                        .append(String.format("%.2f", earlyExitBatch.imagesPerSecond())).append(" img/s, ")
+                        .append(String.format("%.2f", earlyExitBatch.imagesPerSecond() / batch.imagesPerSecond()))
+                        .append("x respecto de correr todos los motores");
+            }
+            int skipped = allFiles.length - files.size();
+            if (skipped > 0) {
+                message.append("\nReanudado: ").append(skipped).append(" archivos ya procesados");
+            }
+            for (Map.Entry<String, LatencyHistogram> entry : batch.stageLatency.entrySet()) {
+                message.append('\n').append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            return message.toString();
         }
 
         @Override
@@ -255,19 +457,217 @@ public class MainActivity extends AppCompatActivity {
         }
 
         /**
-         * Redimensiona la imagen para que su ancho o alto sea al menos minDimension.
-         * Se mantiene la relación de aspecto.
+         * Una pasada del planificador sobre {@code files} con los motores {@code engineNames}. Si
+         * {@code allFiles} no es null, antes completa {@code files} con los archivos que aún no
+         * están en el CSV.
          */
-        private Bitmap resizeIfNeeded(Bitmap bmp, int minDimension) {
-            int width = bmp.getWidth();
-            int height = bmp.getHeight();
-            if (width >= minDimension && height >= minDimension) {
-                return bmp;
+        private BenchmarkScheduler.BatchResult runPass(BenchmarkScheduler.ImageSource source, EngineRegistry registry,
+                                                       List<String> engineNames, BenchmarkScheduler.Config config,
+                                                       String csvName, boolean resume, DocumentFile[] allFiles,
+                                                       List<DocumentFile> files) throws Exception {
+            BenchmarkScheduler runner = new BenchmarkScheduler(source, registry, engineNames, config);
+            // Las filas se escriben a medida que salen del pipeline; si una corrida anterior se
+            // interrumpió, se retoma omitiendo los archivos que ya están en el CSV
+            File csvFile = CsvUtils.getOutputFile(MainActivity.this, csvName);
+            // getCsvColumns ya crea los motores: sus errores no son del CSV
+            List<String> columns = runner.getCsvColumns();
+            CsvResultWriter writer;
+            try {
+                writer = CsvResultWriter.open(csvFile, columns, resume);
+            } catch (IOException e) {
+                throw new CsvWriteException(e);
             }
-            float scale = (float) minDimension / Math.min(width, height);
-            int newWidth = Math.round(width * scale);
-            int newHeight = Math.round(height * scale);
-            return Bitmap.createScaledBitmap(bmp, newWidth, newHeight, true);
+            Exception failure = null;
+            try {
+                if (allFiles != null) {
+                    for (DocumentFile file : allFiles) {
+                        if (!writer.isCompleted(file.getName())) {
+                            files.add(file);
+                        }
+                    }
+                }
+                return runner.run(row -> {
+                    try {
+                        writer.writeRow(row);
+                    } catch (IOException e) {
+                        throw new CsvWriteException(e);
+                    }
+                }, (processed, total, estimatedRemainingTime) ->
+                        publishProgress(new ProgressData(processed, total, estimatedRemainingTime)));
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            } finally {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Un error al cerrar no tapa el que cortó la pasada
+                    if (failure == null) {
+                        throw new CsvWriteException(e);
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        /**
+         * Crea y calienta todos los motores con la primera imagen que se pueda decodificar, al
+         * mismo tamaño al que las decodifica el planificador.
+         */
+        private void prepareAll(EngineRegistry registry, DocumentFile[] candidates) throws Exception {
+            int targetSize = 0;
+            for (String name : registry.getNames()) {
+                ManagedEngine engine = registry.get(name);
+                if (engine instanceof OcrEngine) {
+                    targetSize = Math.max(targetSize, ((OcrEngine) engine).getPreferredInputSize());
+                }
+            }
+            for (DocumentFile file : candidates) {
+                if (!isImage(file)) {
+                    continue;
+                }
+                Bitmap sample = BitmapDecoder.decode(getContentResolver(), file.getUri(), targetSize,
+                        MIN_IMAGE_SIZE, null);
+                if (sample == null) {
+                    continue;
+                }
+                try {
+                    for (String name : registry.getNames()) {
+                        registry.prepare(name, sample, WARMUP_ITERATIONS);
+                    }
+                } finally {
+                    sample.recycle();
+                }
+                return;
+            }
+        }
+
+        private void closeQuietly(Closeable closeable) {
+            if (closeable == null) {
+                return;
+            }
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error cerrando " + closeable, e);
+            }
+        }
+    }
+
+    /**
+     * Error de E/S al escribir el CSV de resultados, para no confundirlo con las fallas de los
+     * motores, que también pueden ser {@link IOException}.
+     */
+    private static final class CsvWriteException extends Exception {
+        CsvWriteException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Barrido de configuraciones de Paddle (instancias x hilos x modo de energía x detLongSize) y
+     * YOLO (modelo x hilos) sobre una muestra fija de la carpeta, con {@link ConfigSweep}. Guarda
+     * la matriz completa en ocr_config_sweep.csv y muestra la configuración recomendada por motor.
+     */
+    private class SweepTask extends AsyncTask<Uri, ProgressData, String> {
+
+        @Override
+        protected void onPreExecute() {
+            tvFolderOutput.setText("Barrido de configuraciones...");
+            progressBar.setVisibility(ProgressBar.VISIBLE);
+            progressBar.setProgress(0);
+        }
+
+        @Override
+        protected String doInBackground(Uri... uris) {
+            DocumentFile directory = DocumentFile.fromTreeUri(MainActivity.this, uris[0]);
+            if (directory == null || !directory.isDirectory()) {
+                return "La carpeta seleccionada no es válida.";
+            }
+            PlateFilter plateFilter = new PlateFilter();
+            int decodeSize = 0;
+            for (int size : SWEEP_PADDLE_DET_SIZES) {
+                decodeSize = Math.max(decodeSize, size);
+            }
+
+            // La muestra se decodifica una sola vez y se reutiliza en todos los puntos
+            List<Bitmap> sample = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            try {
+                for (DocumentFile file : directory.listFiles()) {
+                    if (sample.size() >= SWEEP_SAMPLE_SIZE) {
+                        break;
+                    }
+                    if (!isImage(file)) {
+                        continue;
+                    }
+                    Bitmap bmp = BitmapDecoder.decode(getContentResolver(), file.getUri(), decodeSize,
+                            MIN_IMAGE_SIZE, null);
+                    if (bmp == null) {
+                        continue;
+                    }
+                    Bitmap resized = resizeIfNeeded(bmp, MIN_IMAGE_SIZE);
+                    if (resized != bmp) {
+                        bmp.recycle();
+                    }
+                    sample.add(resized);
+                    expected.add(ConfigSweep.expectedPlate(file.getName(), plateFilter));
+                }
+                if (sample.isEmpty()) {
+                    return "La carpeta no tiene imágenes.";
+                }
+
+                PredictorPool.Config paddleConfig = new PredictorPool.Config();
+                paddleConfig.modelPath = "models/paddle";
+                paddleConfig.labelPath = "models/paddle/labels.txt";
+                paddleConfig.plateAlphabetOnly = PADDLE_PLATE_ALPHABET;
+                paddleConfig.plateGrammar = PADDLE_PLATE_GRAMMAR;
+                List<String> yoloModels = new ArrayList<>();
+                String[] assets = getAssets().list("models/yolo");
+                if (assets != null) {
+                    for (String asset : assets) {
+                        if (asset.endsWith(".tflite")) {
+                            yoloModels.add(asset);
+                        }
+                    }
+                }
+
+                ConfigSweep sweep = new ConfigSweep(sample, expected, plateFilter);
+                sweep.warmupIterations = WARMUP_ITERATIONS;
+                sweep.timedIterations = SWEEP_TIMED_ITERATIONS;
+                sweep.inFlight = SWEEP_IN_FLIGHT;
+                sweep.add(ConfigSweep.paddlePoints(MainActivity.this, paddleConfig, SWEEP_PADDLE_INSTANCES,
+                        SWEEP_PADDLE_THREADS, SWEEP_PADDLE_POWER_MODES, SWEEP_PADDLE_DET_SIZES));
+                sweep.add(ConfigSweep.yoloPoints(MainActivity.this, "models/yolo",
+                        yoloModels.toArray(new String[0]), SWEEP_YOLO_THREADS));
+
+                SweepMatrix matrix = sweep.run((done, total, description) ->
+                        publishProgress(new ProgressData(done * 100 / total, 100, 0)));
+                String path = CsvUtils.saveCsv(MainActivity.this, matrix.toCsv(), "ocr_config_sweep.csv");
+                return "Barrido guardado en:\n" + path + "\nMuestra: " + sample.size() + " imágenes, "
+                        + sweep.getPointCount() + " configuraciones\nRecomendadas:\n"
+                        + matrix.describeRecommendations();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Barrido interrumpido.";
+            } catch (IOException e) {
+                return "Error al leer la carpeta: " + e.getMessage();
+            } finally {
+                for (Bitmap bitmap : sample) {
+                    bitmap.recycle();
+                }
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(ProgressData... values) {
+            progressBar.setProgress(values[0].processed);
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            progressBar.setVisibility(ProgressBar.GONE);
+            tvFolderOutput.append("\n" + result);
         }
     }
 }
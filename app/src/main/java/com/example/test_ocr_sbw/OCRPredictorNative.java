@@ -3,7 +3,11 @@ package com.example.test_ocr_sbw;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class OCRPredictorNative {
@@ -26,21 +30,77 @@ public class OCRPredictorNative {
 
     private long nativePointer = 0;
 
+    // Buffer directo reutilizable donde la parte nativa escribe los resultados
+    private static final int INITIAL_RESULT_BUFFER_BYTES = 16 * 1024;
+    private ByteBuffer resultBuffer = allocateResultBuffer(INITIAL_RESULT_BUFFER_BYTES);
+    private final OcrResultReader resultReader = new OcrResultReader();
+
+    // Instancias devueltas con recycle() que se reutilizan en las próximas inferencias
+    private static final int MAX_POOLED_RESULTS = 256;
+    private final ArrayDeque<OcrResultModel> resultPool = new ArrayDeque<>();
+
     public OCRPredictorNative(Config config) {
         this.config = config;
         loadLibrary();
-        nativePointer = init(config.detModelFilename, config.recModelFilename, config.clsModelFilename, config.useOpencl,
-                config.cpuThreadNum, config.cpuPower);
+        if (config.detModelBuffer != null && config.recModelBuffer != null && config.clsModelBuffer != null) {
+            nativePointer = initFromBuffers(config.detModelBuffer, config.recModelBuffer, config.clsModelBuffer,
+                    config.useOpencl, config.cpuThreadNum, config.cpuPower, config.recBatchNum);
+        } else {
+            nativePointer = init(config.detModelFilename, config.recModelFilename, config.clsModelFilename, config.useOpencl,
+                    config.cpuThreadNum, config.cpuPower, config.recBatchNum);
+        }
+        if (nativePointer == 0) {
+            throw new RuntimeException("OCRPredictorNative init failed");
+        }
         Log.i("OCRPredictorNative", "load success " + nativePointer);
 
     }
 
 
     public ArrayList<OcrResultModel> runImage(Bitmap originalImage, int max_size_len, int run_det, int run_cls, int run_rec) {
+        return runImage(originalImage, max_size_len, run_det, run_cls, run_rec, null);
+    }
+
+    /**
+     * Igual que {@link #runImage(Bitmap, int, int, int, int)}, copiando además el desglose de
+     * tiempos por etapa en {@code timings} (si no es null).
+     */
+    public ArrayList<OcrResultModel> runImage(Bitmap originalImage, int max_size_len, int run_det, int run_cls, int run_rec,
+                                              StageTimings timings) {
+        OcrResultReader reader = runImageRaw(originalImage, max_size_len, run_det, run_cls, run_rec);
+        if (timings != null) {
+            reader.readStageTimings(timings);
+        }
+        return postprocess(reader);
+    }
+
+    /**
+     * Ejecuta la inferencia y devuelve un lector sobre el buffer de resultados, sin crear objetos
+     * por caja. El lector es válido hasta la siguiente llamada sobre esta instancia.
+     */
+    public OcrResultReader runImageRaw(Bitmap originalImage, int max_size_len, int run_det, int run_cls, int run_rec) {
         Log.i("OCRPredictorNative", "begin to run image ");
-        float[] rawResults = forward(nativePointer, originalImage, max_size_len, run_det, run_cls, run_rec);
-        ArrayList<OcrResultModel> results = postprocess(rawResults);
-        return results;
+        int length = forward(nativePointer, originalImage, max_size_len, run_det, run_cls, run_rec, resultBuffer);
+        if (length < 0) {
+            // No cupo: se agranda el buffer y se copian los resultados que quedaron pendientes
+            int required = -length;
+            resultBuffer = allocateResultBuffer(Math.max(required, resultBuffer.capacity() * 2));
+            length = fetchResults(nativePointer, resultBuffer);
+        }
+        return resultReader.wrap(resultBuffer, length);
+    }
+
+    /**
+     * Devuelve resultados que el llamador ya no usa para que se reutilicen en las próximas
+     * llamadas a {@link #runImage}. Opcional: si no se llama, simplemente se crean nuevos.
+     */
+    public void recycle(List<OcrResultModel> results) {
+        for (OcrResultModel result : results) {
+            if (resultPool.size() >= MAX_POOLED_RESULTS) {
+                break;
+            }
+            resultPool.addLast(result);
+        }
     }
 
     public static class Config {
@@ -50,9 +110,27 @@ public class OCRPredictorNative {
         public String detModelFilename;
         public String recModelFilename;
         public String clsModelFilename;
+        // Modelos ya en memoria (buffers directos, p. ej. mapeados desde el APK); si los tres están
+        // presentes se usan en lugar de los archivos
+        public ByteBuffer detModelBuffer;
+        public ByteBuffer recModelBuffer;
+        public ByteBuffer clsModelBuffer;
+        // Cajas que se reconocen juntas en una sola ejecución del modelo rec (1 = sin lotes)
+        public int recBatchNum = 1;
 
     }
 
+    /**
+     * Restringe el decodificador CTC a las clases dadas ({@code classKinds}: 0 letra, 1 dígito) y,
+     * si {@code grammar} no está vacía, a sus formatos ("LLLLDD|LLDDDD"). Sin clases se vuelve a
+     * decodificar sobre el diccionario completo.
+     */
+    public void setRecClasses(int[] classIds, int[] classKinds, String grammar) {
+        if (nativePointer != 0) {
+            setRecClasses(nativePointer, classIds, classKinds, grammar != null ? grammar : "");
+        }
+    }
+
     public void destory() {
         if (nativePointer != 0) {
             release(nativePointer);
@@ -60,46 +138,41 @@ public class OCRPredictorNative {
         }
     }
 
-    protected native long init(String detModelPath, String recModelPath, String clsModelPath, int useOpencl, int threadNum, String cpuMode);
+    protected native long init(String detModelPath, String recModelPath, String clsModelPath, int useOpencl, int threadNum, String cpuMode,
+                               int recBatchNum);
+
+    protected native long initFromBuffers(ByteBuffer detModel, ByteBuffer recModel, ByteBuffer clsModel, int useOpencl,
+                                          int threadNum, String cpuMode, int recBatchNum);
+
+    protected native int forward(long pointer, Bitmap originalImage, int max_size_len, int run_det, int run_cls, int run_rec,
+                                 ByteBuffer out);
 
-    protected native float[] forward(long pointer, Bitmap originalImage,int max_size_len, int run_det, int run_cls, int run_rec);
+    protected native int fetchResults(long pointer, ByteBuffer out);
+
+    protected native void setRecClasses(long pointer, int[] classIds, int[] classKinds, String grammar);
 
     protected native void release(long pointer);
 
-    private ArrayList<OcrResultModel> postprocess(float[] raw) {
-        ArrayList<OcrResultModel> results = new ArrayList<OcrResultModel>();
-        int begin = 0;
+    private static ByteBuffer allocateResultBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
 
-        while (begin < raw.length) {
-            int point_num = Math.round(raw[begin]);
-            int word_num = Math.round(raw[begin + 1]);
-            OcrResultModel res = parse(raw, begin + 2, point_num, word_num);
-            begin += 2 + 1 + point_num * 2 + word_num + 2;
-            results.add(res);
+    private ArrayList<OcrResultModel> postprocess(OcrResultReader reader) {
+        ArrayList<OcrResultModel> results = new ArrayList<OcrResultModel>(reader.size());
+        for (int i = 0; i < reader.size(); i++) {
+            results.add(parse(reader.moveTo(i)));
         }
-
         return results;
     }
 
-    private OcrResultModel parse(float[] raw, int begin, int pointNum, int wordNum) {
-        int current = begin;
-        OcrResultModel res = new OcrResultModel();
-        res.setConfidence(raw[current]);
-        current++;
-        for (int i = 0; i < pointNum; i++) {
-            res.addPoints(Math.round(raw[current + i * 2]), Math.round(raw[current + i * 2 + 1]));
+    private OcrResultModel parse(OcrResultReader reader) {
+        OcrResultModel res = resultPool.pollLast();
+        if (res == null) {
+            res = new OcrResultModel();
+        } else {
+            res.reset();
         }
-        current += (pointNum * 2);
-        for (int i = 0; i < wordNum; i++) {
-            int index = Math.round(raw[current + i]);
-            res.addWordIndex(index);
-        }
-        current += wordNum;
-        res.setClsIdx(raw[current]);
-        res.setClsConfidence(raw[current + 1]);
-        Log.i("OCRPredictorNative", "word finished " + wordNum);
+        res.readFrom(reader);
         return res;
     }
-
-
 }
@@ -2,41 +2,148 @@ package com.example.test_ocr_sbw;
 
 import android.graphics.Point;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Resultado de una caja OCR. Los vértices del polígono se guardan empaquetados en un
+ * {@code int[]} (x0, y0, x1, y1...) y los índices de caracteres en otro {@code int[]}, de modo
+ * que una caja no genera un {@link Point} por vértice ni un {@link Integer} por carácter.
+ * {@link #getPoints()} y {@link #getWordIndex()} se mantienen como vistas de sólo lectura.
+ */
 public class OcrResultModel {
-    private List<Point> points;
-    private List<Integer> wordIndex;
+    private static final int[] EMPTY = new int[0];
+
+    private int[] points = EMPTY;
+    private int pointCount = 0;
+    private int[] wordIndex = EMPTY;
+    private int wordCount = 0;
     private String label;
     private float confidence;
     private float cls_idx;
     private String cls_label;
     private float cls_confidence;
+    private float recTime;
 
     public OcrResultModel() {
         super();
-        points = new ArrayList<>();
-        wordIndex = new ArrayList<>();
+    }
+
+    /**
+     * Deja la instancia vacía conservando los arreglos ya reservados, para reutilizarla.
+     */
+    public void reset() {
+        pointCount = 0;
+        wordCount = 0;
+        label = null;
+        confidence = 0;
+        cls_idx = 0;
+        cls_label = null;
+        cls_confidence = 0;
+        recTime = 0;
     }
 
     public void addPoints(int x, int y) {
-        Point point = new Point(x, y);
-        points.add(point);
+        ensurePointCapacity(pointCount + 1);
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        pointCount++;
     }
 
     public void addWordIndex(int index) {
-        wordIndex.add(index);
+        ensureWordCapacity(wordCount + 1);
+        wordIndex[wordCount++] = index;
     }
 
-    public List<Point> getPoints() {
+    /**
+     * Copia todos los vértices y los índices de caracteres del resultado actual del lector.
+     */
+    public void readFrom(OcrResultReader reader) {
+        pointCount = reader.getPointCount();
+        ensurePointCapacity(pointCount);
+        reader.copyPoints(points, 0);
+        wordCount = reader.getWordCount();
+        ensureWordCapacity(wordCount);
+        reader.copyWordIndices(wordIndex, 0);
+        confidence = reader.getConfidence();
+        cls_idx = reader.getClsIdx();
+        cls_confidence = reader.getClsConfidence();
+        recTime = reader.getRecTime();
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getPointX(int index) {
+        return points[index * 2];
+    }
+
+    public int getPointY(int index) {
+        return points[index * 2 + 1];
+    }
+
+    /**
+     * Arreglo interno de coordenadas intercaladas; sólo los primeros {@code 2 * getPointCount()}
+     * valores son válidos.
+     */
+    public int[] getPointArray() {
         return points;
     }
 
-    public List<Integer> getWordIndex() {
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Arreglo interno de índices de caracteres; sólo los primeros {@link #getWordCount()}
+     * valores son válidos.
+     */
+    public int[] getWordIndexArray() {
         return wordIndex;
     }
 
+    /**
+     * Vista de los vértices como {@link Point}; cada acceso crea un punto nuevo.
+     */
+    public List<Point> getPoints() {
+        return new AbstractList<Point>() {
+            @Override
+            public Point get(int index) {
+                if (index < 0 || index >= pointCount) {
+                    throw new IndexOutOfBoundsException("index=" + index + ", size=" + pointCount);
+                }
+                return new Point(points[index * 2], points[index * 2 + 1]);
+            }
+
+            @Override
+            public int size() {
+                return pointCount;
+            }
+        };
+    }
+
+    /**
+     * Vista de los índices de caracteres como lista de {@link Integer}.
+     */
+    public List<Integer> getWordIndex() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                if (index < 0 || index >= wordCount) {
+                    throw new IndexOutOfBoundsException("index=" + index + ", size=" + wordCount);
+                }
+                return wordIndex[index];
+            }
+
+            @Override
+            public int size() {
+                return wordCount;
+            }
+        };
+    }
+
     public String getLabel() {
         return label;
     }
@@ -76,4 +183,27 @@ public class OcrResultModel {
     public void setClsConfidence(float confidence) {
         this.cls_confidence = confidence;
     }
+
+    /**
+     * Tiempo en ms que tomó reconocer esta caja en la parte nativa.
+     */
+    public float getRecTime() {
+        return recTime;
+    }
+
+    public void setRecTime(float recTime) {
+        this.recTime = recTime;
+    }
+
+    private void ensurePointCapacity(int count) {
+        if (points.length < count * 2) {
+            points = Arrays.copyOf(points, Math.max(count * 2, points.length * 2));
+        }
+    }
+
+    private void ensureWordCapacity(int count) {
+        if (wordIndex.length < count) {
+            wordIndex = Arrays.copyOf(wordIndex, Math.max(count, wordIndex.length * 2));
+        }
+    }
 }
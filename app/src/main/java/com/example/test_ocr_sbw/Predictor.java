@@ -4,37 +4,53 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import com.example.test_ocr_sbw.benchmark.LatencyHistogram;
+import com.example.test_ocr_sbw.engine.ManagedEngine;
+import com.example.test_ocr_sbw.utils.ModelAssets;
+import com.example.test_ocr_sbw.utils.PlateFilter;
+
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Vector;
+import java.util.Arrays;
 
-public class Predictor {
+public class Predictor implements ManagedEngine {
     private static final String TAG = Predictor.class.getSimpleName();
     public boolean isLoaded = false;
-    public int warmupIterNum = 1;
+    // Iteraciones sin medir y medidas por imagen en runModelSync(); el calentamiento único del
+    // motor lo hace warmUp()
+    public int warmupIterNum = 0;
     public int inferIterNum = 1;
     public int cpuThreadNum = 4;
     public String cpuPowerMode = "LITE_POWER_HIGH";
+    // Cajas por lote en el reconocimiento; debe fijarse antes de init()
+    public int recBatchNum = 6;
     public String modelPath = "";
     public String modelName = "";
     protected OCRPredictorNative paddlePredictor = null;
     protected float inferenceTime = 0;
     // Sólo para detección de objetos
-    protected Vector<String> wordLabels = new Vector<>();
+    protected LabelTable wordLabels = LabelTable.of();
     protected int detLongSize = 960;
     protected float scoreThreshold = 0.1f;
     protected Bitmap inputImage = null;
     // Ya no se utiliza outputImage, pues no se dibuja el resultado
     protected volatile String outputResult = "";
     protected float postprocessTime = 0;
+    // Desglose por etapa de la última inferencia medida
+    protected final StageTimings stageTimings = new StageTimings();
+    // Latencias de la última imagen y acumuladas desde resetLatency()
+    protected final LatencyHistogram imageLatency = new LatencyHistogram();
+    protected final LatencyHistogram totalLatency = new LatencyHistogram();
 
     // Clase que encapsula el resultado de la predicción
     public static class PredictionResult {
         public String ocr;                       // Texto OCR concatenado
-        public float inferenceTime;              // Tiempo de inferencia en ms
+        public float inferenceTime;              // Tiempo de inferencia en ms (promedio de las iteraciones)
+        public LatencyHistogram latency;         // Muestras de las inferIterNum iteraciones medidas
         public ArrayList<OcrResultModel> details; // Lista de resultados detallados (cada uno con su confianza)
+        public StageTimings timings;             // Desglose de tiempos por etapa
     }
 
     public Predictor() {
@@ -60,6 +76,14 @@ public class Predictor {
         return true;
     }
 
+    /**
+     * Cambia el lado mayor de la entrada de detección sin recargar el modelo; Paddle Lite
+     * redimensiona los tensores en la siguiente inferencia.
+     */
+    public void setDetLongSize(int detLongSize) {
+        this.detLongSize = detLongSize;
+    }
+
     protected boolean loadModel(Context appCtx, String modelPath, int useOpencl, int cpuThreadNum, String cpuPowerMode) {
         // Liberar modelo si existe
         releaseModel();
@@ -68,33 +92,83 @@ public class Predictor {
         if (modelPath.isEmpty()) {
             return false;
         }
-        String realPath = modelPath;
-        if (!modelPath.substring(0, 1).equals("/")) {
-            // Se copia el modelo desde assets al directorio cache
-            realPath = appCtx.getCacheDir() + "/" + modelPath;
-            Utils.copyDirectoryFromAssets(appCtx, modelPath, realPath);
-        }
-        if (realPath.isEmpty()) {
-            return false;
-        }
-
         OCRPredictorNative.Config config = new OCRPredictorNative.Config();
         config.useOpencl = useOpencl;
         config.cpuThreadNum = cpuThreadNum;
         config.cpuPower = cpuPowerMode;
-        config.detModelFilename = realPath + File.separator + "det_db.nb";
-        config.recModelFilename = realPath + File.separator + "rec_crnn.nb";
-        config.clsModelFilename = realPath + File.separator + "cls.nb";
+        config.recBatchNum = recBatchNum;
+        config.detModelFilename = modelPath + File.separator + "det_db.nb";
+        config.recModelFilename = modelPath + File.separator + "rec_crnn.nb";
+        config.clsModelFilename = modelPath + File.separator + "cls.nb";
+        if (!modelPath.startsWith("/")) {
+            // Los modelos se leen desde assets: mapeados desde el APK (o desde una copia extraída
+            // una sola vez si están comprimidos), sin copiarlos al directorio cache en cada init
+            try {
+                config.detModelBuffer = ModelAssets.mapOrExtract(appCtx, config.detModelFilename);
+                config.recModelBuffer = ModelAssets.mapOrExtract(appCtx, config.recModelFilename);
+                config.clsModelBuffer = ModelAssets.mapOrExtract(appCtx, config.clsModelFilename);
+            } catch (IOException e) {
+                Log.e(TAG, "No se pudieron abrir los modelos de " + modelPath, e);
+                return false;
+            }
+        }
         Log.i("Predictor", "model path: " + config.detModelFilename + " ; " + config.recModelFilename + " ; " + config.clsModelFilename);
-        paddlePredictor = new OCRPredictorNative(config);
+        try {
+            paddlePredictor = new OCRPredictorNative(config);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "No se pudo cargar el modelo de " + modelPath, e);
+            return false;
+        }
 
         this.cpuThreadNum = cpuThreadNum;
         this.cpuPowerMode = cpuPowerMode;
-        this.modelPath = realPath;
-        this.modelName = realPath.substring(realPath.lastIndexOf("/") + 1);
+        this.modelPath = modelPath;
+        this.modelName = modelPath.substring(modelPath.lastIndexOf("/") + 1);
         return true;
     }
 
+    /**
+     * Limita el reconocimiento al alfabeto de las patentes (A-Z y 0-9): el decodificador CTC sólo
+     * recorre esas 36 clases y el blank en vez de todo el diccionario, y nunca emite otros signos.
+     * Con {@code grammar} además fuerza uno de los formatos de {@link PlateFilter#CHILEAN_PLATE}.
+     * Debe llamarse después de init(); con {@code alphabetOnly} en false vuelve al diccionario
+     * completo.
+     */
+    public void setPlateDecoding(boolean alphabetOnly, boolean grammar) {
+        if (paddlePredictor == null) {
+            return;
+        }
+        if (!alphabetOnly) {
+            paddlePredictor.setRecClasses(new int[0], new int[0], "");
+            return;
+        }
+        int[] ids = new int[36];
+        int[] kinds = new int[36];
+        int count = 0;
+        for (char c = 'A'; c <= 'Z'; c++) {
+            count = addClass(String.valueOf(c), 0, ids, kinds, count);
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            count = addClass(String.valueOf(c), 1, ids, kinds, count);
+        }
+        if (count == 0) {
+            Log.w(TAG, "Las etiquetas no tienen caracteres de patentes; se decodifica el diccionario completo");
+            return;
+        }
+        paddlePredictor.setRecClasses(Arrays.copyOf(ids, count), Arrays.copyOf(kinds, count),
+                grammar ? PlateFilter.CHILEAN_PLATE_GRAMMAR : "");
+    }
+
+    private int addClass(String label, int kind, int[] ids, int[] kinds, int count) {
+        int id = wordLabels.indexOf(label);
+        if (id <= 0) {
+            return count;
+        }
+        ids[count] = id;
+        kinds[count] = kind;
+        return count + 1;
+    }
+
     public void releaseModel() {
         if (paddlePredictor != null) {
             paddlePredictor.destory();
@@ -108,20 +182,8 @@ public class Predictor {
     }
 
     protected boolean loadLabel(Context appCtx, String labelPath) {
-        wordLabels.clear();
-        wordLabels.add("black");
-        try {
-            InputStream assetsInputStream = appCtx.getAssets().open(labelPath);
-            int available = assetsInputStream.available();
-            byte[] lines = new byte[available];
-            assetsInputStream.read(lines);
-            assetsInputStream.close();
-            String words = new String(lines);
-            String[] contents = words.split("\n");
-            for (String content : contents) {
-                wordLabels.add(content);
-            }
-            wordLabels.add(" ");
+        try (InputStream assetsInputStream = appCtx.getAssets().open(labelPath)) {
+            wordLabels = LabelTable.load(assetsInputStream);
             Log.i(TAG, "Word label size: " + wordLabels.size());
         } catch (Exception e) {
             Log.e(TAG, e.getMessage());
@@ -134,6 +196,8 @@ public class Predictor {
      * Ejecuta el modelo de forma sincrónicpa y retorna un objeto PredictionResult.
      * Se utilizan por defecto detección (run_det=1) y reconocimiento (run_rec=1),
      * mientras que la clasificación se omite (run_cls=0).
+     * Se ejecutan {@link #warmupIterNum} iteraciones sin medir y luego {@link #inferIterNum}
+     * iteraciones medidas; los resultados corresponden a la última.
      *
      * @return PredictionResult con:
      *         - Texto OCR concatenado.
@@ -142,8 +206,17 @@ public class Predictor {
      * @throws Exception si la imagen de entrada es nula o el modelo no está cargado.
      */
     public PredictionResult runModelSync() throws Exception {
+        return runModelSync(true);
+    }
+
+    /**
+     * Igual que {@link #runModelSync()}; con {@code detect = false} no corre la detección y
+     * reconoce la imagen completa como una sola línea de texto, para cuando la imagen ya es el
+     * recorte de la patente.
+     */
+    public PredictionResult runModelSync(boolean detect) throws Exception {
         // Valores por defecto: detección = 1, clasificación = 0, reconocimiento = 1.
-        int run_det = 1;
+        int run_det = detect ? 1 : 0;
         int run_cls = 0;
         int run_rec = 1;
         if (inputImage == null || !isLoaded()) {
@@ -152,18 +225,29 @@ public class Predictor {
 
         // Warm up
         for (int i = 0; i < warmupIterNum; i++) {
-            paddlePredictor.runImage(inputImage, detLongSize, run_det, run_cls, run_rec);
+            paddlePredictor.recycle(paddlePredictor.runImage(inputImage, detLongSize, run_det, run_cls, run_rec));
         }
-        warmupIterNum = 0;
 
         // Ejecutar inferencia
-        Date start = new Date();
-        ArrayList<OcrResultModel> results = paddlePredictor.runImage(inputImage, detLongSize, run_det, run_cls, run_rec);
-        Date end = new Date();
-        inferenceTime = (end.getTime() - start.getTime()) / (float) inferIterNum;
+        int iterations = Math.max(1, inferIterNum);
+        imageLatency.reset();
+        ArrayList<OcrResultModel> results = null;
+        for (int i = 0; i < iterations; i++) {
+            if (results != null) {
+                paddlePredictor.recycle(results);
+            }
+            long start = System.nanoTime();
+            results = paddlePredictor.runImage(inputImage, detLongSize, run_det, run_cls, run_rec, stageTimings);
+            imageLatency.recordNanos(System.nanoTime() - start);
+        }
+        totalLatency.add(imageLatency);
+        inferenceTime = (float) imageLatency.getMeanMs();
 
         // Postprocesamiento
+        long postStart = System.nanoTime();
         results = postprocess(results);
+        postprocessTime = (System.nanoTime() - postStart) / 1e6f;
+        stageTimings.setJavaPostMs(postprocessTime);
         // Ya no se llama a drawResults ya que no se quiere dibujar el resultado
 
         // Concatenar el texto OCR de todos los resultados
@@ -177,10 +261,40 @@ public class Predictor {
         PredictionResult predictionResult = new PredictionResult();
         predictionResult.ocr = ocrSb.toString().trim();
         predictionResult.inferenceTime = inferenceTime;
+        predictionResult.latency = new LatencyHistogram();
+        predictionResult.latency.add(imageLatency);
         predictionResult.details = results;
+        predictionResult.timings = new StageTimings();
+        predictionResult.timings.copyFrom(stageTimings);
         return predictionResult;
     }
 
+    /**
+     * Ejecuta el pipeline completo (det + rec) sobre la imagen de muestra sin medir tiempos.
+     */
+    @Override
+    public void warmUp(Bitmap sample, int iterations) throws Exception {
+        if (!isLoaded()) {
+            throw new Exception("Modelo no cargado");
+        }
+        Bitmap warmupImage = asArgb8888(sample);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                paddlePredictor.recycle(paddlePredictor.runImage(warmupImage, detLongSize, 1, 0, 1));
+            }
+        } finally {
+            // La copia es nuestra; el bitmap de muestra es del llamador
+            if (warmupImage != sample) {
+                warmupImage.recycle();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        releaseModel();
+    }
+
     public boolean isLoaded() {
         return paddlePredictor != null && isLoaded;
     }
@@ -217,23 +331,43 @@ public class Predictor {
         return postprocessTime;
     }
 
+    public StageTimings stageTimings() {
+        return stageTimings;
+    }
+
+    /**
+     * Latencias acumuladas de todas las iteraciones medidas desde el último {@link #resetLatency()}.
+     */
+    public LatencyHistogram totalLatency() {
+        return totalLatency;
+    }
+
+    public void resetLatency() {
+        totalLatency.reset();
+    }
+
     public void setInputImage(Bitmap image) {
         if (image == null) {
             return;
         }
-        this.inputImage = image.copy(Bitmap.Config.ARGB_8888, true);
+        this.inputImage = asArgb8888(image);
+    }
+
+    /**
+     * La parte nativa sólo lee los píxeles, así que un bitmap ARGB_8888 se usa tal cual y sólo
+     * los demás formatos se copian.
+     */
+    private static Bitmap asArgb8888(Bitmap image) {
+        return image.getConfig() == Bitmap.Config.ARGB_8888 ? image : image.copy(Bitmap.Config.ARGB_8888, false);
     }
 
     private ArrayList<OcrResultModel> postprocess(ArrayList<OcrResultModel> results) {
+        StringBuilder word = new StringBuilder();
         for (OcrResultModel r : results) {
-            StringBuffer word = new StringBuffer();
-            for (int index : r.getWordIndex()) {
-                if (index >= 0 && index < wordLabels.size()) {
-                    word.append(wordLabels.get(index));
-                } else {
-                    Log.e(TAG, "Word index is not in label list:" + index);
-                    word.append("×");
-                }
+            word.setLength(0);
+            int unknown = wordLabels.decode(r.getWordIndexArray(), r.getWordCount(), word);
+            if (unknown > 0) {
+                Log.e(TAG, "Word index is not in label list: " + unknown + " index(es)");
             }
             r.setLabel(word.toString());
             r.setClsLabel(r.getClsIdx() == 1 ? "180" : "0");
@@ -0,0 +1,313 @@
+package com.example.test_ocr_sbw;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.test_ocr_sbw.benchmark.LatencyHistogram;
+import com.example.test_ocr_sbw.engine.ManagedEngine;
+import com.example.test_ocr_sbw.utils.ModelAssets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conjunto de {@link Predictor} independientes, cada uno con su propia instancia nativa y su
+ * propio hilo, que comparten una cola acotada de imágenes.
+ * <p>
+ * El {@code OCR_PPredictor} nativo no admite llamadas concurrentes, así que cada instancia se
+ * usa sólo desde su hilo. {@link Config#cpuThreadNum} se reparte entre las instancias: con 4
+ * hilos, 2 instancias usan 2 hilos cada una y 1 instancia usa los 4. Qué reparto da más
+ * imágenes por segundo depende del dispositivo (núcleos big.LITTLE), por eso es configurable.
+ * <p>
+ * {@link #submit(Bitmap)} bloquea al llamador mientras la cola está llena, de modo que un
+ * productor más rápido que el OCR no acumula bitmaps en memoria.
+ */
+public class PredictorPool implements ManagedEngine {
+    private static final String TAG = PredictorPool.class.getSimpleName();
+
+    public static class Config {
+        public String modelPath = "models/paddle";
+        public String labelPath = "models/paddle/labels.txt";
+        public int useOpencl = 0;
+        // Hilos de CPU en total; se dividen entre las instancias
+        public int cpuThreadNum = 4;
+        public String cpuPowerMode = "LITE_POWER_HIGH";
+        public int instances = 1;
+        // Imágenes que pueden esperar en la cola antes de que submit() bloquee
+        public int queueCapacity = 4;
+        public int detLongSize = 960;
+        public float scoreThreshold = 0.1f;
+        public int recBatchNum = 6;
+        // Decodificación CTC restringida a A-Z y 0-9 y, además, a los formatos de patente
+        public boolean plateAlphabetOnly = false;
+        public boolean plateGrammar = false;
+
+        public Config copy() {
+            Config copy = new Config();
+            copy.modelPath = modelPath;
+            copy.labelPath = labelPath;
+            copy.useOpencl = useOpencl;
+            copy.cpuThreadNum = cpuThreadNum;
+            copy.cpuPowerMode = cpuPowerMode;
+            copy.instances = instances;
+            copy.queueCapacity = queueCapacity;
+            copy.detLongSize = detLongSize;
+            copy.scoreThreshold = scoreThreshold;
+            copy.recBatchNum = recBatchNum;
+            copy.plateAlphabetOnly = plateAlphabetOnly;
+            copy.plateGrammar = plateGrammar;
+            return copy;
+        }
+    }
+
+    private static final class Task {
+        final Bitmap image;
+        // false: sólo reconocimiento sobre la imagen completa (run_det = 0)
+        final boolean detect;
+        final CompletableFuture<Predictor.PredictionResult> future = new CompletableFuture<>();
+
+        Task(Bitmap image, boolean detect) {
+            this.image = image;
+            this.detect = detect;
+        }
+    }
+
+    private final Context context;
+    private final Config config;
+    private final List<Predictor> predictors = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final BlockingQueue<Task> queue;
+    private volatile boolean closed = false;
+    private String modelFingerprint;
+
+    private PredictorPool(Context context, Config config) {
+        this.context = context;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity));
+    }
+
+    /**
+     * Carga {@link Config#instances} predictores y arranca sus hilos.
+     *
+     * @throws IllegalStateException si alguno de los modelos no se pudo cargar.
+     */
+    public static PredictorPool create(Context appCtx, Config config) {
+        PredictorPool pool = new PredictorPool(appCtx, config);
+        int instances = Math.max(1, config.instances);
+        int threadsPerInstance = threadsPerInstance(config.cpuThreadNum, instances);
+        for (int i = 0; i < instances; i++) {
+            Predictor predictor = new Predictor();
+            predictor.recBatchNum = config.recBatchNum;
+            if (!predictor.init(appCtx, config.modelPath, config.labelPath, config.useOpencl, threadsPerInstance,
+                    config.cpuPowerMode, config.detLongSize, config.scoreThreshold)) {
+                pool.close();
+                throw new IllegalStateException("No se pudo cargar el modelo " + config.modelPath);
+            }
+            predictor.setPlateDecoding(config.plateAlphabetOnly, config.plateGrammar);
+            pool.predictors.add(predictor);
+        }
+        for (int i = 0; i < instances; i++) {
+            Predictor predictor = pool.predictors.get(i);
+            Thread worker = new Thread(() -> pool.work(predictor), TAG + "-" + i);
+            worker.setDaemon(true);
+            pool.workers.add(worker);
+            worker.start();
+        }
+        Log.i(TAG, instances + " instancias x " + threadsPerInstance + " hilos");
+        return pool;
+    }
+
+    /**
+     * Hilos nativos por instancia: el total repartido en partes iguales, al menos uno.
+     */
+    static int threadsPerInstance(int cpuThreadNum, int instances) {
+        return Math.max(1, cpuThreadNum / Math.max(1, instances));
+    }
+
+    /**
+     * Encola la imagen y devuelve el resultado futuro. Si la cola está llena espera a que se
+     * libere un lugar. El bitmap no debe reciclarse hasta que el futuro se complete.
+     */
+    public CompletableFuture<Predictor.PredictionResult> submit(Bitmap image) {
+        return submit(image, true);
+    }
+
+    /**
+     * Como {@link #submit(Bitmap)} pero sin detección: la imagen completa se reconoce como una
+     * línea. Pensado para recortes que ya contienen sólo la patente.
+     */
+    public CompletableFuture<Predictor.PredictionResult> submitRecognition(Bitmap crop) {
+        return submit(crop, false);
+    }
+
+    private CompletableFuture<Predictor.PredictionResult> submit(Bitmap image, boolean detect) {
+        Task task = new Task(image, detect);
+        if (closed) {
+            task.future.completeExceptionally(new IllegalStateException("Pool cerrado"));
+            return task.future;
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+            return task.future;
+        }
+        if (closed && queue.remove(task)) {
+            // close() pudo vaciar la cola antes de que esta tarea entrara
+            task.future.completeExceptionally(new CancellationException("Pool cerrado"));
+        }
+        return task.future;
+    }
+
+    /**
+     * Variante sin espera: devuelve null si la cola está llena.
+     */
+    public CompletableFuture<Predictor.PredictionResult> trySubmit(Bitmap image) {
+        if (closed) {
+            return null;
+        }
+        Task task = new Task(image, true);
+        return queue.offer(task) ? task.future : null;
+    }
+
+    private void work(Predictor predictor) {
+        while (!closed) {
+            Task task;
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == null) {
+                continue;
+            }
+            try {
+                Predictor.PredictionResult result;
+                synchronized (predictor) {
+                    predictor.setInputImage(task.image);
+                    result = predictor.runModelSync(task.detect);
+                }
+                task.future.complete(result);
+            } catch (Throwable t) {
+                task.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Cambia {@code detLongSize} en todas las instancias sin recargar los modelos. Pensado para
+     * barrer tamaños entre lotes, no con imágenes en curso.
+     */
+    public synchronized void setDetLongSize(int detLongSize) {
+        config.detLongSize = detLongSize;
+        modelFingerprint = null;
+        for (Predictor predictor : predictors) {
+            synchronized (predictor) {
+                predictor.setDetLongSize(detLongSize);
+            }
+        }
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Hash de los modelos y etiquetas más los parámetros que cambian el resultado (no los hilos
+     * ni las instancias). Se calcula una vez, leyendo los .nb completos.
+     */
+    public synchronized String getModelFingerprint() throws IOException {
+        if (modelFingerprint == null) {
+            String dir = config.modelPath + File.separator;
+            String hash = ModelAssets.sha256(context, dir + "det_db.nb", dir + "rec_crnn.nb", dir + "cls.nb",
+                    config.labelPath);
+            modelFingerprint = "paddle|" + hash + "|det=" + config.detLongSize + "|score=" + config.scoreThreshold
+                    + "|recBatch=" + config.recBatchNum + "|plateAlphabet=" + config.plateAlphabetOnly
+                    + "|plateGrammar=" + config.plateGrammar;
+        }
+        return modelFingerprint;
+    }
+
+    public int getInstanceCount() {
+        return predictors.size();
+    }
+
+    /**
+     * Imágenes esperando en la cola (no incluye las que se están procesando).
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Latencias medidas por todas las instancias desde el último {@link #resetLatency()}.
+     */
+    public LatencyHistogram totalLatency() {
+        LatencyHistogram total = new LatencyHistogram();
+        for (Predictor predictor : predictors) {
+            synchronized (predictor) {
+                total.add(predictor.totalLatency());
+            }
+        }
+        return total;
+    }
+
+    public void resetLatency() {
+        for (Predictor predictor : predictors) {
+            synchronized (predictor) {
+                predictor.resetLatency();
+            }
+        }
+    }
+
+    /**
+     * Calienta cada instancia con la imagen de muestra.
+     */
+    @Override
+    public void warmUp(Bitmap sample, int iterations) throws Exception {
+        for (Predictor predictor : predictors) {
+            synchronized (predictor) {
+                predictor.warmUp(sample, iterations);
+            }
+        }
+    }
+
+    /**
+     * Detiene los hilos, cancela las imágenes pendientes y libera las instancias nativas.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Task task;
+        while ((task = queue.poll()) != null) {
+            task.future.completeExceptionally(new CancellationException("Pool cerrado"));
+        }
+        for (Predictor predictor : predictors) {
+            synchronized (predictor) {
+                predictor.close();
+            }
+        }
+        workers.clear();
+        predictors.clear();
+    }
+}
@@ -0,0 +1,686 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.test_ocr_sbw.engine.EngineRegistry;
+import com.example.test_ocr_sbw.engine.EngineResult;
+import com.example.test_ocr_sbw.engine.OcrEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ejecuta el benchmark de una carpeta sobre los {@link OcrEngine} de un {@link EngineRegistry},
+ * como un pipeline de varias etapas:
+ * <ol>
+ *     <li>Un hilo decodificador que adelanta hasta {@code decodeAhead} imágenes.</li>
+ *     <li>Un hilo por motor registrado, cada uno con su propia cola acotada.</li>
+ *     <li>Un "sink" que entrega las filas a un {@link RowSink} en el orden original de los archivos.</li>
+ * </ol>
+ * Mientras un motor infiere, la siguiente imagen ya se está decodificando y la fila anterior
+ * se está escribiendo, por lo que la CPU no queda ociosa entre imágenes.
+ * <p>
+ * En modo {@link Mode#SEQUENTIAL} sólo un motor infiere a la vez y cada uno procesa una imagen
+ * por vez, de modo que los tiempos por motor son comparables con el recorrido secuencial
+ * original; lo que se solapa es la decodificación y la escritura. Con {@code timedIterations > 1}
+ * cada motor procesa cada imagen esa cantidad de veces; las muestras van a un
+ * {@link LatencyHistogram} por imagen (columnas min/p50/p90/p99/max/stddev) y a otro por motor
+ * para toda la carpeta ({@link BatchResult#stageLatency}).
+ * <p>
+ * En modo {@link Mode#CONCURRENT} los motores corren a la vez y cada uno puede tener hasta
+ * {@code maxInFlightPerEngine} imágenes en curso con {@link OcrEngine#recognizeAsync} (o las que
+ * pida con {@link OcrEngine#getMaxInFlight()}, si son más), para medir el máximo de imágenes por
+ * segundo. Cada imagen se procesa una sola vez y su tiempo incluye la
+ * espera dentro del motor.
+ * <p>
+ * Cada motor aporta las columnas {@code <Motor>Text, Confidence, EngineMs, QueueWaitMs, Error},
+ * sus columnas propias y las de tiempo; agregar un motor o una variante de modelo es sólo
+ * registrarlo.
+ * <p>
+ * Con {@link Config#resultCache} los resultados se guardan por hash de la imagen y huella del
+ * motor ({@link OcrEngine#getCacheKey()}). Al repetir una corrida sólo se infiere lo que cambió:
+ * una imagen que todos los motores ya tienen ni siquiera se decodifica, y las demás van sólo a
+ * los motores que faltan. La columna {@code <Motor>Cached} indica de dónde salió cada resultado;
+ * los resultados cacheados no suman muestras a los histogramas.
+ * <p>
+ * Las imágenes se decodifican al mayor {@link OcrEngine#getPreferredInputSize()} de los motores
+ * y vuelven a la fuente con {@link ImageSource#release} apenas el último motor termina con
+ * ellas, así que en memoria sólo hay las que están en tránsito.
+ */
+public class BenchmarkScheduler {
+
+    private static final String TAG = "FolderProcess";
+
+    public enum Mode {
+        /** Un motor a la vez, una imagen a la vez: latencias limpias. */
+        SEQUENTIAL,
+        /** Todos los motores a la vez, varias imágenes en curso: máximo rendimiento. */
+        CONCURRENT
+    }
+
+    public static class Config {
+        public Mode mode = Mode.SEQUENTIAL;
+        // Imágenes que se decodifican por adelantado
+        public int decodeAhead = 4;
+        // Inferencias de calentamiento por motor antes de empezar a medir
+        public int warmupIterations = 2;
+        // Inferencias medidas por imagen y motor (sólo en modo secuencial)
+        public int timedIterations = 1;
+        // Imágenes en curso por motor (sólo en modo concurrente)
+        public int maxInFlightPerEngine = 2;
+        // Caché persistente de resultados; null la desactiva
+        public ResultCache resultCache = null;
+    }
+
+    /**
+     * Fuente de imágenes del lote (por ejemplo, los archivos de una carpeta SAF).
+     */
+    public interface ImageSource {
+        int size();
+
+        String getName(int index);
+
+        /** Decodifica la imagen; devuelve null si no es una imagen a procesar. */
+        Bitmap decode(int index) throws Exception;
+
+        /**
+         * Decodifica la imagen con el lado mayor en al menos {@code targetSize} píxeles (0 para la
+         * resolución completa), submuestreando si es más grande. Por defecto ignora el tamaño.
+         */
+        default Bitmap decode(int index, int targetSize) throws Exception {
+            return decode(index);
+        }
+
+        /**
+         * Recibe el bitmap cuando todos los motores terminaron con él, para reciclarlo o
+         * reutilizarlo en la siguiente decodificación.
+         */
+        default void release(Bitmap bitmap) {
+        }
+
+        /**
+         * Hash del contenido de la imagen (y de cualquier parámetro de decodificación que cambie
+         * el bitmap), para la caché de resultados. Null si la imagen no debe cachearse.
+         */
+        default String getContentHash(int index) throws Exception {
+            return null;
+        }
+    }
+
+    /**
+     * Destino de las filas, invocado en el hilo llamador de {@link #run}. El primer campo de cada
+     * fila es el nombre de archivo.
+     */
+    public interface RowSink {
+        void writeRow(List<String> fields) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int processed, int total, long estimatedRemainingTime);
+    }
+
+    /**
+     * Resultado global del lote.
+     */
+    public static class BatchResult {
+        public final Mode mode;
+        public final int imageCount;
+        public final long wallTimeMs;
+        /** Resultados (imagen y motor) tomados de la caché en vez de inferidos. */
+        public final int cachedResults;
+        /** Latencias de todas las iteraciones medidas de la carpeta, por nombre de motor. */
+        public final Map<String, LatencyHistogram> stageLatency;
+
+        BatchResult(Mode mode, int imageCount, long wallTimeMs, int cachedResults,
+                    Map<String, LatencyHistogram> stageLatency) {
+            this.mode = mode;
+            this.imageCount = imageCount;
+            this.wallTimeMs = wallTimeMs;
+            this.cachedResults = cachedResults;
+            this.stageLatency = stageLatency;
+        }
+
+        public float imagesPerSecond() {
+            return wallTimeMs > 0 ? imageCount * 1000f / wallTimeMs : 0f;
+        }
+
+        /**
+         * Resumen por motor de la carpeta completa, en formato CSV.
+         */
+        public String latencySummaryCsv() {
+            StringBuilder csv = new StringBuilder("Engine,Mode,Samples,Mean(ms),")
+                    .append(String.join(",", LatencyHistogram.csvColumns("")));
+            for (Map.Entry<String, LatencyHistogram> entry : stageLatency.entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                csv.append('\n').append(entry.getKey())
+                        .append(',').append(mode)
+                        .append(',').append(histogram.getCount())
+                        .append(',').append(LatencyHistogram.formatMs(histogram.getMeanMs()))
+                        .append(',').append(String.join(",", histogram.toCsvFields()));
+            }
+            return csv.toString();
+        }
+    }
+
+    /**
+     * Imagen decodificada en tránsito por el pipeline.
+     */
+    private static class Frame {
+        final int index;
+        final String name;
+        // Se asigna antes de pasar el frame a las colas, y sólo si algún motor no está en caché
+        Bitmap bitmap;
+        final String[][] fields;
+        // Clave de caché por motor; null si ese resultado no se cachea
+        final String[] cacheKeys;
+        final boolean[] cached;
+        final AtomicInteger pending;
+        volatile boolean failed = false;
+
+        Frame(int index, String name, int stageCount) {
+            this.index = index;
+            this.name = name;
+            this.fields = new String[stageCount][];
+            this.cacheKeys = new String[stageCount];
+            this.cached = new boolean[stageCount];
+            this.pending = new AtomicInteger(stageCount);
+        }
+    }
+
+    // Marca de fin de lote
+    private static final Frame END = new Frame(-1, null, 0);
+
+    private final ImageSource source;
+    private final EngineRegistry registry;
+    private final List<String> engineNames;
+    private final Config config;
+    private final int timedIterations;
+    // Un histograma por motor; en modo concurrente se escribe desde los callbacks, con su monitor
+    private final LatencyHistogram[] stageHistograms;
+    private final ReentrantLock inferenceLock = new ReentrantLock(true);
+
+    private volatile Throwable fatalError;
+
+    /**
+     * Planifica todos los motores del registro, en orden de registro.
+     */
+    public BenchmarkScheduler(ImageSource source, EngineRegistry registry, Config config) {
+        this(source, registry, registry.getNames(), config);
+    }
+
+    public BenchmarkScheduler(ImageSource source, EngineRegistry registry, List<String> engineNames, Config config) {
+        this.source = source;
+        this.registry = registry;
+        this.engineNames = new ArrayList<>(engineNames);
+        this.config = config;
+        this.timedIterations = config.mode == Mode.SEQUENTIAL ? Math.max(1, config.timedIterations) : 1;
+        this.stageHistograms = new LatencyHistogram[this.engineNames.size()];
+        for (int s = 0; s < stageHistograms.length; s++) {
+            stageHistograms[s] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Columnas del CSV. Crea los motores que aún no existan, porque sus columnas propias dependen
+     * de la instancia; el tiempo de carga queda fuera de las mediciones igualmente.
+     */
+    public List<String> getCsvColumns() throws Exception {
+        List<String> columns = new ArrayList<>();
+        columns.add("FileName");
+        for (String name : engineNames) {
+            OcrEngine engine = registry.get(name);
+            columns.add(name + "Text");
+            columns.add(name + "Confidence");
+            columns.add(name + "EngineMs");
+            columns.add(name + "QueueWaitMs");
+            columns.add(name + "Error");
+            for (String column : engine.getExtraColumns()) {
+                columns.add(name + column);
+            }
+            columns.add(name + "Time(ms)");
+            if (timedIterations > 1) {
+                Collections.addAll(columns, LatencyHistogram.csvColumns(name));
+            }
+            if (config.resultCache != null) {
+                columns.add(name + "Cached");
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Ejecuta el lote completo y bloquea hasta que la última fila ha sido entregada a {@code sink}.
+     * Si el sink falla, el lote se cancela y la excepción se propaga.
+     */
+    public BatchResult run(RowSink sink, ProgressListener listener) throws Exception {
+        final int total = source.size();
+        final int stageCount = engineNames.size();
+        final int decodeAhead = Math.max(1, config.decodeAhead);
+        final List<BlockingQueue<Frame>> stageQueues = new ArrayList<>(stageCount);
+        for (int s = 0; s < stageCount; s++) {
+            stageQueues.add(new ArrayBlockingQueue<Frame>(decodeAhead));
+        }
+        // El sink nunca bloquea a los motores
+        final BlockingQueue<Frame> doneQueue = new LinkedBlockingQueue<>();
+
+        final int inputSize = preferredInputSize();
+        final String[] fingerprints = cacheFingerprints();
+        final int[] stageWidths = stageWidths();
+        final AtomicInteger cachedResults = new AtomicInteger();
+
+        final long startWall = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+
+        // Etapa 1: consulta de la caché y decodificación adelantada
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < total; i++) {
+                    Frame frame = new Frame(i, source.getName(i), stageCount);
+                    int missing = lookupCache(frame, fingerprints, stageWidths, inputSize);
+                    if (missing == 0) {
+                        cachedResults.addAndGet(stageCount);
+                        doneQueue.put(frame);
+                        continue;
+                    }
+                    cachedResults.addAndGet(stageCount - missing);
+                    Bitmap bmp = null;
+                    try {
+                        bmp = source.decode(i, inputSize);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error decodificando " + source.getName(i), e);
+                    }
+                    if (bmp == null) {
+                        // Se informa igual al sink para mantener el progreso y el orden
+                        frame.failed = true;
+                        doneQueue.put(frame);
+                        continue;
+                    }
+                    frame.bitmap = bmp;
+                    frame.pending.set(missing);
+                    for (int s = 0; s < stageCount; s++) {
+                        if (!frame.cached[s]) {
+                            stageQueues.get(s).put(frame);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (BlockingQueue<Frame> queue : stageQueues) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        // El lote se está cancelando; los motores también fueron interrumpidos
+                        break;
+                    }
+                }
+            }
+        }, "bench-decode"));
+
+        // Etapa 2: un hilo por motor
+        final AtomicInteger liveStages = new AtomicInteger(stageCount);
+        for (int s = 0; s < stageCount; s++) {
+            final int stageIndex = s;
+            final String name = engineNames.get(s);
+            final BlockingQueue<Frame> queue = stageQueues.get(s);
+            threads.add(new Thread(() -> {
+                try {
+                    if (config.mode == Mode.CONCURRENT) {
+                        runConcurrentStage(name, stageIndex, queue, doneQueue);
+                    } else {
+                        runSequentialStage(name, stageIndex, queue, doneQueue);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    fatalError = t;
+                } finally {
+                    if (liveStages.decrementAndGet() == 0) {
+                        doneQueue.offer(END);
+                    }
+                }
+            }, "bench-" + name));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        // Etapa 3: el sink corre en el hilo llamador y reordena por índice de archivo
+        List<String> row = new ArrayList<>();
+        Frame[] reorder = new Frame[total];
+        int nextIndex = 0;
+        int images = 0;
+        try {
+            while (nextIndex < total) {
+                Frame frame = doneQueue.poll(1, TimeUnit.SECONDS);
+                if (frame == null) {
+                    if (fatalError != null) {
+                        break;
+                    }
+                    continue;
+                }
+                if (frame == END) {
+                    // Todos los motores terminaron; lo pendiente no tiene resultados
+                    break;
+                }
+                reorder[frame.index] = frame;
+                while (nextIndex < total && reorder[nextIndex] != null) {
+                    Frame ready = reorder[nextIndex];
+                    reorder[nextIndex] = null;
+                    nextIndex++;
+                    if (!ready.failed) {
+                        buildRow(ready, row);
+                        sink.writeRow(row);
+                        images++;
+                    }
+                    if (listener != null) {
+                        long elapsed = (System.nanoTime() - startWall) / 1_000_000L;
+                        long remaining = elapsed / nextIndex * (total - nextIndex);
+                        listener.onProgress(nextIndex, total, remaining);
+                    }
+                }
+            }
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (config.resultCache != null) {
+                config.resultCache.flush();
+            }
+        }
+        if (fatalError != null) {
+            Log.e(TAG, "El pipeline terminó con error", fatalError);
+        }
+        long wallTime = (System.nanoTime() - startWall) / 1_000_000L;
+        // Los hilos de los motores ya terminaron (join), así que los histogramas son visibles
+        Map<String, LatencyHistogram> stageLatency = new LinkedHashMap<>();
+        for (int s = 0; s < stageCount; s++) {
+            synchronized (stageHistograms[s]) {
+                stageLatency.put(engineNames.get(s), stageHistograms[s]);
+            }
+        }
+        return new BatchResult(config.mode, images, wallTime, cachedResults.get(), stageLatency);
+    }
+
+    /**
+     * Lado mayor al que se decodifican las imágenes: el mayor que pide algún motor, o 0 (resolución
+     * completa) si ninguno pide uno.
+     */
+    private int preferredInputSize() throws Exception {
+        int size = 0;
+        for (String name : engineNames) {
+            OcrEngine engine = registry.get(name);
+            size = Math.max(size, engine.getPreferredInputSize());
+        }
+        return size;
+    }
+
+    /**
+     * Huella de cada motor para la caché, o null por motor si no se cachea (o si no hay caché).
+     * Crea los motores, igual que {@link #getCsvColumns()}.
+     */
+    private String[] cacheFingerprints() {
+        String[] fingerprints = new String[engineNames.size()];
+        if (config.resultCache == null) {
+            return fingerprints;
+        }
+        for (int s = 0; s < fingerprints.length; s++) {
+            String name = engineNames.get(s);
+            try {
+                OcrEngine engine = registry.get(name);
+                fingerprints[s] = engine.getCacheKey();
+            } catch (Exception e) {
+                Log.w(TAG, "Sin caché para " + name, e);
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Cantidad de campos que {@link #stageFields} produce para cada motor; una entrada de caché
+     * con otra cantidad se descarta.
+     */
+    private int[] stageWidths() throws Exception {
+        int[] widths = new int[engineNames.size()];
+        for (int s = 0; s < widths.length; s++) {
+            OcrEngine engine = registry.get(engineNames.get(s));
+            widths[s] = 5 + engine.getExtraColumns().length + 1
+                    + (timedIterations > 1 ? LatencyHistogram.csvColumns("").length : 0);
+        }
+        return widths;
+    }
+
+    /**
+     * Completa con la caché los resultados que ya existen para la imagen y devuelve cuántos
+     * motores faltan por ejecutar.
+     */
+    private int lookupCache(Frame frame, String[] fingerprints, int[] stageWidths, int inputSize) {
+        int stageCount = frame.fields.length;
+        ResultCache cache = config.resultCache;
+        if (cache == null) {
+            return stageCount;
+        }
+        String imageHash;
+        try {
+            imageHash = source.getContentHash(frame.index);
+        } catch (Exception e) {
+            Log.w(TAG, "No se pudo calcular el hash de " + frame.name, e);
+            return stageCount;
+        }
+        if (imageHash == null) {
+            return stageCount;
+        }
+        int missing = 0;
+        for (int s = 0; s < stageCount; s++) {
+            if (fingerprints[s] == null) {
+                missing++;
+                continue;
+            }
+            // El modo y las iteraciones cambian el significado de las columnas de tiempo, y el tamaño
+            // de decodificación la imagen que ve el motor
+            String key = ResultCache.key(engineNames.get(s), fingerprints[s], config.mode.name(),
+                    String.valueOf(timedIterations), String.valueOf(inputSize), imageHash);
+            frame.cacheKeys[s] = key;
+            String[] fields = cache.get(key);
+            if (fields != null && fields.length == stageWidths[s]) {
+                frame.fields[s] = fields;
+                frame.cached[s] = true;
+            } else {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Guarda el resultado recién calculado. Los fallos del motor (p. ej. un timeout) no se
+     * guardan, para reintentarlos en la próxima corrida.
+     */
+    private void storeInCache(Frame frame, int stageIndex, EngineResult result) {
+        String key = frame.cacheKeys[stageIndex];
+        if (key == null || !result.isSuccess()) {
+            return;
+        }
+        try {
+            config.resultCache.put(key, frame.fields[stageIndex]);
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo guardar en caché " + frame.name, e);
+        }
+    }
+
+    /**
+     * Prepara el motor con la primera imagen del lote, en el hilo de la etapa y fuera de la
+     * medición.
+     */
+    private OcrEngine prepare(String name, Bitmap sample) throws Exception {
+        return registry.prepare(name, sample, config.warmupIterations);
+    }
+
+    private void runSequentialStage(String name, int stageIndex, BlockingQueue<Frame> queue,
+                                    BlockingQueue<Frame> doneQueue) throws Exception {
+        LatencyHistogram imageHistogram = new LatencyHistogram();
+        OcrEngine engine = null;
+        while (true) {
+            Frame frame = queue.take();
+            if (frame == END) {
+                break;
+            }
+            if (engine == null) {
+                // También el calentamiento va de a un motor: algunos miden su costo al calentar
+                inferenceLock.lock();
+                try {
+                    engine = prepare(name, frame.bitmap);
+                } finally {
+                    inferenceLock.unlock();
+                }
+            }
+            inferenceLock.lock();
+            try {
+                imageHistogram.reset();
+                EngineResult result = null;
+                for (int i = 0; i < timedIterations; i++) {
+                    long start = System.nanoTime();
+                    result = engine.recognize(frame.bitmap);
+                    imageHistogram.recordNanos(System.nanoTime() - start);
+                }
+                stageHistograms[stageIndex].add(imageHistogram);
+                frame.fields[stageIndex] = stageFields(engine, result, imageHistogram);
+                storeInCache(frame, stageIndex, result);
+            } catch (Exception e) {
+                Log.e(TAG, "Error en " + name + " procesando " + frame.name, e);
+                frame.failed = true;
+            } finally {
+                inferenceLock.unlock();
+            }
+            completeStage(frame, doneQueue);
+        }
+    }
+
+    private void runConcurrentStage(String name, int stageIndex, BlockingQueue<Frame> queue,
+                                    BlockingQueue<Frame> doneQueue) throws Exception {
+        final LatencyHistogram histogram = stageHistograms[stageIndex];
+        OcrEngine engine = null;
+        // Se dimensionan al preparar el motor, que puede pedir más imágenes en curso
+        int maxInFlight = 0;
+        Semaphore slots = null;
+        try {
+            while (true) {
+                Frame frame = queue.take();
+                if (frame == END) {
+                    break;
+                }
+                if (engine == null) {
+                    engine = prepare(name, frame.bitmap);
+                    maxInFlight = Math.max(1, Math.max(config.maxInFlightPerEngine, engine.getMaxInFlight()));
+                    slots = new Semaphore(maxInFlight);
+                }
+                final OcrEngine current = engine;
+                final Semaphore stageSlots = slots;
+                stageSlots.acquire();
+                final long start = System.nanoTime();
+                CompletableFuture<EngineResult> future;
+                try {
+                    future = engine.recognizeAsync(frame.bitmap);
+                } catch (RuntimeException e) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+                future.whenComplete((result, error) -> {
+                    long elapsed = System.nanoTime() - start;
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        Log.e(TAG, "Error en " + name + " procesando " + frame.name, cause);
+                        frame.failed = true;
+                    } else {
+                        LatencyHistogram imageHistogram = new LatencyHistogram();
+                        imageHistogram.recordNanos(elapsed);
+                        synchronized (histogram) {
+                            histogram.add(imageHistogram);
+                        }
+                        frame.fields[stageIndex] = stageFields(current, result, imageHistogram);
+                        storeInCache(frame, stageIndex, result);
+                    }
+                    stageSlots.release();
+                    completeStage(frame, doneQueue);
+                });
+            }
+        } finally {
+            // Espera a que terminen las imágenes en curso antes de dar la etapa por cerrada; si el
+            // lote se está cancelando no se espera
+            if (slots != null && !Thread.currentThread().isInterrupted()) {
+                try {
+                    slots.acquire(maxInFlight);
+                    slots.release(maxInFlight);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marca la etapa como terminada para la imagen. La última en terminar devuelve el bitmap a la
+     * fuente y pasa la imagen al sink.
+     */
+    private void completeStage(Frame frame, BlockingQueue<Frame> doneQueue) {
+        if (frame.pending.decrementAndGet() == 0) {
+            Bitmap bitmap = frame.bitmap;
+            frame.bitmap = null;
+            source.release(bitmap);
+            // La cola no tiene límite: offer no falla
+            doneQueue.offer(frame);
+        }
+    }
+
+    private String[] stageFields(OcrEngine engine, EngineResult result, LatencyHistogram imageHistogram) {
+        int extraCount = engine.getExtraColumns().length;
+        List<String> fields = new ArrayList<>(extraCount + 13);
+        fields.add(result.getText());
+        fields.add(String.valueOf(result.getConfidence()));
+        fields.add(LatencyHistogram.formatMs(result.getProcessingTimeMs()));
+        fields.add(LatencyHistogram.formatMs(result.getQueueWaitMs()));
+        fields.add(result.isSuccess() ? "" : String.valueOf(result.getError()));
+        // Un fallo no trae campos propios: se completan vacíos para no correr las columnas
+        String[] extras = result.getExtraFields();
+        for (int i = 0; i < extraCount; i++) {
+            fields.add(i < extras.length ? extras[i] : "");
+        }
+        if (timedIterations > 1) {
+            fields.add(LatencyHistogram.formatMs(imageHistogram.getMeanMs()));
+            Collections.addAll(fields, imageHistogram.toCsvFields());
+        } else {
+            fields.add(LatencyHistogram.formatMs(imageHistogram.getMaxMs()));
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    private void buildRow(Frame frame, List<String> row) {
+        row.clear();
+        row.add(frame.name);
+        for (int s = 0; s < frame.fields.length; s++) {
+            Collections.addAll(row, frame.fields[s]);
+            if (config.resultCache != null) {
+                row.add(frame.cached[s] ? "1" : "0");
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.test_ocr_sbw.PredictorPool;
+import com.example.test_ocr_sbw.engine.EngineRegistry;
+import com.example.test_ocr_sbw.engine.EngineResult;
+import com.example.test_ocr_sbw.engine.OcrEngine;
+import com.example.test_ocr_sbw.engine.PaddleEngine;
+import com.example.test_ocr_sbw.engine.YoloEngine;
+import com.example.test_ocr_sbw.utils.PlateFilter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Barrido de configuraciones sobre una muestra fija de imágenes ya decodificadas: cada punto de
+ * la grilla (instancias, hilos, modo de energía, {@code detLongSize}, modelo...) se calienta y se
+ * mide con las mismas imágenes, y el resultado es una {@link SweepMatrix} con latencia, imágenes
+ * por segundo y calidad por punto, más la configuración recomendada por motor.
+ * <p>
+ * Los puntos se recorren en orden y el motor sólo se reconstruye cuando cambia su
+ * {@code reloadKey}; los parámetros que se pueden cambiar en caliente (p. ej.
+ * {@code detLongSize} de Paddle) se aplican con un {@link Tuner} sobre el motor ya cargado. Las
+ * grillas de {@link #paddlePoints} y {@link #yoloPoints} ya vienen ordenadas así.
+ * <p>
+ * Cada punto se mide en dos pasadas. En la primera cada imagen se procesa {@code timedIterations}
+ * veces seguidas, de a una, como en el modo secuencial del {@link BenchmarkScheduler}: de ahí
+ * salen la latencia y la calidad (con el resultado de la última). En la segunda la muestra se
+ * envía {@code timedIterations} veces con {@link OcrEngine#recognizeAsync} y hasta
+ * {@code inFlight} imágenes en curso (o {@link OcrEngine#getMaxInFlight()}, si es mayor), como
+ * en el modo concurrente; las imágenes por segundo salen del tiempo total de esa pasada, así que
+ * reflejan el paralelismo del motor (p. ej. las instancias del pool de Paddle) y no son la
+ * inversa de la latencia.
+ */
+public class ConfigSweep {
+
+    private static final String TAG = ConfigSweep.class.getSimpleName();
+
+    /**
+     * Ajusta un motor ya construido a los parámetros del punto, sin recargarlo.
+     */
+    public interface Tuner {
+        void apply(OcrEngine engine) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int done, int total, String description);
+    }
+
+    /**
+     * Un punto de la grilla. Puntos consecutivos con el mismo {@code reloadKey} comparten el
+     * motor que construyó el primero.
+     */
+    public static final class Point {
+        final String engine;
+        final Map<String, String> params;
+        final String reloadKey;
+        final EngineRegistry.Factory<? extends OcrEngine> factory;
+        final Tuner tuner;
+
+        public Point(String engine, Map<String, String> params, String reloadKey,
+                     EngineRegistry.Factory<? extends OcrEngine> factory, Tuner tuner) {
+            this.engine = engine;
+            this.params = new LinkedHashMap<>(params);
+            this.reloadKey = reloadKey;
+            this.factory = factory;
+            this.tuner = tuner;
+        }
+    }
+
+    private final List<Bitmap> sample;
+    private final List<String> expected;
+    private final PlateFilter plateFilter;
+    private final List<Point> points = new ArrayList<>();
+    public int warmupIterations = 2;
+    public int timedIterations = 3;
+    // Imágenes en curso en la pasada de rendimiento
+    public int inFlight = 4;
+
+    /**
+     * @param sample   imágenes de la muestra; no se reciclan aquí.
+     * @param expected patente esperada por imagen (vacía si no se conoce), p. ej. con
+     *                 {@link #expectedPlate}.
+     */
+    public ConfigSweep(List<Bitmap> sample, List<String> expected, PlateFilter plateFilter) {
+        if (sample.isEmpty() || sample.size() != expected.size()) {
+            throw new IllegalArgumentException("La muestra necesita imágenes y una etiqueta por imagen");
+        }
+        this.sample = sample;
+        this.expected = expected;
+        this.plateFilter = plateFilter;
+    }
+
+    public ConfigSweep add(List<Point> grid) {
+        points.addAll(grid);
+        return this;
+    }
+
+    public int getPointCount() {
+        return points.size();
+    }
+
+    /**
+     * Grilla de Paddle: instancias del pool x hilos x modo de energía (cada combinación recarga
+     * el modelo nativo) x {@code detLongSize} (se cambia en caliente). El resto de la
+     * configuración sale de {@code base}.
+     */
+    public static List<Point> paddlePoints(final Context context, PredictorPool.Config base, int[] instances,
+                                           int[] threads, String[] powerModes, int[] detLongSizes) {
+        List<Point> grid = new ArrayList<>();
+        for (int instanceCount : instances) {
+            for (int threadNum : threads) {
+                for (String powerMode : powerModes) {
+                    final PredictorPool.Config config = base.copy();
+                    config.instances = instanceCount;
+                    config.cpuThreadNum = threadNum;
+                    config.cpuPowerMode = powerMode;
+                    String reloadKey = "paddle|" + instanceCount + "|" + threadNum + "|" + powerMode;
+                    for (final int detLongSize : detLongSizes) {
+                        Map<String, String> params = new LinkedHashMap<>();
+                        params.put("instances", String.valueOf(instanceCount));
+                        params.put("threads", String.valueOf(threadNum));
+                        params.put("powerMode", powerMode);
+                        params.put("detLongSize", String.valueOf(detLongSize));
+                        grid.add(new Point("Paddle", params, reloadKey,
+                                () -> new PaddleEngine(PredictorPool.create(context, config)),
+                                engine -> ((PaddleEngine) engine).getPool().setDetLongSize(detLongSize)));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Grilla de YOLO: modelo x hilos del intérprete; cada punto crea su intérprete.
+     */
+    public static List<Point> yoloPoints(final Context context, String modelDir, String[] models, int[] threads) {
+        List<Point> grid = new ArrayList<>();
+        for (String model : models) {
+            final String modelPath = modelDir + "/" + model;
+            for (final int threadNum : threads) {
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("model", model);
+                params.put("threads", String.valueOf(threadNum));
+                grid.add(new Point("YOLO", params, "yolo|" + modelPath + "|" + threadNum,
+                        () -> new YoloEngine(context, modelPath, threadNum), null));
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Patente esperada según el nombre del archivo ("ABCD12.jpg", "ABCD12_003.png",
+     * "AB-CD-12.jpg"), o una cadena vacía si el nombre no contiene una.
+     */
+    public static String expectedPlate(String fileName, PlateFilter plateFilter) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        for (String token : stem.split("[^A-Za-z0-9]+")) {
+            String plate = plateFilter.extract(PlateFilter.normalize(token));
+            if (!plate.isEmpty()) {
+                return plate;
+            }
+        }
+        return plateFilter.extract(PlateFilter.normalize(stem));
+    }
+
+    /**
+     * Recorre todos los puntos. Un punto cuyo motor no se puede construir o falla queda en la
+     * matriz con todas sus imágenes como error y el barrido sigue.
+     */
+    public SweepMatrix run(ProgressListener listener) throws InterruptedException {
+        SweepMatrix matrix = new SweepMatrix();
+        OcrEngine engine = null;
+        String loadedKey = null;
+        try {
+            for (int i = 0; i < points.size(); i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Point point = points.get(i);
+                SweepMatrix.Row row = new SweepMatrix.Row(point.engine, point.params);
+                if (listener != null) {
+                    listener.onProgress(i, points.size(), point.engine + " " + point.params);
+                }
+                try {
+                    if (engine == null || !point.reloadKey.equals(loadedKey)) {
+                        closeQuietly(engine);
+                        engine = null;
+                        loadedKey = null;
+                        long start = System.nanoTime();
+                        engine = point.factory.create();
+                        row.loadMs = (System.nanoTime() - start) / 1_000_000L;
+                        loadedKey = point.reloadKey;
+                    }
+                    if (point.tuner != null) {
+                        point.tuner.apply(engine);
+                    }
+                    // También después de ajustar: con otro tamaño de entrada cambian los tensores
+                    engine.warmUp(sample.get(0), warmupIterations);
+                    measure(engine, row);
+                    measureThroughput(engine, row);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Log.e(TAG, "Error en " + point.engine + " " + point.params, e);
+                    row.images = sample.size();
+                    row.errors = sample.size();
+                    closeQuietly(engine);
+                    engine = null;
+                    loadedKey = null;
+                }
+                matrix.add(row);
+                Log.i(TAG, point.engine + " " + point.params + ": " + row.latency);
+            }
+            if (listener != null) {
+                listener.onProgress(points.size(), points.size(), "");
+            }
+        } finally {
+            closeQuietly(engine);
+        }
+        return matrix;
+    }
+
+    /**
+     * Pasada secuencial: latencia y calidad.
+     */
+    private void measure(OcrEngine engine, SweepMatrix.Row row) throws InterruptedException {
+        int iterations = Math.max(1, timedIterations);
+        for (int i = 0; i < sample.size(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            EngineResult result = null;
+            try {
+                for (int it = 0; it < iterations; it++) {
+                    long start = System.nanoTime();
+                    result = engine.recognize(sample.get(i));
+                    row.latency.recordNanos(System.nanoTime() - start);
+                }
+            } catch (Exception e) {
+                // Una imagen que falla cuenta como error, sin descartar el punto
+                Log.w(TAG, "Error en la imagen " + i, e);
+                result = null;
+            }
+            row.images++;
+            if (result == null || !result.isSuccess()) {
+                row.errors++;
+                continue;
+            }
+            String plate = plateFilter.extract(PlateFilter.normalize(result.getText()));
+            if (!plate.isEmpty()) {
+                row.plates++;
+            }
+            String label = expected.get(i);
+            if (label != null && !label.isEmpty()) {
+                row.labeled++;
+                if (label.equals(plate)) {
+                    row.correct++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pasada concurrente: imágenes por segundo con {@code row.inFlight} imágenes en curso. Las
+     * imágenes que fallan también cuentan, como en el modo concurrente del planificador.
+     */
+    private void measureThroughput(OcrEngine engine, SweepMatrix.Row row) throws InterruptedException {
+        int iterations = Math.max(1, timedIterations);
+        int maxInFlight = Math.max(1, Math.max(inFlight, engine.getMaxInFlight()));
+        Semaphore slots = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        try {
+            for (int it = 0; it < iterations; it++) {
+                for (Bitmap bitmap : sample) {
+                    slots.acquire();
+                    CompletableFuture<EngineResult> future;
+                    try {
+                        future = engine.recognizeAsync(bitmap);
+                    } catch (RuntimeException e) {
+                        future = new CompletableFuture<>();
+                        future.completeExceptionally(e);
+                    }
+                    future.whenComplete((result, error) -> slots.release());
+                }
+            }
+        } finally {
+            // El motor no se puede cerrar con imágenes en curso, ni siquiera al cancelar
+            slots.acquireUninterruptibly(maxInFlight);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        row.inFlight = maxInFlight;
+        row.imagesPerSecond = seconds > 0 ? iterations * sample.size() / seconds : 0;
+    }
+
+    private static void closeQuietly(OcrEngine engine) {
+        if (engine == null) {
+            return;
+        }
+        try {
+            engine.close();
+        } catch (Exception e) {
+            Log.w(TAG, "Error cerrando el motor", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.example.test_ocr_sbw.Predictor;
+import com.example.test_ocr_sbw.PredictorPool;
+import com.example.test_ocr_sbw.StageTimings;
+import com.example.test_ocr_sbw.ocr.YoloTFLiteHelper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cascada para fotos de patentes: un localizador rápido ({@link YoloTFLiteHelper}) encuentra la
+ * patente y sólo ese recorte pasa al reconocimiento de Paddle, sin la detección DB sobre la
+ * imagen completa ({@code run_det = 0}), que a {@code detLongSize = 960} es la etapa más cara.
+ * <p>
+ * El localizador puede ser un modelo de patentes ({@link CropStrategy#BEST_BOX}) o el modelo de
+ * caracteres existente ({@link CropStrategy#UNION}: la patente es la unión de los caracteres).
+ * Si no encuentra nada, la imagen pasa por el pipeline completo de Paddle (o queda vacía si
+ * {@code fallbackToDetection} es false). La columna {@code Stage} indica qué camino se tomó.
+ * <p>
+ * El pool de Paddle y el localizador pueden ser compartidos con otros motores (p. ej. el
+ * intérprete de {@link YoloEngine}); {@link #close()} sólo libera el localizador si le pertenece.
+ * Las inferencias sobre el localizador se sincronizan sobre el helper, igual que en
+ * {@link YoloEngine}.
+ */
+public class CascadeEngine implements OcrEngine {
+
+    public enum CropStrategy {
+        /** Caja de mayor confianza: el localizador detecta patentes. */
+        BEST_BOX,
+        /** Unión de todas las cajas: el localizador detecta caracteres. */
+        UNION
+    }
+
+    public static final String STAGE_CROP = "crop";
+    public static final String STAGE_FULL = "full";
+    public static final String STAGE_NONE = "none";
+
+    private final YoloTFLiteHelper localizer;
+    private final boolean ownsLocalizer;
+    private final PredictorPool pool;
+    private final CropStrategy strategy;
+    // Margen alrededor de la caja, como fracción de su alto
+    private final float padding;
+    private final boolean fallbackToDetection;
+
+    /**
+     * @param ownsLocalizer false si el localizador es de otro motor, que se encarga de cerrarlo.
+     */
+    public CascadeEngine(YoloTFLiteHelper localizer, boolean ownsLocalizer, PredictorPool pool,
+                         CropStrategy strategy, float padding, boolean fallbackToDetection) {
+        this.localizer = localizer;
+        this.ownsLocalizer = ownsLocalizer;
+        this.pool = pool;
+        this.strategy = strategy;
+        this.padding = padding;
+        this.fallbackToDetection = fallbackToDetection;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        String[] timings = StageTimings.csvColumns("");
+        String[] columns = new String[3 + timings.length];
+        columns[0] = "Stage";
+        columns[1] = "LocalizerMs";
+        columns[2] = "Crop";
+        System.arraycopy(timings, 0, columns, 3, timings.length);
+        return columns;
+    }
+
+    @Override
+    public String getCacheKey() throws Exception {
+        return "cascade|" + strategy + "|pad=" + padding + "|fallback=" + fallbackToDetection
+                + "|" + localizer.getModelFingerprint() + "|" + pool.getModelFingerprint();
+    }
+
+    /**
+     * El localizador trabaja a su tamaño de entrada, pero el recorte sale de la imagen decodificada
+     * y el respaldo corre la detección completa: se pide el mayor de los dos.
+     */
+    @Override
+    public int getPreferredInputSize() {
+        return Math.max(localizer.getInputSize(), pool.getConfig().detLongSize);
+    }
+
+    @Override
+    public EngineResult recognize(Bitmap bitmap) throws Exception {
+        try {
+            return recognizeAsync(bitmap).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * La localización corre en el hilo llamador (el intérprete procesa una imagen a la vez); el
+     * reconocimiento, en el pool de Paddle.
+     */
+    @Override
+    public CompletableFuture<EngineResult> recognizeAsync(Bitmap bitmap) {
+        long start = System.nanoTime();
+        List<YoloTFLiteHelper.YoloDetection> detections;
+        synchronized (localizer) {
+            detections = localizer.runInference(bitmap, bitmap.getWidth(), bitmap.getHeight());
+        }
+        final float localizerMs = (System.nanoTime() - start) / 1e6f;
+
+        Rect region = plateRegion(detections != null ? detections : Collections.<YoloTFLiteHelper.YoloDetection>emptyList(),
+                strategy, padding, bitmap.getWidth(), bitmap.getHeight());
+        if (region == null) {
+            if (!fallbackToDetection) {
+                return CompletableFuture.completedFuture(new EngineResult("", 0, localizerMs, 0,
+                        extraFields(STAGE_NONE, localizerMs, "", new StageTimings())));
+            }
+            return pool.submit(bitmap).thenApply(result -> toEngineResult(result, STAGE_FULL, localizerMs, ""));
+        }
+
+        final Bitmap crop = Bitmap.createBitmap(bitmap, region.left, region.top, region.width(), region.height());
+        final String cropField = region.left + ":" + region.top + ":" + region.width() + ":" + region.height();
+        return pool.submitRecognition(crop)
+                .whenComplete((result, error) -> {
+                    if (crop != bitmap) {
+                        crop.recycle();
+                    }
+                })
+                .thenApply(result -> toEngineResult(result, STAGE_CROP, localizerMs, cropField));
+    }
+
+    /**
+     * Región de la patente en píxeles de la imagen, con margen y recortada a sus bordes; null si
+     * no hay detecciones o la región queda demasiado chica para reconocer.
+     */
+    static Rect plateRegion(List<YoloTFLiteHelper.YoloDetection> detections, CropStrategy strategy, float padding,
+                            int width, int height) {
+        if (detections.isEmpty()) {
+            return null;
+        }
+        float left;
+        float top;
+        float right;
+        float bottom;
+        if (strategy == CropStrategy.BEST_BOX) {
+            YoloTFLiteHelper.YoloDetection best = detections.get(0);
+            for (YoloTFLiteHelper.YoloDetection det : detections) {
+                if (det.confidence > best.confidence) {
+                    best = det;
+                }
+            }
+            left = best.left;
+            top = best.top;
+            right = best.right;
+            bottom = best.bottom;
+        } else {
+            left = Float.MAX_VALUE;
+            top = Float.MAX_VALUE;
+            right = -Float.MAX_VALUE;
+            bottom = -Float.MAX_VALUE;
+            for (YoloTFLiteHelper.YoloDetection det : detections) {
+                left = Math.min(left, det.left);
+                top = Math.min(top, det.top);
+                right = Math.max(right, det.right);
+                bottom = Math.max(bottom, det.bottom);
+            }
+        }
+        float margin = (bottom - top) * padding;
+        int x0 = Math.max(0, (int) Math.floor(left - margin));
+        int y0 = Math.max(0, (int) Math.floor(top - margin));
+        int x1 = Math.min(width, (int) Math.ceil(right + margin));
+        int y1 = Math.min(height, (int) Math.ceil(bottom + margin));
+        // El reconocedor reescala el alto a 32 px (REC_IMAGE_SHAPE en ocr_crnn_process.cpp): un
+        // recorte de pocos píxeles no aporta nada
+        if (x1 - x0 < 8 || y1 - y0 < 8) {
+            return null;
+        }
+        return new Rect(x0, y0, x1, y1);
+    }
+
+    private static EngineResult toEngineResult(Predictor.PredictionResult result, String stage, float localizerMs,
+                                               String crop) {
+        return new EngineResult(result.ocr, PaddleEngine.averageConfidence(result), localizerMs + result.inferenceTime,
+                0, extraFields(stage, localizerMs, crop, result.timings));
+    }
+
+    private static String[] extraFields(String stage, float localizerMs, String crop, StageTimings timings) {
+        String[] timingFields = timings.toCsvFields();
+        String[] fields = new String[3 + timingFields.length];
+        fields[0] = stage;
+        fields[1] = String.valueOf(localizerMs);
+        fields[2] = crop;
+        System.arraycopy(timingFields, 0, fields, 3, timingFields.length);
+        return fields;
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) throws Exception {
+        synchronized (localizer) {
+            localizer.warmUp(sample, iterations);
+        }
+        pool.warmUp(sample, iterations);
+    }
+
+    @Override
+    public void close() {
+        if (!ownsLocalizer) {
+            return;
+        }
+        synchronized (localizer) {
+            localizer.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.test_ocr_sbw.benchmark.LatencyHistogram;
+import com.example.test_ocr_sbw.utils.PlateFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cascada con salida temprana: corre los motores del más barato al más caro y se queda con la
+ * primera lectura que es una patente válida ({@link PlateFilter}) con confianza suficiente. Sólo
+ * si no la hay pasa al siguiente motor; en producción basta una lectura buena por imagen.
+ * <p>
+ * Los motores que no reportan confianza (MLKit devuelve -1) se aceptan sólo por el formato.
+ * Con {@code orderByCost} el orden se fija al calentar, midiendo una inferencia de cada motor
+ * sobre la imagen de muestra; si no, se respeta el orden de {@link #addStage}.
+ * <p>
+ * Por imagen se reporta qué motor respondió ({@code Stage}) y cuántos se corrieron. El costo de
+ * correr todos se estima con la latencia media de cada motor en las imágenes donde sí corrió;
+ * {@link #summaryCsv()} lo compara con el costo real. Es sólo una estimación: la ganancia medida
+ * sale de comparar el tiempo total de una pasada sólo con la cascada contra otra con todos los
+ * motores (modo {@code COMPARE} de MainActivity). Los motores son los del {@link EngineRegistry},
+ * que es quien los cierra.
+ */
+public class EarlyExitEngine implements OcrEngine {
+
+    private static final String TAG = EarlyExitEngine.class.getSimpleName();
+    public static final String NO_STAGE = "none";
+
+    private static final class Stage {
+        final String name;
+        final OcrEngine engine;
+        final float minConfidence;
+        final LatencyHistogram latency = new LatencyHistogram();
+        int answered = 0;
+
+        Stage(String name, OcrEngine engine, float minConfidence) {
+            this.name = name;
+            this.engine = engine;
+            this.minConfidence = minConfidence;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final PlateFilter plateFilter;
+    private final boolean orderByCost;
+    private int images = 0;
+    private int unanswered = 0;
+    private double actualMs = 0;
+
+    public EarlyExitEngine(PlateFilter plateFilter, boolean orderByCost) {
+        this.plateFilter = plateFilter;
+        this.orderByCost = orderByCost;
+    }
+
+    /**
+     * Agrega un motor a la cascada; {@code minConfidence} es la confianza mínima para aceptar su
+     * lectura.
+     */
+    public synchronized EarlyExitEngine addStage(String name, OcrEngine engine, float minConfidence) {
+        stages.add(new Stage(name, engine, minConfidence));
+        return this;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        return new String[]{"Stage", "StagesRun", "EstimatedAllMs"};
+    }
+
+    /**
+     * Con {@code orderByCost} el orden (y por lo tanto el resultado) se decide recién al calentar,
+     * así que la cascada no se cachea.
+     */
+    @Override
+    public synchronized String getCacheKey() throws Exception {
+        if (orderByCost) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder("earlyexit|").append(plateFilter.getPattern().pattern());
+        for (Stage stage : stages) {
+            String stageKey = stage.engine.getCacheKey();
+            if (stageKey == null) {
+                return null;
+            }
+            key.append('|').append(stage.name).append('>').append(stage.minConfidence).append(':').append(stageKey);
+        }
+        return key.toString();
+    }
+
+    @Override
+    public synchronized int getPreferredInputSize() {
+        int size = 0;
+        for (Stage stage : stages) {
+            size = Math.max(size, stage.engine.getPreferredInputSize());
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized EngineResult recognize(Bitmap bitmap) throws Exception {
+        long start = System.nanoTime();
+        EngineResult last = null;
+        int run = 0;
+        for (Stage stage : stages) {
+            long stageStart = System.nanoTime();
+            EngineResult result;
+            try {
+                result = stage.engine.recognize(bitmap);
+            } catch (Exception e) {
+                // Un motor que falla no corta la cascada: se pasa al siguiente
+                Log.w(TAG, "Error en " + stage.name, e);
+                result = EngineResult.failure(e, 0, 0);
+            }
+            stage.latency.recordNanos(System.nanoTime() - stageStart);
+            run++;
+            if (result.isSuccess()) {
+                last = result;
+                String plate = acceptedPlate(stage, result);
+                if (plate != null) {
+                    stage.answered++;
+                    return finish(start, plate, result, stage.name, run);
+                }
+            }
+        }
+        unanswered++;
+        if (last == null) {
+            // Todos los motores fallaron: se reporta como fallo de la cascada
+            float elapsed = (System.nanoTime() - start) / 1e6f;
+            images++;
+            actualMs += elapsed;
+            return EngineResult.failure(new Exception("Ningún motor respondió"), elapsed, 0);
+        }
+        return finish(start, last.getText(), last, NO_STAGE, run);
+    }
+
+    /**
+     * Patente leída por el motor si calza con el formato y supera la confianza mínima, o null.
+     */
+    private String acceptedPlate(Stage stage, EngineResult result) {
+        float confidence = result.getConfidence();
+        if (confidence >= 0 && confidence < stage.minConfidence) {
+            return null;
+        }
+        // Paddle puede separar la patente en varias líneas ("AB CD 12") y agregar guiones
+        String plate = plateFilter.extract(PlateFilter.normalize(result.getText()));
+        return plate.isEmpty() ? null : plate;
+    }
+
+    private EngineResult finish(long start, String text, EngineResult result, String stageName, int run) {
+        float elapsed = (System.nanoTime() - start) / 1e6f;
+        images++;
+        actualMs += elapsed;
+        return new EngineResult(text, result.getConfidence(), elapsed, result.getQueueWaitMs(),
+                new String[]{stageName, String.valueOf(run), LatencyHistogram.formatMs(estimatedAllMs())});
+    }
+
+    /**
+     * Costo estimado de correr todos los motores sobre una imagen: la suma de sus latencias medias.
+     */
+    private double estimatedAllMs() {
+        double total = 0;
+        for (Stage stage : stages) {
+            total += stage.latency.getMeanMs();
+        }
+        return total;
+    }
+
+    /**
+     * Resumen del lote: por motor, cuántas veces corrió y respondió y su latencia media; al final,
+     * el costo real contra el estimado de correr todos los motores y la ganancia de rendimiento.
+     */
+    public synchronized String summaryCsv() {
+        StringBuilder csv = new StringBuilder("Stage,Runs,Answered,Mean(ms)");
+        for (Stage stage : stages) {
+            csv.append('\n').append(stage.name)
+                    .append(',').append(stage.latency.getCount())
+                    .append(',').append(stage.answered)
+                    .append(',').append(LatencyHistogram.formatMs(stage.latency.getMeanMs()));
+        }
+        csv.append('\n').append(NO_STAGE).append(",,").append(unanswered).append(',');
+        double estimatedMs = estimatedAllMs() * images;
+        csv.append("\n\nImages,ActualMs,EstimatedAllMs,EstimatedGain\n")
+                .append(images)
+                .append(',').append(LatencyHistogram.formatMs(actualMs))
+                .append(',').append(LatencyHistogram.formatMs(estimatedMs))
+                .append(',').append(String.format(Locale.US, "%.2f", getEstimatedGain()));
+        return csv.toString();
+    }
+
+    /**
+     * Cuántas veces más imágenes por segundo procesaría la cascada que correr todos los motores,
+     * estimado con las latencias medias por motor; 0 si aún no procesó nada.
+     */
+    public synchronized double getEstimatedGain() {
+        return actualMs > 0 ? estimatedAllMs() * images / actualMs : 0;
+    }
+
+    /**
+     * Calienta los motores y, con {@code orderByCost}, los ordena por la latencia de una
+     * inferencia sobre la muestra. Esa medición no entra en las estadísticas.
+     */
+    @Override
+    public synchronized void warmUp(Bitmap sample, int iterations) throws Exception {
+        final List<Double> costs = new ArrayList<>();
+        for (Stage stage : stages) {
+            stage.engine.warmUp(sample, iterations);
+            if (orderByCost) {
+                long start = System.nanoTime();
+                stage.engine.recognize(sample);
+                costs.add((System.nanoTime() - start) / 1e6);
+            }
+        }
+        if (!orderByCost) {
+            return;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> Double.compare(costs.get(a), costs.get(b)));
+        List<Stage> sorted = new ArrayList<>();
+        StringBuilder log = new StringBuilder("Orden de la cascada:");
+        for (int i : order) {
+            sorted.add(stages.get(i));
+            log.append(' ').append(stages.get(i).name).append(" (")
+                    .append(LatencyHistogram.formatMs(costs.get(i))).append(" ms)");
+        }
+        stages.clear();
+        stages.addAll(sorted);
+        Log.i(TAG, log.toString());
+    }
+
+    @Override
+    public void close() {
+        // Los motores pertenecen al registro
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.test_ocr_sbw.engine;
+
+/**
+ * Resultado común de un {@link OcrEngine} para una imagen: texto, confianza, tiempos reportados
+ * por el propio motor y los campos CSV propios de cada motor ({@link OcrEngine#getExtraColumns()}).
+ */
+public class EngineResult {
+    private static final String[] NO_FIELDS = new String[0];
+
+    private final String text;
+    private final float confidence;
+    private final float processingTimeMs;
+    private final float queueWaitMs;
+    private final String[] extraFields;
+    private final Exception error;
+
+    public EngineResult(String text, float confidence, float processingTimeMs, float queueWaitMs, String[] extraFields) {
+        this(text, confidence, processingTimeMs, queueWaitMs, extraFields, null);
+    }
+
+    private EngineResult(String text, float confidence, float processingTimeMs, float queueWaitMs,
+                         String[] extraFields, Exception error) {
+        this.text = text != null ? text : "";
+        this.confidence = confidence;
+        this.processingTimeMs = processingTimeMs;
+        this.queueWaitMs = queueWaitMs;
+        this.extraFields = extraFields != null ? extraFields : NO_FIELDS;
+        this.error = error;
+    }
+
+    /**
+     * Resultado vacío que conserva el motivo del fallo; la fila se escribe igual con el error.
+     */
+    public static EngineResult failure(Exception error, float processingTimeMs, float queueWaitMs) {
+        return new EngineResult("", -1.0f, processingTimeMs, queueWaitMs, null, error);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Tiempo en ms que el motor reporta para la imagen (sin espera en cola); -1 si no lo mide.
+     */
+    public float getProcessingTimeMs() {
+        return processingTimeMs;
+    }
+
+    /**
+     * Tiempo en ms que la imagen esperó dentro del motor antes de procesarse.
+     */
+    public float getQueueWaitMs() {
+        return queueWaitMs;
+    }
+
+    public String[] getExtraFields() {
+        return extraFields;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+}
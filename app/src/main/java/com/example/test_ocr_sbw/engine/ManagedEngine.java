@@ -0,0 +1,21 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+
+/**
+ * Ciclo de vida común de un motor de inferencia: se crea una sola vez, se calienta con una
+ * imagen de muestra y se mantiene vivo durante toda la corrida hasta {@link #close()}.
+ */
+public interface ManagedEngine {
+
+    /**
+     * Ejecuta inferencias de calentamiento para que la primera medición no incluya
+     * inicializaciones perezosas (asignación de tensores, caché de kernels, etc.).
+     */
+    void warmUp(Bitmap sample, int iterations) throws Exception;
+
+    /**
+     * Libera los recursos (nativos o de Java) que mantiene el motor.
+     */
+    void close();
+}
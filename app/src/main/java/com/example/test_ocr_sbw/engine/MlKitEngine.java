@@ -0,0 +1,82 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+
+import com.example.test_ocr_sbw.ocr.MlKitOcrHelper;
+import com.example.test_ocr_sbw.ocr.OcrResult;
+import com.example.test_ocr_sbw.utils.PlateFilter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link OcrEngine} sobre {@link MlKitOcrHelper}. Admite varias imágenes en curso (hasta el
+ * límite del helper) y, si se indica un {@link PlateFilter}, deja sólo la patente del texto.
+ */
+public class MlKitEngine implements OcrEngine {
+
+    private final MlKitOcrHelper helper;
+    private final PlateFilter plateFilter;
+
+    public MlKitEngine(MlKitOcrHelper helper, PlateFilter plateFilter) {
+        this.helper = helper;
+        this.plateFilter = plateFilter;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        return new String[0];
+    }
+
+    /**
+     * El modelo viene dentro de la dependencia de MLKit: la versión de la biblioteca y el filtro
+     * identifican el resultado.
+     */
+    @Override
+    public String getCacheKey() {
+        return "mlkit|text-recognition:" + MlKitOcrHelper.LIBRARY_VERSION + "|filter="
+                + (plateFilter != null ? plateFilter.getPattern().pattern() : "");
+    }
+
+    @Override
+    public EngineResult recognize(Bitmap bitmap) {
+        return toEngineResult(helper.runOcrSync(bitmap));
+    }
+
+    /**
+     * El resultado se entrega recién cuando MLKit suelta el bitmap, porque el planificador lo
+     * devuelve a la fuente al completarse el futuro. Un vencimiento se sigue informando como error,
+     * con el tiempo medido hasta el vencimiento.
+     */
+    @Override
+    public CompletableFuture<EngineResult> recognizeAsync(Bitmap bitmap) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> inputReleased = new CompletableFuture<>();
+        return helper.submit(bitmap, inputReleased).handle((result, error) -> {
+            if (error == null) {
+                return toEngineResult(result);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            float elapsed = (System.nanoTime() - start) / 1e6f;
+            return EngineResult.failure(cause instanceof Exception ? (Exception) cause : new Exception(cause), elapsed, 0);
+        }).thenCombine(inputReleased, (result, released) -> result);
+    }
+
+    private EngineResult toEngineResult(OcrResult result) {
+        if (!result.isSuccess()) {
+            return EngineResult.failure(result.getError(), result.getProcessingTime(), result.getQueueWaitTime());
+        }
+        String text = plateFilter != null ? plateFilter.extract(result.getText()) : result.getText();
+        return new EngineResult(text, result.getConfidence(), result.getProcessingTime(), result.getQueueWaitTime(), null);
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) {
+        helper.warmUp(sample, iterations);
+    }
+
+    @Override
+    public void close() {
+        helper.close();
+    }
+}
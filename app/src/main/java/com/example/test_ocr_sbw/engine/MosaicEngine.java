@@ -0,0 +1,283 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.test_ocr_sbw.OcrResultModel;
+import com.example.test_ocr_sbw.Predictor;
+import com.example.test_ocr_sbw.PredictorPool;
+import com.example.test_ocr_sbw.utils.CollageHelper;
+import com.example.test_ocr_sbw.utils.MosaicLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paddle en modo mosaico: junta hasta {@code maxImages} imágenes chicas (recortes de patentes)
+ * en un solo lienzo de {@code detLongSize} de lado ({@link MosaicLayout}) y corre detección y
+ * reconocimiento una vez para todas. Una pasada de detección a 960 px por cada recorte de pocas
+ * decenas de píxeles desperdicia casi todo el lienzo.
+ * <p>
+ * Cada caja detectada se asigna a la imagen cuya celda la contiene y se lleva a sus coordenadas;
+ * las que cruzan el borde de una celda se descartan (columna {@code DroppedBoxes}). El tiempo
+ * del mosaico se reparte en partes iguales entre sus imágenes; la espera hasta completarlo va a
+ * {@code QueueWaitMs}.
+ * <p>
+ * Sólo rinde en modo concurrente, donde el planificador deja {@link #getMaxInFlight()} imágenes
+ * en curso. Un mosaico incompleto se procesa igual tras {@code maxWaitMs}, y
+ * {@link #recognize(Bitmap)} lo procesa en el acto (una imagen por mosaico). El resultado de una
+ * imagen depende de sus vecinas, así que el motor no se cachea. El pool puede ser compartido con
+ * otro motor, por lo que {@link #close()} no lo cierra.
+ */
+public class MosaicEngine implements OcrEngine {
+
+    private static final String TAG = MosaicEngine.class.getSimpleName();
+
+    private static final class Pending {
+        final Bitmap bitmap;
+        final CompletableFuture<EngineResult> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+
+        Pending(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final PredictorPool pool;
+    private final int maxImages;
+    private final long maxWaitMs;
+    // Píxeles libres entre celdas vecinas
+    private final int gutter;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> pendingFlush;
+
+    public MosaicEngine(PredictorPool pool, int maxImages, long maxWaitMs, int gutter) {
+        this.pool = pool;
+        this.maxImages = Math.max(1, maxImages);
+        this.maxWaitMs = maxWaitMs;
+        this.gutter = gutter;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        return new String[]{"MosaicImages", "MosaicGrid", "Boxes", "DroppedBoxes", "MosaicMs"};
+    }
+
+    @Override
+    public int getPreferredInputSize() {
+        return pool.getConfig().detLongSize;
+    }
+
+    /**
+     * Un mosaico completo por cada instancia del pool.
+     */
+    @Override
+    public int getMaxInFlight() {
+        return maxImages * pool.getInstanceCount();
+    }
+
+    @Override
+    public EngineResult recognize(Bitmap bitmap) throws Exception {
+        CompletableFuture<EngineResult> future = recognizeAsync(bitmap);
+        flush();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<EngineResult> recognizeAsync(Bitmap bitmap) {
+        Pending image = new Pending(bitmap);
+        List<Pending> full = null;
+        synchronized (this) {
+            pending.add(image);
+            if (pending.size() >= maxImages) {
+                full = takePending();
+            } else if (pendingFlush == null && !timer.isShutdown()) {
+                pendingFlush = timer.schedule(this::flush, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            process(full);
+        }
+        return image.future;
+    }
+
+    /**
+     * Procesa el mosaico en curso aunque no esté completo.
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            process(batch);
+        }
+    }
+
+    private List<Pending> takePending() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        return batch;
+    }
+
+    private void process(final List<Pending> batch) {
+        final long dispatchNanos = System.nanoTime();
+        final MosaicLayout layout;
+        final Bitmap mosaic;
+        try {
+            int size = pool.getConfig().detLongSize;
+            int[] widths = new int[batch.size()];
+            int[] heights = new int[batch.size()];
+            List<Bitmap> images = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                Bitmap bitmap = batch.get(i).bitmap;
+                widths[i] = bitmap.getWidth();
+                heights[i] = bitmap.getHeight();
+                images.add(bitmap);
+            }
+            layout = MosaicLayout.forImages(size, size, widths, heights, gutter);
+            mosaic = CollageHelper.createMosaic(images, layout, null);
+        } catch (RuntimeException e) {
+            fail(batch, e, dispatchNanos);
+            return;
+        }
+        pool.submit(mosaic).whenComplete((result, error) -> {
+            mosaic.recycle();
+            if (error != null) {
+                fail(batch, error instanceof Exception ? (Exception) error : new Exception(error), dispatchNanos);
+            } else {
+                split(batch, layout, result, dispatchNanos);
+            }
+        });
+    }
+
+    /**
+     * Reparte las cajas del mosaico entre sus imágenes y completa el resultado de cada una.
+     */
+    private static void split(List<Pending> batch, MosaicLayout layout, Predictor.PredictionResult result,
+                              long dispatchNanos) {
+        int count = batch.size();
+        StringBuilder[] texts = new StringBuilder[count];
+        StringBuilder[] boxes = new StringBuilder[count];
+        float[] confidence = new float[count];
+        int[] lines = new int[count];
+        int[] dropped = new int[count];
+        for (int i = 0; i < count; i++) {
+            texts[i] = new StringBuilder();
+            boxes[i] = new StringBuilder();
+        }
+        int[] xs = new int[4];
+        int[] ys = new int[4];
+        if (result.details != null) {
+            for (OcrResultModel det : result.details) {
+                int points = det.getPointCount();
+                if (xs.length < points) {
+                    xs = new int[points];
+                    ys = new int[points];
+                }
+                for (int p = 0; p < points; p++) {
+                    xs[p] = det.getPointX(p);
+                    ys[p] = det.getPointY(p);
+                }
+                int cell = layout.cellOf(xs, ys, points);
+                if (cell < 0) {
+                    countDropped(layout, xs, ys, points, dropped);
+                    continue;
+                }
+                String label = det.getLabel();
+                if (label != null && !label.isEmpty()) {
+                    texts[cell].append(label).append(' ');
+                }
+                confidence[cell] += det.getConfidence();
+                lines[cell]++;
+                appendBox(layout, cell, xs, ys, points, boxes[cell]);
+            }
+        }
+
+        float share = result.inferenceTime / count;
+        String grid = layout.getCols() + "x" + layout.getRows();
+        for (int i = 0; i < count; i++) {
+            Pending image = batch.get(i);
+            float waitMs = (dispatchNanos - image.enqueuedNanos) / 1e6f;
+            image.future.complete(new EngineResult(texts[i].toString().trim(),
+                    lines[i] > 0 ? confidence[i] / lines[i] : 0, share, waitMs,
+                    new String[]{String.valueOf(count), grid, boxes[i].toString().trim(), String.valueOf(dropped[i]),
+                            String.valueOf(result.inferenceTime)}));
+        }
+    }
+
+    /**
+     * Una caja descartada cuenta para cada imagen cuya celda toca.
+     */
+    private static void countDropped(MosaicLayout layout, int[] xs, int[] ys, int points, int[] dropped) {
+        boolean[] touched = new boolean[dropped.length];
+        for (int p = 0; p < points; p++) {
+            int cell = layout.cellAt(xs[p], ys[p]);
+            if (cell >= 0 && !touched[cell]) {
+                touched[cell] = true;
+                dropped[cell]++;
+            }
+        }
+    }
+
+    /**
+     * Agrega la caja en coordenadas de la imagen, como {@code left:top:width:height}.
+     */
+    private static void appendBox(MosaicLayout layout, int cell, int[] xs, int[] ys, int points, StringBuilder out) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int p = 0; p < points; p++) {
+            int x = layout.toSourceX(cell, xs[p]);
+            int y = layout.toSourceY(cell, ys[p]);
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x);
+            bottom = Math.max(bottom, y);
+        }
+        out.append(left).append(':').append(top).append(':').append(right - left).append(':')
+                .append(bottom - top).append(' ');
+    }
+
+    private static void fail(List<Pending> batch, Exception error, long dispatchNanos) {
+        Log.e(TAG, "Error procesando un mosaico de " + batch.size() + " imágenes", error);
+        for (Pending image : batch) {
+            image.future.complete(EngineResult.failure(error, 0, (dispatchNanos - image.enqueuedNanos) / 1e6f));
+        }
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) throws Exception {
+        pool.warmUp(sample, iterations);
+    }
+
+    /**
+     * Procesa lo pendiente y detiene el temporizador; el pool pertenece al motor de Paddle.
+     */
+    @Override
+    public void close() {
+        flush();
+        timer.shutdown();
+    }
+}
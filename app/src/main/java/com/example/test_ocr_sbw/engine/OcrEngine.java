@@ -0,0 +1,67 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Motor de OCR intercambiable para el benchmark. Cada motor (o variante de modelo) se registra
+ * en un {@link EngineRegistry} con su nombre y el planificador lo ejecuta sin conocer su tipo.
+ */
+public interface OcrEngine extends ManagedEngine {
+
+    /**
+     * Columnas CSV propias del motor, sin prefijo; las comunes (texto, confianza, tiempos y error)
+     * las agrega el planificador.
+     */
+    String[] getExtraColumns();
+
+    /**
+     * Reconoce la imagen de forma sincrónica. Un fallo del motor que no impide escribir la fila
+     * se devuelve con {@link EngineResult#failure}; una excepción descarta la imagen.
+     */
+    EngineResult recognize(Bitmap bitmap) throws Exception;
+
+    /**
+     * Huella del modelo y la configuración que determinan el resultado (hash de los archivos del
+     * modelo, umbrales, tamaño de entrada...). Si cambia, los resultados guardados en la
+     * {@link com.example.test_ocr_sbw.benchmark.ResultCache} dejan de valer. Null si el motor no
+     * debe cachearse.
+     */
+    default String getCacheKey() throws Exception {
+        return null;
+    }
+
+    /**
+     * Lado mayor, en píxeles, con el que el motor trabaja internamente (entrada del detector).
+     * El planificador decodifica cada imagen al mayor de estos valores entre sus motores, en vez
+     * de a resolución completa. 0 si al motor le sirve cualquier tamaño.
+     */
+    default int getPreferredInputSize() {
+        return 0;
+    }
+
+    /**
+     * Imágenes en curso que el motor necesita para rendir en modo concurrente (p. ej. las que
+     * junta en un mosaico). El planificador usa el mayor entre esto y su
+     * {@code maxInFlightPerEngine}. 0 si no tiene preferencia.
+     */
+    default int getMaxInFlight() {
+        return 0;
+    }
+
+    /**
+     * Variante asíncrona usada en modo concurrente. Por defecto reconoce en el hilo llamador; los
+     * motores que admiten varias imágenes en curso (MLKit, el pool de Paddle) la sobrescriben.
+     * El bitmap no debe reciclarse hasta que el futuro se complete.
+     */
+    default CompletableFuture<EngineResult> recognizeAsync(Bitmap bitmap) {
+        CompletableFuture<EngineResult> future = new CompletableFuture<>();
+        try {
+            future.complete(recognize(bitmap));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
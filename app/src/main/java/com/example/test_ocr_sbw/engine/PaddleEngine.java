@@ -0,0 +1,89 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.graphics.Bitmap;
+
+import com.example.test_ocr_sbw.OcrResultModel;
+import com.example.test_ocr_sbw.Predictor;
+import com.example.test_ocr_sbw.PredictorPool;
+import com.example.test_ocr_sbw.StageTimings;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link OcrEngine} sobre un {@link PredictorPool}; las columnas propias son el desglose por
+ * etapa de {@link StageTimings}. En modo concurrente caben tantas imágenes en curso como
+ * instancias y lugares en la cola tenga el pool.
+ */
+public class PaddleEngine implements OcrEngine {
+
+    private final PredictorPool pool;
+
+    public PaddleEngine(PredictorPool pool) {
+        this.pool = pool;
+    }
+
+    public PredictorPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        return StageTimings.csvColumns("");
+    }
+
+    @Override
+    public String getCacheKey() throws Exception {
+        return pool.getModelFingerprint();
+    }
+
+    @Override
+    public int getPreferredInputSize() {
+        return pool.getConfig().detLongSize;
+    }
+
+    @Override
+    public EngineResult recognize(Bitmap bitmap) throws Exception {
+        try {
+            return recognizeAsync(bitmap).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<EngineResult> recognizeAsync(Bitmap bitmap) {
+        return pool.submit(bitmap).thenApply(PaddleEngine::toEngineResult);
+    }
+
+    static EngineResult toEngineResult(Predictor.PredictionResult result) {
+        return new EngineResult(result.ocr, averageConfidence(result), result.inferenceTime, 0,
+                result.timings.toCsvFields());
+    }
+
+    /**
+     * Confianza promedio de las líneas reconocidas; 0 si no hay ninguna.
+     */
+    static float averageConfidence(Predictor.PredictionResult result) {
+        float sumConfidence = 0f;
+        int count = 0;
+        if (result.details != null) {
+            for (OcrResultModel det : result.details) {
+                sumConfidence += det.getConfidence();
+                count++;
+            }
+        }
+        return count > 0 ? sumConfidence / count : 0;
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) throws Exception {
+        pool.warmUp(sample, iterations);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.test_ocr_sbw.engine;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.example.test_ocr_sbw.ocr.YoloTFLiteHelper;
+
+import java.util.List;
+
+/**
+ * {@link OcrEngine} sobre {@link YoloTFLiteHelper}: cada detección es un carácter y el texto se
+ * arma de izquierda a derecha. El intérprete usa buffers preasignados, así que procesa una
+ * imagen a la vez; como otros motores (la cascada) pueden compartir el helper, el acceso se
+ * sincroniza sobre el helper y no sobre el motor.
+ */
+public class YoloEngine implements OcrEngine {
+
+    private final YoloTFLiteHelper helper;
+
+    public YoloEngine(Context context, String modelPath) {
+        this(context, modelPath, YoloTFLiteHelper.DEFAULT_NUM_THREADS);
+    }
+
+    public YoloEngine(Context context, String modelPath, int numThreads) {
+        this(new YoloTFLiteHelper(context, modelPath, null, null, message -> { }, numThreads));
+    }
+
+    public YoloEngine(YoloTFLiteHelper helper) {
+        this.helper = helper;
+    }
+
+    public YoloTFLiteHelper getHelper() {
+        return helper;
+    }
+
+    @Override
+    public String[] getExtraColumns() {
+        return new String[]{"Detections"};
+    }
+
+    @Override
+    public String getCacheKey() throws Exception {
+        return helper.getModelFingerprint();
+    }
+
+    @Override
+    public int getPreferredInputSize() {
+        return helper.getInputSize();
+    }
+
+    @Override
+    public EngineResult recognize(Bitmap bitmap) {
+        long start;
+        List<YoloTFLiteHelper.YoloDetection> detections;
+        synchronized (helper) {
+            start = System.nanoTime();
+            // Las detecciones ya vienen ordenadas de izquierda a derecha
+            detections = helper.runInference(bitmap, bitmap.getWidth(), bitmap.getHeight());
+        }
+        float elapsed = (System.nanoTime() - start) / 1e6f;
+
+        StringBuilder text = new StringBuilder();
+        float sumConfidence = 0f;
+        for (YoloTFLiteHelper.YoloDetection det : detections) {
+            text.append(det.label);
+            sumConfidence += det.confidence;
+        }
+        float avgConfidence = detections.isEmpty() ? 0 : sumConfidence / detections.size();
+        return new EngineResult(text.toString(), avgConfidence, elapsed, 0,
+                new String[]{String.valueOf(detections.size())});
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) {
+        synchronized (helper) {
+            helper.warmUp(sample, iterations);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (helper) {
+            helper.close();
+        }
+    }
+}
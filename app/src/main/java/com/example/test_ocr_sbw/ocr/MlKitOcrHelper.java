@@ -3,78 +3,236 @@ package com.example.test_ocr_sbw.ocr;
 import android.graphics.Bitmap;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
+import com.example.test_ocr_sbw.engine.ManagedEngine;
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * OCR con MLKit usando un único {@link TextRecognizer} durante toda la vida del helper.
+ * <p>
+ * Hasta {@code maxInFlight} reconocimientos pueden estar en curso a la vez; {@link #submit}
+ * espera a que se libere un lugar y reporta ese tiempo como espera en cola, aparte del tiempo
+ * de reconocimiento. Cada solicitud falla con {@link TimeoutException} si MLKit no responde en
+ * {@code timeoutMs}. MLKit no permite cancelar un {@code process()} ya iniciado, así que el
+ * lugar se libera cuando la tarea termina de verdad, aunque el futuro ya haya expirado o se
+ * haya cancelado. Por lo mismo el bitmap sigue en uso hasta entonces: quien lo recicle o lo
+ * reutilice debe esperar la señal {@code inputReleased} de {@link #submit(Bitmap, CompletableFuture)},
+ * no el resultado.
+ */
+public class MlKitOcrHelper implements ManagedEngine {
+
+    private static final String TAG = MlKitOcrHelper.class.getSimpleName();
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    public static final long DEFAULT_TIMEOUT_MS = 10_000;
+    // Debe coincidir con com.google.mlkit:text-recognition en app/build.gradle
+    public static final String LIBRARY_VERSION = "16.0.0";
 
-public class MlKitOcrHelper {
+    // Los listeners corren en el hilo que completa la tarea, no en el hilo principal
+    private static final Executor DIRECT = Runnable::run;
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = createTimeoutScheduler();
 
     public interface OcrCallback {
         void onSuccess(String recognizedText, float confidence);
         void onError(Exception e);
     }
 
-    public void runOcr(Bitmap bitmap, OcrCallback callback) {
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long timeoutMs;
+    private TextRecognizer recognizer;
+
+    public MlKitOcrHelper() {
+        this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_TIMEOUT_MS);
+    }
+
+    public MlKitOcrHelper(int maxInFlight, long timeoutMs) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.timeoutMs = timeoutMs;
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+    }
+
+    private static ScheduledThreadPoolExecutor createTimeoutScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "MlKitOcrTimeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Cliente compartido; se vuelve a crear si {@link #close()} lo cerró.
+     */
+    private synchronized TextRecognizer getRecognizer() {
+        if (recognizer == null) {
+            recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        }
+        return recognizer;
+    }
+
+    /**
+     * Como {@link #submit(Bitmap, CompletableFuture)}, para quien no recicla el bitmap.
+     */
+    public CompletableFuture<OcrResult> submit(Bitmap bitmap) {
+        return submit(bitmap, null);
+    }
+
+    /**
+     * Inicia el reconocimiento y devuelve el resultado futuro. Bloquea sólo si ya hay
+     * {@code maxInFlight} solicitudes en curso. El texto devuelto conserva sólo caracteres
+     * alfanuméricos.
+     * <p>
+     * El resultado puede completarse con {@link TimeoutException} mientras MLKit todavía lee el
+     * bitmap; {@code inputReleased} (si no es null) se completa recién cuando la tarea termina
+     * (éxito, error o cancelación), o enseguida si no llegó a iniciarse. Hasta entonces el bitmap
+     * no debe reciclarse ni reutilizarse.
+     */
+    public CompletableFuture<OcrResult> submit(Bitmap bitmap, CompletableFuture<Void> inputReleased) {
+        CompletableFuture<OcrResult> future = new CompletableFuture<>();
         if (bitmap == null) {
-            if (callback != null) {
-                callback.onError(new IllegalArgumentException("Bitmap is null"));
+            future.completeExceptionally(new IllegalArgumentException("Bitmap is null"));
+            releaseInput(inputReleased);
+            return future;
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            releaseInput(inputReleased);
+            return future;
+        }
+        long startTime = System.nanoTime();
+        long queueWaitMs = (startTime - queuedAt) / 1_000_000L;
+
+        Task<Text> task;
+        try {
+            task = getRecognizer().process(InputImage.fromBitmap(bitmap, 0));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            future.completeExceptionally(e);
+            releaseInput(inputReleased);
+            return future;
+        }
+        ScheduledFuture<?> timeout = timeoutMs > 0
+                ? TIMEOUTS.schedule(() -> future.completeExceptionally(
+                        new TimeoutException("MLKit no respondió en " + timeoutMs + " ms")), timeoutMs, TimeUnit.MILLISECONDS)
+                : null;
+        task.addOnSuccessListener(DIRECT, visionText -> {
+            long elapsed = (System.nanoTime() - startTime) / 1_000_000L;
+            inFlight.release();
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            String recognizedText = visionText.getText().replaceAll("[^A-Za-z0-9]", "");
+            future.complete(new OcrResult(recognizedText, -1.0f, elapsed, queueWaitMs));
+            releaseInput(inputReleased);
+        });
+        task.addOnFailureListener(DIRECT, e -> {
+            inFlight.release();
+            if (timeout != null) {
+                timeout.cancel(false);
             }
-            return;
+            future.completeExceptionally(e);
+            releaseInput(inputReleased);
+        });
+        task.addOnCanceledListener(DIRECT, () -> {
+            inFlight.release();
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            future.cancel(false);
+            releaseInput(inputReleased);
+        });
+        return future;
+    }
+
+    private static void releaseInput(CompletableFuture<Void> inputReleased) {
+        if (inputReleased != null) {
+            inputReleased.complete(null);
         }
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
-        long startTime = System.currentTimeMillis();
-        TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS)
-                .process(image)
-                .addOnSuccessListener(new OnSuccessListener<Text>() {
-                    @Override
-                    public void onSuccess(Text visionText) {
-                        long elapsed = System.currentTimeMillis() - startTime;
-                        String recognizedText = visionText.getText();
-                        recognizedText = recognizedText.replaceAll("[^A-Za-z0-9]", "");
-                        if (callback != null) {
-                            callback.onSuccess(recognizedText, -1.0f);
-                        }
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        if (callback != null) {
-                            callback.onError(e);
-                        }
-                    }
-                });
     }
 
-    public OcrResult runOcrSync(Bitmap bitmap) {
-        final AtomicReference<OcrResult> resultRef = new AtomicReference<>(new OcrResult("", -1.0f, 0));
-        final CountDownLatch latch = new CountDownLatch(1);
-        long startTime = System.currentTimeMillis();
-        runOcr(bitmap, new OcrCallback() {
-            @Override
-            public void onSuccess(String recognizedText, float confidence) {
-                long elapsed = System.currentTimeMillis() - startTime;
-                resultRef.set(new OcrResult(recognizedText, confidence, elapsed));
-                latch.countDown();
+    public void runOcr(Bitmap bitmap, OcrCallback callback) {
+        submit(bitmap).whenComplete((result, error) -> {
+            if (callback == null) {
+                return;
             }
-            @Override
-            public void onError(Exception e) {
-                latch.countDown();
+            if (error != null) {
+                callback.onError(error instanceof Exception ? (Exception) error : new ExecutionException(error));
+            } else {
+                callback.onSuccess(result.getText(), result.getConfidence());
             }
         });
+    }
+
+    /**
+     * Versión bloqueante de {@link #submit}. Los errores y los tiempos de espera no lanzan
+     * excepción: se devuelven en {@link OcrResult#getError()} con el texto vacío. No vuelve hasta
+     * que MLKit deja de leer el bitmap, así que al volver se puede reciclar aunque haya expirado;
+     * el tiempo informado en ese caso es el del vencimiento.
+     */
+    public OcrResult runOcrSync(Bitmap bitmap) {
+        long startTime = System.nanoTime();
+        CompletableFuture<Void> inputReleased = new CompletableFuture<>();
+        CompletableFuture<OcrResult> future = submit(bitmap, inputReleased);
+        OcrResult result;
         try {
-            latch.await();
+            result = future.get();
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            result = OcrResult.failure(e, (System.nanoTime() - startTime) / 1_000_000L, 0);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Log.w(TAG, "Error de MLKit", cause);
+            result = OcrResult.failure(cause instanceof Exception ? (Exception) cause : e,
+                    (System.nanoTime() - startTime) / 1_000_000L, 0);
+        }
+        // join no es interrumpible: el bitmap no puede volver a la fuente mientras MLKit lo lee
+        inputReleased.join();
+        return result;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @Override
+    public void warmUp(Bitmap sample, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            runOcrSync(sample);
+        }
+    }
+
+    /**
+     * Cierra el cliente de MLKit. El helper sigue siendo usable: la siguiente solicitud crea un
+     * cliente nuevo.
+     */
+    @Override
+    public synchronized void close() {
+        if (recognizer != null) {
+            recognizer.close();
+            recognizer = null;
         }
-        return resultRef.get();
     }
 }
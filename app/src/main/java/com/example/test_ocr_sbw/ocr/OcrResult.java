@@ -4,11 +4,27 @@ public class OcrResult {
     private String text;
     private float confidence;
     private long processingTime; // en ms
+    private long queueWaitTime; // en ms, esperando un lugar libre antes de procesar
+    private Exception error;
 
     public OcrResult(String text, float confidence, long processingTime) {
+        this(text, confidence, processingTime, 0);
+    }
+
+    public OcrResult(String text, float confidence, long processingTime, long queueWaitTime) {
         this.text = text;
         this.confidence = confidence;
         this.processingTime = processingTime;
+        this.queueWaitTime = queueWaitTime;
+    }
+
+    /**
+     * Resultado vacío que conserva el motivo del fallo, para reportarlo en vez de perderlo.
+     */
+    public static OcrResult failure(Exception error, long processingTime, long queueWaitTime) {
+        OcrResult result = new OcrResult("", -1.0f, processingTime, queueWaitTime);
+        result.error = error;
+        return result;
     }
 
     public String getText() {
@@ -22,4 +38,16 @@ public class OcrResult {
     public long getProcessingTime() {
         return processingTime;
     }
+
+    public long getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Exception getError() {
+        return error;
+    }
 }
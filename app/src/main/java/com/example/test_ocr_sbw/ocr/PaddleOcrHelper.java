@@ -4,80 +4,75 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.util.Log;
 
-import java.io.IOException;
+import com.example.test_ocr_sbw.Predictor;
+import com.example.test_ocr_sbw.PredictorPool;
+
 import java.util.concurrent.CompletableFuture;
 
 /**
- * Ejemplo genérico de una clase que:
- * 1) Inicializa Paddle Lite con los .nb
- * 2) Ofrece un método para ejecutar la inferencia (detección + reconocimiento)
+ * Fachada de PaddleOCR para el resto de la app:
+ * 1) Inicializa un {@link PredictorPool} con los .nb de assets
+ * 2) Ofrece un método asíncrono para ejecutar la inferencia (detección + reconocimiento)
+ * <p>
+ * Las llamadas se encolan en el pool en vez de crear un hilo por imagen.
  */
 public class PaddleOcrHelper {
 
     private static final String TAG = "PaddleOcrHelper";
-    // Nombres de modelos en assets
-    private static final String DET_MODEL = "models/ch_PP-OCRv3_det_infer.nb";
-    private static final String REC_MODEL = "models/ch_PP-OCRv3_rec_infer.nb";
-    private static final String CLS_MODEL = "models/ch_ppocr_mobile_v2.0_cls_infer.nb";
-
-    // Librería nativa, hipotético
-    static {
-        System.loadLibrary("paddle_lite_jni");
-        // O el .so que necesites
-    }
 
-    // Supongamos que existe un wrapper nativo o Java:
-    private native boolean initPaddle(Context context, String detPath, String recPath, String clsPath);
-    private native OcrResultStruct runOcrNative(Bitmap bitmap);
-
-    private boolean isInited = false;
+    private PredictorPool pool;
 
     /**
-     * Inicializa los modelos de PaddleOCR.
+     * Inicializa los modelos de PaddleOCR con la configuración por defecto (una instancia).
      */
     public boolean init(Context context) {
-        // Copiar o preparar los archivos nb en la ruta que Paddle Lite espera,
-        // o usarlos directamente desde assets (depende de tu wrapper).
-        boolean ok = initPaddle(context, DET_MODEL, REC_MODEL, CLS_MODEL);
-        isInited = ok;
-        Log.d(TAG, "Paddle init: " + ok);
-        return ok;
+        return init(context, new PredictorPool.Config());
+    }
+
+    /**
+     * Inicializa los modelos de PaddleOCR; {@code config.instances} y {@code config.cpuThreadNum}
+     * definen cómo se reparten los hilos.
+     */
+    public boolean init(Context context, PredictorPool.Config config) {
+        close();
+        try {
+            pool = PredictorPool.create(context, config);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Paddle init", e);
+            return false;
+        }
+        Log.d(TAG, "Paddle init: " + pool.getInstanceCount() + " instancias");
+        return true;
     }
 
     /**
      * Ejecuta la inferencia (detección + reconocimiento).
-     * Devuelve un Future con el resultado final.
+     * Devuelve un Future con el texto concatenado.
      */
     public CompletableFuture<String> runOcr(Bitmap bitmap) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        if (!isInited) {
+        return run(bitmap).thenApply(result -> result.ocr);
+    }
+
+    /**
+     * Igual que {@link #runOcr(Bitmap)} pero con el resultado completo (detalles y tiempos).
+     */
+    public CompletableFuture<Predictor.PredictionResult> run(Bitmap bitmap) {
+        if (pool == null) {
+            CompletableFuture<Predictor.PredictionResult> future = new CompletableFuture<>();
             future.completeExceptionally(new IllegalStateException("Paddle no inicializado"));
             return future;
         }
+        return pool.submit(bitmap);
+    }
 
-        new Thread(() -> {
-            try {
-                OcrResultStruct nativeResult = runOcrNative(bitmap);
-                // Asume que OcrResultStruct tiene campos como "text", "confidence"...
-                if (nativeResult != null) {
-                    future.complete(nativeResult.text);
-                } else {
-                    future.complete("");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                future.completeExceptionally(e);
-            }
-        }).start();
-        return future;
+    public PredictorPool getPool() {
+        return pool;
     }
 
-    /**
-     * Estructura que recibes desde la parte nativa.
-     * Ejemplo con solo 'text' y 'confidence'.
-     */
-    public static class OcrResultStruct {
-        public String text;
-        public float confidence;
+    public void close() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
     }
 }
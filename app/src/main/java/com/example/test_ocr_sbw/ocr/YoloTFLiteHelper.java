@@ -2,35 +2,52 @@ package com.example.test_ocr_sbw.ocr;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.test_ocr_sbw.engine.ManagedEngine;
+import com.example.test_ocr_sbw.utils.ModelAssets;
 import com.example.test_ocr_sbw.yolo.BoundingBox;
 import com.example.test_ocr_sbw.yolo.MetaData;
+import com.example.test_ocr_sbw.yolo.YoloOutputDecoder;
 
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.ops.CastOp;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
-
-public class YoloTFLiteHelper {
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Detector YOLO sobre TFLite. El preprocesamiento y la inferencia usan buffers reservados una vez
+ * (bitmap escalado, {@code int[]} de píxeles, buffers directos de entrada y salida), así que en
+ * régimen estable no se reserva memoria por cuadro. Por lo mismo, una instancia no debe usarse
+ * desde varios hilos a la vez.
+ */
+public class YoloTFLiteHelper implements ManagedEngine {
 
     private Context context;
     private String modelPath;
     private String labelPath; // Puede ser null
     private DetectorListener detectorListener;
     private MessageCallback messageCallback;
+    private final int numThreads;
 
     private Interpreter interpreter;
     private List<String> labels;
@@ -40,37 +57,61 @@ public class YoloTFLiteHelper {
     private int numChannel = 0;
     private int numElements = 0;
 
-    private ImageProcessor imageProcessor;
+    // Buffers reutilizados entre cuadros
+    private Bitmap scaledBitmap;
+    private Canvas scaledCanvas;
+    private final Rect scaledRect = new Rect();
+    private final Paint scalePaint = new Paint();
+    private int[] pixels;
+    private ByteBuffer inputBuffer;
+    private FloatBuffer inputFloats;
+    private ByteBuffer outputBuffer;
+    private FloatBuffer outputFloats;
+    private YoloOutputDecoder outputDecoder;
+    private ExecutorService decodeExecutor;
+    private int decodeThreads = 1;
+    private final Object[] interpreterInputs = new Object[1];
+    private final Map<Integer, Object> interpreterOutputs = new HashMap<>();
+    private String modelFingerprint;
 
     // Constantes para preprocesamiento e inferencia
     private static final float INPUT_MEAN = 0f;
     private static final float INPUT_STANDARD_DEVIATION = 255f;
     private static final DataType INPUT_IMAGE_TYPE = DataType.FLOAT32;
-    private static final DataType OUTPUT_IMAGE_TYPE = DataType.FLOAT32;
     private static final float CONFIDENCE_THRESHOLD = 0.3f;
     private static final float IOU_THRESHOLD = 0.5f;
+    public static final int DEFAULT_NUM_THREADS = 4;
 
     /**
-     * Constructor.
+     * Constructor con {@link #DEFAULT_NUM_THREADS} hilos de CPU.
      */
     public YoloTFLiteHelper(Context context, String modelPath, String labelPath,
                             DetectorListener detectorListener, MessageCallback messageCallback) {
+        this(context, modelPath, labelPath, detectorListener, messageCallback, DEFAULT_NUM_THREADS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param numThreads hilos de CPU del intérprete.
+     */
+    public YoloTFLiteHelper(Context context, String modelPath, String labelPath,
+                            DetectorListener detectorListener, MessageCallback messageCallback, int numThreads) {
         this.context = context;
+        this.numThreads = Math.max(1, numThreads);
         this.modelPath = modelPath;
         this.labelPath = labelPath;
         this.detectorListener = detectorListener;
         this.messageCallback = messageCallback;
         this.labels = new ArrayList<>();
+        // Igual que createScaledBitmap(..., filter=false): vecino más cercano
+        scalePaint.setFilterBitmap(false);
+        // Sobrescribe el cuadro anterior en vez de mezclarse con él si hay transparencias
+        scalePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
 
-        // Configurar el preprocesamiento: normalización y casteo
-        imageProcessor = new ImageProcessor.Builder()
-                .add(new NormalizeOp(INPUT_MEAN, INPUT_STANDARD_DEVIATION))
-                .add(new CastOp(INPUT_IMAGE_TYPE))
-                .build();
-
-        // Configuración del intérprete (usando CPU, 4 hilos)
+        // Configuración del intérprete (usando CPU)
         Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(4);
+        options.setNumThreads(this.numThreads);
 
         try {
             MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(context, modelPath);
@@ -108,6 +149,7 @@ public class YoloTFLiteHelper {
                 numChannel = outputShape[1];
                 numElements = outputShape[2];
             }
+            allocateBuffers();
         } catch (Exception e) {
             if (messageCallback != null) {
                 messageCallback.onMessage("Error al cargar el modelo: " + e.getMessage());
@@ -116,6 +158,93 @@ public class YoloTFLiteHelper {
         }
     }
 
+    /**
+     * Reserva los buffers de entrada y salida según la forma de los tensores del modelo.
+     */
+    private void allocateBuffers() {
+        if (tensorWidth == 0 || tensorHeight == 0 || numChannel == 0 || numElements == 0) {
+            return;
+        }
+        if (interpreter.getInputTensor(0).dataType() != INPUT_IMAGE_TYPE) {
+            throw new IllegalStateException("Se esperaba entrada FLOAT32, el modelo usa " +
+                    interpreter.getInputTensor(0).dataType());
+        }
+        scaledBitmap = Bitmap.createBitmap(tensorWidth, tensorHeight, Bitmap.Config.ARGB_8888);
+        scaledCanvas = new Canvas(scaledBitmap);
+        scaledRect.set(0, 0, tensorWidth, tensorHeight);
+        pixels = new int[tensorWidth * tensorHeight];
+
+        inputBuffer = ByteBuffer.allocateDirect(tensorWidth * tensorHeight * 3 * 4).order(ByteOrder.nativeOrder());
+        inputFloats = inputBuffer.asFloatBuffer();
+        outputBuffer = ByteBuffer.allocateDirect(numChannel * numElements * 4).order(ByteOrder.nativeOrder());
+        outputFloats = outputBuffer.asFloatBuffer();
+        outputDecoder = new YoloOutputDecoder(numChannel, numElements, CONFIDENCE_THRESHOLD, IOU_THRESHOLD);
+        outputDecoder.setExecutor(decodeExecutor, decodeThreads);
+
+        interpreterInputs[0] = inputBuffer;
+        interpreterOutputs.put(0, outputBuffer);
+    }
+
+    /**
+     * Escala el cuadro al tamaño del tensor y escribe los píxeles normalizados (RGB, HWC) en el
+     * buffer de entrada, en una sola pasada.
+     */
+    private void preprocess(Bitmap frame) {
+        Bitmap source = frame;
+        if (frame.getWidth() != tensorWidth || frame.getHeight() != tensorHeight
+                || frame.getConfig() != Bitmap.Config.ARGB_8888) {
+            scaledCanvas.drawBitmap(frame, null, scaledRect, scalePaint);
+            source = scaledBitmap;
+        }
+        source.getPixels(pixels, 0, tensorWidth, 0, 0, tensorWidth, tensorHeight);
+
+        final float scale = 1f / INPUT_STANDARD_DEVIATION;
+        final float offset = -INPUT_MEAN * scale;
+        FloatBuffer in = inputFloats;
+        int index = 0;
+        for (int pixel : pixels) {
+            in.put(index++, ((pixel >> 16) & 0xFF) * scale + offset);
+            in.put(index++, ((pixel >> 8) & 0xFF) * scale + offset);
+            in.put(index++, (pixel & 0xFF) * scale + offset);
+        }
+    }
+
+    /**
+     * Ejecuta el intérprete sobre el buffer de entrada y devuelve una vista de la salida
+     * ({@code [numChannel][numElements]} aplanado) sin copiarla.
+     */
+    private FloatBuffer infer() {
+        inputBuffer.rewind();
+        outputBuffer.rewind();
+        interpreter.runForMultipleInputsOutputs(interpreterInputs, interpreterOutputs);
+        return outputFloats;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Lado mayor del tensor de entrada; 0 si el modelo no se pudo cargar.
+     */
+    public int getInputSize() {
+        return Math.max(tensorWidth, tensorHeight);
+    }
+
+    /**
+     * Hash del modelo (y del archivo de etiquetas, si hay) más los umbrales de confianza y NMS.
+     * Se calcula una vez.
+     */
+    public synchronized String getModelFingerprint() throws IOException {
+        if (modelFingerprint == null) {
+            String hash = labelPath != null
+                    ? ModelAssets.sha256(context, modelPath, labelPath)
+                    : ModelAssets.sha256(context, modelPath);
+            modelFingerprint = "yolo|" + hash + "|conf=" + CONFIDENCE_THRESHOLD + "|iou=" + IOU_THRESHOLD;
+        }
+        return modelFingerprint;
+    }
+
     /**
      * Reinicia el intérprete.
      */
@@ -124,7 +253,7 @@ public class YoloTFLiteHelper {
             interpreter.close();
         }
         Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(4);
+        options.setNumThreads(numThreads);
         try {
             MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(context, modelPath);
             interpreter = new Interpreter(modelBuffer, options);
@@ -136,12 +265,36 @@ public class YoloTFLiteHelper {
         }
     }
 
+    /**
+     * Ejecuta inferencias completas sobre la imagen de muestra, descartando el resultado,
+     * para que el intérprete reserve sus tensores antes de la primera medición.
+     */
+    @Override
+    public void warmUp(Bitmap sample, int iterations) {
+        if (interpreter == null) {
+            return;
+        }
+        for (int i = 0; i < iterations; i++) {
+            runInference(sample, sample.getWidth(), sample.getHeight());
+        }
+    }
+
     /**
      * Libera recursos cerrando el intérprete.
      */
+    @Override
     public void close() {
         if (interpreter != null) {
             interpreter.close();
+            interpreter = null;
+        }
+        if (scaledBitmap != null) {
+            scaledBitmap.recycle();
+            scaledBitmap = null;
+        }
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdown();
+            decodeExecutor = null;
         }
     }
 
@@ -155,23 +308,17 @@ public class YoloTFLiteHelper {
 
         // Preprocesamiento
         long startPreprocess = SystemClock.uptimeMillis();
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(frame, tensorWidth, tensorHeight, false);
-        TensorImage tensorImage = new TensorImage(INPUT_IMAGE_TYPE);
-        tensorImage.load(resizedBitmap);
-        TensorImage processedImage = imageProcessor.process(tensorImage);
-        java.nio.ByteBuffer imageBuffer = processedImage.getBuffer();
+        preprocess(frame);
         long preProcessTime = SystemClock.uptimeMillis() - startPreprocess;
 
         // Inferencia
         long startInference = SystemClock.uptimeMillis();
-        int[] outShape = new int[]{1, numChannel, numElements};
-        TensorBuffer outputBuffer = TensorBuffer.createFixedSize(outShape, OUTPUT_IMAGE_TYPE);
-        interpreter.run(imageBuffer, outputBuffer.getBuffer());
+        FloatBuffer output = infer();
         long inferenceTime = SystemClock.uptimeMillis() - startInference;
 
         // Postprocesamiento
         long startPostprocess = SystemClock.uptimeMillis();
-        List<BoundingBox> bestBoxes = bestBox(outputBuffer.getFloatArray());
+        List<BoundingBox> bestBoxes = bestBox(output);
         long postProcessTime = SystemClock.uptimeMillis() - startPostprocess;
 
         long totalTime = preProcessTime + inferenceTime + postProcessTime;
@@ -198,21 +345,15 @@ public class YoloTFLiteHelper {
      */
     public List<YoloDetection> runInference(Bitmap frame, int originalWidth, int originalHeight) {
         long startPreprocess = SystemClock.uptimeMillis();
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(frame, tensorWidth, tensorHeight, false);
-        TensorImage tensorImage = new TensorImage(INPUT_IMAGE_TYPE);
-        tensorImage.load(resizedBitmap);
-        TensorImage processedImage = imageProcessor.process(tensorImage);
-        java.nio.ByteBuffer imageBuffer = processedImage.getBuffer();
+        preprocess(frame);
         long preProcessTime = SystemClock.uptimeMillis() - startPreprocess;
 
         long startInference = SystemClock.uptimeMillis();
-        int[] outShape = new int[]{1, numChannel, numElements};
-        TensorBuffer outputBuffer = TensorBuffer.createFixedSize(outShape, OUTPUT_IMAGE_TYPE);
-        interpreter.run(imageBuffer, outputBuffer.getBuffer());
+        FloatBuffer output = infer();
         long inferenceTime = SystemClock.uptimeMillis() - startInference;
 
         long startPostprocess = SystemClock.uptimeMillis();
-        List<BoundingBox> boxes = bestBox(outputBuffer.getFloatArray());
+        List<BoundingBox> boxes = bestBox(output);
         long postProcessTime = SystemClock.uptimeMillis() - startPostprocess;
 
         long totalTime = preProcessTime + inferenceTime + postProcessTime;
@@ -248,19 +389,13 @@ public class YoloTFLiteHelper {
         long startTime = SystemClock.uptimeMillis();
 
         // Preprocesamiento
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(frame, tensorWidth, tensorHeight, false);
-        TensorImage tensorImage = new TensorImage(INPUT_IMAGE_TYPE);
-        tensorImage.load(resizedBitmap);
-        TensorImage processedImage = imageProcessor.process(tensorImage);
-        java.nio.ByteBuffer imageBuffer = processedImage.getBuffer();
+        preprocess(frame);
 
         // Inferencia
-        int[] outShape = new int[]{1, numChannel, numElements};
-        TensorBuffer outputBuffer = TensorBuffer.createFixedSize(outShape, OUTPUT_IMAGE_TYPE);
-        interpreter.run(imageBuffer, outputBuffer.getBuffer());
+        FloatBuffer output = infer();
 
         // Postprocesamiento
-        List<BoundingBox> boxes = bestBox(outputBuffer.getFloatArray());
+        List<BoundingBox> boxes = bestBox(output);
         long totalTime = SystemClock.uptimeMillis() - startTime;
 
         List<YoloDetection> detections = new ArrayList<>();
@@ -284,86 +419,39 @@ public class YoloTFLiteHelper {
     }
 
     /**
-     * Procesa el arreglo de salida para determinar las bounding boxes.
+     * Decodifica la salida del intérprete y aplica NMS; devuelve null si no hay detecciones.
      */
-    private List<BoundingBox> bestBox(float[] array) {
-        List<BoundingBox> boundingBoxes = new ArrayList<>();
-        for (int c = 0; c < numElements; c++) {
-            float maxConf = CONFIDENCE_THRESHOLD;
-            int maxIdx = -1;
-            int j = 4;
-            int arrayIdx = c + numElements * j;
-            while (j < numChannel) {
-                if (array[arrayIdx] > maxConf) {
-                    maxConf = array[arrayIdx];
-                    maxIdx = j - 4;
-                }
-                j++;
-                arrayIdx += numElements;
-            }
-            if (maxConf > CONFIDENCE_THRESHOLD) {
-                String clsName = (maxIdx >= 0 && maxIdx < labels.size()) ? labels.get(maxIdx) : "Unknown";
-                float cx = array[c];
-                float cy = array[c + numElements];
-                float w = array[c + numElements * 2];
-                float h = array[c + numElements * 3];
-                float x1 = cx - (w / 2f);
-                float y1 = cy - (h / 2f);
-                float x2 = cx + (w / 2f);
-                float y2 = cy + (h / 2f);
-                if (x1 < 0f || x1 > 1f) continue;
-                if (y1 < 0f || y1 > 1f) continue;
-                if (x2 < 0f || x2 > 1f) continue;
-                if (y2 < 0f || y2 > 1f) continue;
-                boundingBoxes.add(new BoundingBox(x1, y1, x2, y2, cx, cy, w, h, maxConf, maxIdx, clsName));
-            }
-        }
-        if (boundingBoxes.isEmpty()) {
+    private List<BoundingBox> bestBox(FloatBuffer output) {
+        List<BoundingBox> boxes;
+        try {
+            boxes = outputDecoder.decode(output, labels);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return null;
         }
-        return applyNMS(boundingBoxes);
+        return boxes.isEmpty() ? null : boxes;
     }
 
     /**
-     * Aplica el algoritmo Non-Maximum Suppression (NMS) para filtrar cajas superpuestas.
+     * Reparte el barrido de puntajes de la salida entre {@code threads} hilos; con 1 (por
+     * defecto) se decodifica en el hilo que llama a la inferencia.
      */
-    private List<BoundingBox> applyNMS(List<BoundingBox> boxes) {
-        List<BoundingBox> sortedBoxes = new ArrayList<>(boxes);
-        Collections.sort(sortedBoxes, new Comparator<BoundingBox>() {
-            @Override
-            public int compare(BoundingBox b1, BoundingBox b2) {
-                return Float.compare(b2.getCnf(), b1.getCnf());
-            }
-        });
-        List<BoundingBox> selectedBoxes = new ArrayList<>();
-        while (!sortedBoxes.isEmpty()) {
-            BoundingBox first = sortedBoxes.get(0);
-            selectedBoxes.add(first);
-            sortedBoxes.remove(0);
-            Iterator<BoundingBox> iterator = sortedBoxes.iterator();
-            while (iterator.hasNext()) {
-                BoundingBox nextBox = iterator.next();
-                float iou = calculateIoU(first, nextBox);
-                if (iou >= IOU_THRESHOLD) {
-                    iterator.remove();
-                }
-            }
+    public void setDecodeParallelism(int threads) {
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdown();
+            decodeExecutor = null;
         }
-        return selectedBoxes;
-    }
-
-    /**
-     * Calcula la Intersección sobre Unión (IoU) entre dos cajas.
-     */
-    private float calculateIoU(BoundingBox box1, BoundingBox box2) {
-        float x1 = Math.max(box1.getX1(), box2.getX1());
-        float y1 = Math.max(box1.getY1(), box2.getY1());
-        float x2 = Math.min(box1.getX2(), box2.getX2());
-        float y2 = Math.min(box1.getY2(), box2.getY2());
-        float intersectionArea = Math.max(0f, x2 - x1) * Math.max(0f, y2 - y1);
-        float box1Area = box1.getW() * box1.getH();
-        float box2Area = box2.getW() * box2.getH();
-        return intersectionArea / (box1Area + box2Area - intersectionArea);
+        if (threads > 1) {
+            decodeExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "yolo-decode");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (outputDecoder != null) {
+            outputDecoder.setExecutor(decodeExecutor, threads);
+        }
+        decodeThreads = Math.max(1, threads);
     }
 
     /**
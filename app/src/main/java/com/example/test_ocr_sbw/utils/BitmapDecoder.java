@@ -0,0 +1,100 @@
+package com.example.test_ocr_sbw.utils;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodifica imágenes directamente al tamaño que necesitan los motores.
+ * <p>
+ * Primero lee sólo las dimensiones ({@code inJustDecodeBounds}) y luego decodifica con el mayor
+ * {@code inSampleSize} (potencia de 2) que deja el lado mayor en al menos {@code targetLongSide}
+ * y el menor en al menos {@code minShortSide}. Una foto de 4000x3000 para un detector de 960
+ * se decodifica a 1000x750: 16 veces menos píxeles que decodificar, copiar y reescalar. El
+ * resultado se escribe sobre un bitmap del {@link BitmapPool} cuando hay uno que alcance.
+ */
+public final class BitmapDecoder {
+    private static final String TAG = BitmapDecoder.class.getSimpleName();
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodifica la imagen en ARGB_8888 mutable, o devuelve null si no es una imagen válida.
+     *
+     * @param targetLongSide lado mayor que necesitan los motores; 0 para la resolución completa.
+     * @param minShortSide   lado menor mínimo, para no submuestrear de más imágenes muy alargadas.
+     * @param pool           bitmaps reutilizables; puede ser null.
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri uri, int targetLongSide, int minShortSide,
+                                BitmapPool pool) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) {
+                return null;
+            }
+            BitmapFactory.decodeStream(is, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, targetLongSide, minShortSide);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        if (pool != null) {
+            // Redondeo hacia arriba: según el formato, el tamaño submuestreado se redondea distinto
+            int width = (bounds.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (bounds.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = pool.get(width, height);
+        }
+        try {
+            Bitmap bitmap = decodeStream(resolver, uri, options);
+            if (bitmap == null && options.inBitmap != null) {
+                pool.put(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // El decodificador rechazó el inBitmap (p. ej. un formato que no admite reutilización);
+            // sin inBitmap el error es de la imagen y no hay nada que reintentar
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            Log.w(TAG, "inBitmap rechazado para " + uri, e);
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            return decodeStream(resolver, uri, options);
+        }
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options)
+            throws IOException {
+        try (InputStream is = resolver.openInputStream(uri)) {
+            return is != null ? BitmapFactory.decodeStream(is, null, options) : null;
+        }
+    }
+
+    /**
+     * Mayor potencia de 2 que, al dividir las dimensiones, deja el lado mayor en al menos
+     * {@code targetLongSide} y el menor en al menos {@code minShortSide}.
+     */
+    public static int sampleSize(int width, int height, int targetLongSide, int minShortSide) {
+        if (targetLongSide <= 0) {
+            return 1;
+        }
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        int sample = 1;
+        while (longSide / (sample * 2) >= targetLongSide && shortSide / (sample * 2) >= minShortSide) {
+            sample *= 2;
+        }
+        return sample;
+    }
+}
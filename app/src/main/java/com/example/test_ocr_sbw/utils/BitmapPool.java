@@ -0,0 +1,92 @@
+package com.example.test_ocr_sbw.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bitmaps mutables ARGB_8888 ya liberados, para decodificar la imagen siguiente sobre uno de
+ * ellos ({@code BitmapFactory.Options.inBitmap}) en vez de reservar memoria nueva.
+ * <p>
+ * El pool guarda como máximo {@code maxBytes}; lo que no cabe se recicla, empezando por lo que
+ * lleva más tiempo sin usarse. Desde API 19 cualquier bitmap con al menos los bytes necesarios
+ * sirve como {@code inBitmap}: el decodificador lo reconfigura al tamaño de la imagen.
+ */
+public class BitmapPool {
+
+    private final long maxBytes;
+    // Del más antiguo al más reciente
+    private final List<Bitmap> free = new ArrayList<>();
+    private long bytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Saca del pool el bitmap más chico que alcance para {@code width x height} en ARGB_8888, o
+     * devuelve null si no hay ninguno.
+     */
+    public synchronized Bitmap get(int width, int height) {
+        long needed = (long) width * height * 4;
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            int size = free.get(i).getAllocationByteCount();
+            if (size >= needed && (best < 0 || size < free.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        Bitmap bitmap = free.remove(best);
+        bytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Devuelve un bitmap que ya nadie usa. Los inmutables o de otra configuración no sirven como
+     * {@code inBitmap} y se reciclan directamente.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888 || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        while (bytes + size > maxBytes && !free.isEmpty()) {
+            Bitmap eldest = free.remove(0);
+            bytes -= eldest.getAllocationByteCount();
+            eldest.recycle();
+        }
+        free.add(bitmap);
+        bytes += size;
+    }
+
+    /**
+     * Recicla todo lo que queda en el pool.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : free) {
+            bitmap.recycle();
+        }
+        free.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
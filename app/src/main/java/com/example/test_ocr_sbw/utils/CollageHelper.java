@@ -6,6 +6,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 
 import java.util.List;
 
@@ -47,4 +48,30 @@ public class CollageHelper {
         }
         return collage;
     }
+
+    /**
+     * Dibuja las imágenes en un lienzo negro según {@code layout}, cada una en su rectángulo
+     * ({@link MosaicLayout#getDrawRect}). Si {@code reuse} tiene el tamaño del lienzo se dibuja
+     * sobre él en vez de crear uno nuevo.
+     */
+    public static Bitmap createMosaic(List<Bitmap> images, MosaicLayout layout, Bitmap reuse) {
+        Bitmap mosaic = reuse;
+        if (mosaic == null || mosaic.isRecycled() || !mosaic.isMutable()
+                || mosaic.getWidth() != layout.getCanvasWidth() || mosaic.getHeight() != layout.getCanvasHeight()) {
+            mosaic = Bitmap.createBitmap(layout.getCanvasWidth(), layout.getCanvasHeight(), Bitmap.Config.ARGB_8888);
+        }
+        Canvas canvas = new Canvas(mosaic);
+        canvas.drawColor(Color.BLACK);
+
+        Paint paint = new Paint();
+        paint.setFilterBitmap(true);
+        Rect dst = new Rect();
+        for (int i = 0; i < images.size() && i < layout.getImageCount(); i++) {
+            int[] rect = layout.getDrawRect(i);
+            dst.set(rect[0], rect[1], rect[2], rect[3]);
+            // drawBitmap escala al vuelo, sin la copia intermedia de createScaledBitmap
+            canvas.drawBitmap(images.get(i), null, dst, paint);
+        }
+        return mosaic;
+    }
 }
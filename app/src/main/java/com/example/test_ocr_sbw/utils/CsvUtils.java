@@ -5,6 +5,7 @@ import android.content.Context;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class CsvUtils {
 
@@ -17,13 +18,21 @@ public class CsvUtils {
      * @return La ruta absoluta del archivo guardado o null si ocurrió un error.
      */
     public static String saveCsv(Context context, String csvData, String fileName) {
-        File csvFile = new File(context.getExternalFilesDir(null), fileName);
+        File csvFile = getOutputFile(context, fileName);
         try (FileOutputStream fos = new FileOutputStream(csvFile)) {
-            fos.write(csvData.getBytes());
+            fos.write(csvData.getBytes(StandardCharsets.UTF_8));
             return csvFile.getAbsolutePath();
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Archivo de salida en el directorio externo de la aplicación, donde se guardan los CSV.
+     * Para reportes grandes conviene escribir con {@link CsvResultWriter} en vez de {@link #saveCsv}.
+     */
+    public static File getOutputFile(Context context, String fileName) {
+        return new File(context.getExternalFilesDir(null), fileName);
+    }
 }
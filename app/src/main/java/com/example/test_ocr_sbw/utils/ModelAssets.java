@@ -0,0 +1,219 @@
+package com.example.test_ocr_sbw.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Acceso a los modelos empaquetados en assets sin copiarlos en cada inicio.
+ * <p>
+ * Si el asset está sin comprimir dentro del APK ({@code noCompress} en app/build.gradle) se
+ * mapea directamente desde el descriptor del APK con {@link #map}. Si no, {@link #extract} lo
+ * copia una sola vez a {@code getFilesDir()/models}, con el nombre del SHA-256 de su
+ * contenido, y las siguientes llamadas reutilizan ese archivo mientras el APK no cambie.
+ */
+public final class ModelAssets {
+    private static final String TAG = ModelAssets.class.getSimpleName();
+    private static final String CACHE_DIR = "models";
+    private static final String STAMP_SUFFIX = ".stamp";
+
+    private ModelAssets() {
+    }
+
+    /**
+     * Mapea el asset en memoria de sólo lectura, leyendo directamente del APK.
+     *
+     * @return el buffer mapeado, o null si el asset está comprimido y no se puede mapear.
+     * @throws IOException si el asset no existe o no se puede leer.
+     */
+    public static ByteBuffer map(Context context, String assetPath) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = context.getAssets().openFd(assetPath);
+        } catch (FileNotFoundException e) {
+            // openFd falla con los assets comprimidos; se distingue de un asset inexistente
+            context.getAssets().open(assetPath).close();
+            return null;
+        }
+        try (FileInputStream fis = afd.createInputStream()) {
+            return fis.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getDeclaredLength());
+        } finally {
+            afd.close();
+        }
+    }
+
+    /**
+     * Mapea el asset desde el APK o, si está comprimido, desde su copia extraída con
+     * {@link #extract}.
+     */
+    public static ByteBuffer mapOrExtract(Context context, String assetPath) throws IOException {
+        ByteBuffer buffer = map(context, assetPath);
+        if (buffer != null) {
+            return buffer;
+        }
+        Log.w(TAG, assetPath + " está comprimido en el APK, se usa la copia extraída");
+        return mapFile(extract(context, assetPath));
+    }
+
+    /**
+     * Devuelve una copia del asset en disco, extrayéndola sólo si no existe una para el APK
+     * instalado. El archivo se llama {@code <sha256>-<ruta>} y junto a él se guarda
+     * {@code <ruta>.stamp} con la fecha de instalación del APK y el hash, de modo que un inicio
+     * normal no vuelve a leer el asset.
+     */
+    public static File extract(Context context, String assetPath) throws IOException {
+        File dir = new File(context.getFilesDir(), CACHE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear " + dir);
+        }
+        // La ruta completa forma parte del nombre: distintos modelos comparten det_db.nb, cls.nb...
+        String name = assetPath.replace('/', '_');
+        String version = Long.toString(installTime(context));
+        File stamp = new File(dir, name + STAMP_SUFFIX);
+
+        String[] cached = readStamp(stamp);
+        if (cached != null && cached[0].equals(version)) {
+            File file = new File(dir, cached[1] + "-" + name);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+
+        File tmp = new File(dir, name + ".tmp");
+        String hash;
+        try (InputStream is = context.getAssets().open(assetPath);
+             DigestInputStream dis = new DigestInputStream(is, sha256());
+             ReadableByteChannel src = Channels.newChannel(dis);
+             FileOutputStream fos = new FileOutputStream(tmp);
+             FileChannel dst = fos.getChannel()) {
+            long position = 0;
+            long read;
+            while ((read = dst.transferFrom(src, position, Long.MAX_VALUE)) > 0) {
+                position += read;
+            }
+            fos.getFD().sync();
+            hash = toHex(dis.getMessageDigest().digest());
+        }
+
+        File file = new File(dir, hash + "-" + name);
+        if (file.isFile() && file.length() == tmp.length()) {
+            // Mismo contenido que una extracción anterior (p. ej. el APK se reinstaló sin cambios)
+            tmp.delete();
+        } else if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp + " a " + file);
+        }
+        deleteStale(dir, name, file);
+        writeStamp(stamp, version, hash);
+        Log.i(TAG, "Extraído " + assetPath + " a " + file);
+        return file;
+    }
+
+    /**
+     * SHA-256 (hex) del contenido de uno o varios modelos, en orden, para identificar la versión
+     * exacta que se está midiendo. Las rutas absolutas se leen del disco y el resto desde assets.
+     */
+    public static String sha256(Context context, String... paths) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        for (String path : paths) {
+            try (InputStream is = path.startsWith("/") ? new FileInputStream(path) : context.getAssets().open(path)) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static ByteBuffer mapFile(File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel channel = fis.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static long installTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static String[] readStamp(File stamp) {
+        if (!stamp.isFile()) {
+            return null;
+        }
+        try (FileInputStream fis = new FileInputStream(stamp)) {
+            byte[] bytes = new byte[(int) stamp.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = fis.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            String[] parts = new String(bytes, 0, offset, StandardCharsets.UTF_8).trim().split(":");
+            return parts.length == 2 ? parts : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeStamp(File stamp, String version, String hash) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(stamp)) {
+            fos.write((version + ":" + hash).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Borra las extracciones anteriores del mismo asset para no acumular modelos obsoletos.
+     */
+    private static void deleteStale(File dir, String name, File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        String suffix = "-" + name;
+        for (File f : files) {
+            if (f.getName().endsWith(suffix) && !f.equals(keep)) {
+                f.delete();
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
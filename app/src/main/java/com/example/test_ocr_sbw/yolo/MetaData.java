@@ -11,8 +11,6 @@ import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class MetaData {
 
@@ -43,32 +41,7 @@ public final class MetaData {
                 metadataBuilder.append(line).append("\n");
             }
             reader.close();
-            String metadata = metadataBuilder.toString();
-
-            // Utiliza expresión regular para extraer la parte con los nombres
-            Pattern pattern = Pattern.compile("'names': \\{(.*?)\\}", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(metadata);
-            if (!matcher.find()) {
-                return Collections.emptyList();
-            }
-            String namesContent = matcher.group(1);
-            if (namesContent == null) {
-                return Collections.emptyList();
-            }
-
-            // Expresión regular para extraer los nombres (se admiten cadenas entre comillas dobles o simples)
-            Pattern pattern2 = Pattern.compile("\"([^\"]*)\"|'([^']*)'");
-            Matcher matcher2 = pattern2.matcher(namesContent);
-            List<String> list = new ArrayList<>();
-            while (matcher2.find()) {
-                // Si el grupo 1 está vacío se usa el grupo 2
-                String value = matcher2.group(1);
-                if (value == null || value.isEmpty()) {
-                    value = matcher2.group(2);
-                }
-                list.add(value);
-            }
-            return list;
+            return MetaDataParser.parseNames(metadataBuilder.toString());
         } catch (Exception e) {
             return Collections.emptyList();
         }
@@ -82,35 +55,11 @@ public final class MetaData {
      * @return Lista de labels leídos o una lista vacía en caso de error.
      */
     public static List<String> extractNamesFromLabelFile(Context context, String labelPath) {
-        List<String> labels = new ArrayList<>();
-        BufferedReader reader = null;
-        InputStream inputStream = null;
-        try {
-            inputStream = context.getAssets().open(labelPath);
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = reader.readLine()) != null && !line.isEmpty()) {
-                labels.add(line);
-            }
+        try (InputStream inputStream = context.getAssets().open(labelPath)) {
+            return MetaDataParser.readLabels(new InputStreamReader(inputStream));
         } catch (IOException e) {
             return Collections.emptyList();
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // Se ignora
-                }
-            }
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    // Se ignora
-                }
-            }
         }
-        return labels;
     }
 
     /**
@@ -0,0 +1,180 @@
+//
+// Host test for rgba_to_nchw: compares the fused kernel against a plain
+// per-pixel bilinear resize and normalization computed in double.
+//
+// Build and run from this directory:
+//   cmake -B build . && cmake --build build && ./build/bitmap_tensor_test
+// or directly:
+//   g++ -std=c++11 -O2 -I../../main/cpp bitmap_tensor_test.cpp
+//       ../../main/cpp/bitmap_tensor.cpp -o bitmap_tensor_test
+//
+
+#include "bitmap_tensor.h"
+
+#include <algorithm>
+#include <cmath>
+#include <cstdint>
+#include <cstdio>
+#include <random>
+#include <vector>
+
+namespace {
+
+const float kMean[3] = {0.485f, 0.456f, 0.406f};
+const float kScale[3] = {1 / 0.229f, 1 / 0.224f, 1 / 0.225f};
+const double kTolerance = 1e-5;
+
+// RGBA byte read for each output plane (B, G, R)
+const int kSrcChannel[3] = {2, 1, 0};
+
+struct Image {
+  int w;
+  int h;
+  int stride;
+  std::vector<uint8_t> pixels;
+};
+
+Image random_image(int w, int h, int padding, std::mt19937 &rng) {
+  Image image{w, h, w * 4 + padding, {}};
+  image.pixels.resize(size_t(image.stride) * h);
+  std::uniform_int_distribution<int> byte(0, 255);
+  for (auto &p : image.pixels) {
+    p = uint8_t(byte(rng));
+  }
+  return image;
+}
+
+// Source position and weight of an output coordinate, as cv::resize
+// INTER_LINEAR computes them (pixel centers aligned, clamped at the borders).
+// Like cv::resize the position is rounded to float, so the check covers the
+// resize and normalization arithmetic, not the precision of the weights
+void source_coord(int d, double scale, int src_size, int *s0, int *s1,
+                  double *beta) {
+  float f = float((d + 0.5) * scale - 0.5);
+  int s = int(std::floor(f));
+  f -= s;
+  if (s < 0) {
+    s = 0;
+    f = 0;
+  }
+  if (s >= src_size - 1) {
+    s = src_size - 1;
+    f = 0;
+  }
+  *s0 = s;
+  *s1 = std::min(s + 1, src_size - 1);
+  *beta = f;
+}
+
+std::vector<double> reference(const Image &src, int dst_w, int dst_h) {
+  std::vector<double> out(size_t(3) * dst_w * dst_h);
+  const double scale_x = double(src.w) / dst_w;
+  const double scale_y = double(src.h) / dst_h;
+  for (int dy = 0; dy < dst_h; dy++) {
+    int y0, y1;
+    double by;
+    source_coord(dy, scale_y, src.h, &y0, &y1, &by);
+    for (int dx = 0; dx < dst_w; dx++) {
+      int x0, x1;
+      double bx;
+      source_coord(dx, scale_x, src.w, &x0, &x1, &bx);
+      for (int c = 0; c < 3; c++) {
+        auto at = [&](int x, int y) {
+          return double(src.pixels[size_t(y) * src.stride + x * 4 +
+                                   kSrcChannel[c]]);
+        };
+        double top = at(x0, y0) * (1 - bx) + at(x1, y0) * bx;
+        double bottom = at(x0, y1) * (1 - bx) + at(x1, y1) * bx;
+        double v = top * (1 - by) + bottom * by;
+        out[(size_t(c) * dst_h + dy) * dst_w + dx] =
+            (v / 255 - kMean[c]) * kScale[c];
+      }
+    }
+  }
+  return out;
+}
+
+int failures = 0;
+
+void check(const char *name, const Image &src, int dst_w, int dst_h,
+           ppredictor::TensorScratch &scratch) {
+  std::vector<float> out(size_t(3) * dst_w * dst_h);
+  ppredictor::rgba_to_nchw(src.pixels.data(), src.w, src.h, src.stride, dst_w,
+                           dst_h, kMean, kScale, out.data(), scratch);
+  std::vector<double> expected = reference(src, dst_w, dst_h);
+  double max_error = 0;
+  for (size_t i = 0; i < out.size(); i++) {
+    max_error = std::max(max_error, std::fabs(out[i] - expected[i]));
+  }
+  bool ok = max_error <= kTolerance;
+  if (!ok) {
+    failures++;
+  }
+  std::printf("%-28s %3dx%-3d -> %3dx%-3d max error %.2e %s\n", name, src.w,
+              src.h, dst_w, dst_h, max_error, ok ? "ok" : "FAIL");
+}
+
+// An exact 2x downscale samples the middle of every 2x2 block, so the result
+// must also be the plain average of the block
+void check_box_average(const Image &src, ppredictor::TensorScratch &scratch) {
+  const int dst_w = src.w / 2;
+  const int dst_h = src.h / 2;
+  std::vector<float> out(size_t(3) * dst_w * dst_h);
+  ppredictor::rgba_to_nchw(src.pixels.data(), src.w, src.h, src.stride, dst_w,
+                           dst_h, kMean, kScale, out.data(), scratch);
+  double max_error = 0;
+  for (int c = 0; c < 3; c++) {
+    for (int dy = 0; dy < dst_h; dy++) {
+      for (int dx = 0; dx < dst_w; dx++) {
+        double sum = 0;
+        for (int y = 2 * dy; y < 2 * dy + 2; y++) {
+          for (int x = 2 * dx; x < 2 * dx + 2; x++) {
+            sum += src.pixels[size_t(y) * src.stride + x * 4 + kSrcChannel[c]];
+          }
+        }
+        double v = (sum / 4 / 255 - kMean[c]) * kScale[c];
+        max_error = std::max(
+            max_error,
+            std::fabs(out[(size_t(c) * dst_h + dy) * dst_w + dx] - v));
+      }
+    }
+  }
+  bool ok = max_error <= kTolerance;
+  if (!ok) {
+    failures++;
+  }
+  std::printf("%-28s %3dx%-3d -> %3dx%-3d max error %.2e %s\n",
+              "2x downscale = 2x2 average", src.w, src.h, dst_w, dst_h,
+              max_error, ok ? "ok" : "FAIL");
+}
+
+} // namespace
+
+int main() {
+  std::mt19937 rng(42);
+  ppredictor::TensorScratch scratch;
+
+  Image even = random_image(128, 96, 0, rng);
+  check("exact 2x downscale", even, 64, 48, scratch);
+  check_box_average(even, scratch);
+  check("upscale", random_image(37, 23, 0, rng), 64, 48, scratch);
+  check("fractional downscale", random_image(97, 61, 0, rng), 40, 25, scratch);
+  check("padded stride", random_image(50, 30, 12, rng), 33, 21, scratch);
+  check("same size", random_image(31, 17, 0, rng), 31, 17, scratch);
+  check("single source row", random_image(40, 1, 0, rng), 20, 5, scratch);
+  // the scratch keeps the column tables and cached rows of the last image:
+  // same-size images with other content must not reuse them
+  Image first = random_image(90, 70, 0, rng);
+  Image second = random_image(90, 70, 0, rng);
+  check("scratch reuse (1st image)", first, 45, 35, scratch);
+  check("scratch reuse (2nd image)", second, 45, 35, scratch);
+  check("scratch after resize", random_image(64, 64, 0, rng), 45, 35,
+        scratch);
+
+  if (failures > 0) {
+    std::printf("%d check(s) failed\n", failures);
+    return 1;
+  }
+  std::printf("all checks passed\n");
+  return 0;
+}
@@ -0,0 +1,322 @@
+//
+// Host test for CtcDecoder: the grammar search is checked against a brute
+// force enumeration of every CTC path on small inputs.
+//
+// Build and run from this directory:
+//   cmake -B build . && cmake --build build && ./build/ctc_decoder_test
+// or directly:
+//   g++ -std=c++11 -O2 -I../../main/cpp ctc_decoder_test.cpp
+//       ../../main/cpp/ctc_decoder.cpp -o ctc_decoder_test
+//
+
+#include "ctc_decoder.h"
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+#include <map>
+#include <random>
+#include <string>
+#include <vector>
+
+namespace {
+
+using ppredictor::CtcDecoder;
+
+const int kClassNum = 10;
+// Letters and digits of the subset. Classes 1, 4, 8 and 9 are outside it, and
+// 12 is beyond the model output, so it must be ignored
+const std::vector<int> kLetters = {3, 5, 7};
+const std::vector<int> kDigits = {2, 6};
+const std::vector<int> kOutside = {1, 4, 8, 9};
+const int kBeyondOutput = 12;
+const std::vector<std::string> kPatterns = {"LLD", "LDD"};
+
+int failures = 0;
+
+void expect(bool ok, const char *what, int trial) {
+  if (!ok) {
+    failures++;
+    std::printf("FAIL %s (trial %d)\n", what, trial);
+  }
+}
+
+std::string to_string(const std::vector<int> &word) {
+  std::string text;
+  for (int id : word) {
+    text += std::to_string(id) + " ";
+  }
+  return text;
+}
+
+void configure(CtcDecoder &decoder, bool grammar) {
+  std::vector<int> ids;
+  std::vector<int> kinds;
+  for (int id : kLetters) {
+    ids.push_back(id);
+    kinds.push_back(CtcDecoder::KIND_LETTER);
+  }
+  for (int id : kDigits) {
+    ids.push_back(id);
+    kinds.push_back(CtcDecoder::KIND_DIGIT);
+  }
+  ids.push_back(kBeyondOutput);
+  kinds.push_back(CtcDecoder::KIND_DIGIT);
+  decoder.set_classes(ids, kinds);
+  decoder.set_grammar(grammar ? kPatterns : std::vector<std::string>());
+}
+
+// Softmax rows; sharpness > 1 makes a few classes dominate, as a trained model
+std::vector<float> random_probs(int time_steps, float sharpness,
+                                std::mt19937 &rng) {
+  std::uniform_real_distribution<float> uniform(0.f, 1.f);
+  std::vector<float> probs(size_t(time_steps) * kClassNum);
+  for (int t = 0; t < time_steps; t++) {
+    float *row = probs.data() + t * kClassNum;
+    float sum = 0.f;
+    for (int c = 0; c < kClassNum; c++) {
+      row[c] = std::exp(sharpness * uniform(rng));
+      sum += row[c];
+    }
+    for (int c = 0; c < kClassNum; c++) {
+      row[c] /= sum;
+    }
+  }
+  return probs;
+}
+
+int kind_of(int id) {
+  if (std::find(kLetters.begin(), kLetters.end(), id) != kLetters.end()) {
+    return CtcDecoder::KIND_LETTER;
+  }
+  if (std::find(kDigits.begin(), kDigits.end(), id) != kDigits.end()) {
+    return CtcDecoder::KIND_DIGIT;
+  }
+  return -1;
+}
+
+bool matches_grammar(const std::vector<int> &word) {
+  for (const std::string &pattern : kPatterns) {
+    if (pattern.size() != word.size()) {
+      continue;
+    }
+    bool ok = true;
+    for (size_t i = 0; i < word.size(); i++) {
+      int kind = pattern[i] == 'L' ? CtcDecoder::KIND_LETTER
+                                   : CtcDecoder::KIND_DIGIT;
+      ok = ok && kind_of(word[i]) == kind;
+    }
+    if (ok) {
+      return true;
+    }
+  }
+  return false;
+}
+
+struct Path {
+  double log_prob = -1e300;
+  double score = 0; // mean probability of the frames that emit a character
+};
+
+/**
+ * Best path per collapsed word, over every frame sequence of the blank and
+ * the subset classes
+ */
+std::map<std::vector<int>, Path> enumerate(const std::vector<float> &probs,
+                                           int time_steps) {
+  std::vector<int> alphabet = {0};
+  alphabet.insert(alphabet.end(), kLetters.begin(), kLetters.end());
+  alphabet.insert(alphabet.end(), kDigits.begin(), kDigits.end());
+  const int size = int(alphabet.size());
+
+  std::map<std::vector<int>, Path> best;
+  std::vector<int> digits(time_steps, 0);
+  while (true) {
+    std::vector<int> word;
+    double log_prob = 0;
+    double emitted = 0;
+    int last = 0;
+    for (int t = 0; t < time_steps; t++) {
+      int id = alphabet[digits[t]];
+      float p = probs[t * kClassNum + id];
+      log_prob += std::log(double(p));
+      if (id > 0 && id != last) {
+        word.push_back(id);
+        emitted += p;
+      }
+      last = id;
+    }
+    Path &path = best[word];
+    if (log_prob > path.log_prob) {
+      path.log_prob = log_prob;
+      path.score = word.empty() ? 0 : emitted / word.size();
+    }
+
+    int t = 0;
+    while (t < time_steps && ++digits[t] == size) {
+      digits[t++] = 0;
+    }
+    if (t == time_steps) {
+      break;
+    }
+  }
+  return best;
+}
+
+/**
+ * Greedy decoding over the blank and the subset, the result expected when the
+ * grammar is off or no path fits
+ */
+std::vector<int> greedy(const std::vector<float> &probs, int time_steps) {
+  std::vector<int> word;
+  int last = 0;
+  for (int t = 0; t < time_steps; t++) {
+    const float *row = probs.data() + t * kClassNum;
+    int best = 0;
+    for (int id : kLetters) {
+      if (row[id] > row[best]) {
+        best = id;
+      }
+    }
+    for (int id : kDigits) {
+      if (row[id] > row[best]) {
+        best = id;
+      }
+    }
+    if (best > 0 && best != last) {
+      word.push_back(best);
+    }
+    last = best;
+  }
+  return word;
+}
+
+void check_against_brute_force(std::mt19937 &rng, int trials) {
+  CtcDecoder decoder;
+  configure(decoder, true);
+  int searched = 0;
+  for (int trial = 0; trial < trials; trial++) {
+    const int time_steps = 1 + trial % 6;
+    const float sharpness = trial % 2 == 0 ? 2.f : 6.f;
+    std::vector<float> probs = random_probs(time_steps, sharpness, rng);
+
+    std::vector<int> word;
+    float score = 0.f;
+    decoder.decode(probs.data(), time_steps, kClassNum, word, score);
+
+    std::map<std::vector<int>, Path> paths = enumerate(probs, time_steps);
+    const std::vector<int> *expected = nullptr;
+    for (const auto &entry : paths) {
+      if (matches_grammar(entry.first) &&
+          (expected == nullptr ||
+           entry.second.log_prob > paths[*expected].log_prob)) {
+        expected = &entry.first;
+      }
+    }
+
+    if (expected == nullptr) {
+      // No valid path (fewer frames than characters): greedy result
+      expect(word == greedy(probs, time_steps), "greedy fallback", trial);
+      continue;
+    }
+    if (!matches_grammar(greedy(probs, time_steps))) {
+      searched++;
+    }
+    if (word == *expected) {
+      expect(std::fabs(score - paths[word].score) < 1e-5, "score", trial);
+      continue;
+    }
+    // A different word is only acceptable if its path ties the best one
+    auto found = paths.find(word);
+    bool tie = found != paths.end() && matches_grammar(word) &&
+               found->second.log_prob >= paths[*expected].log_prob - 1e-4;
+    if (!tie) {
+      std::printf("  T=%d got [%s] expected [%s]\n", time_steps,
+                  to_string(word).c_str(), to_string(*expected).c_str());
+    }
+    expect(tie, "best grammar path", trial);
+  }
+  std::printf("brute force: %d trials, %d needed the grammar search\n", trials,
+              searched);
+}
+
+/**
+ * Frames spelling "7 6 2" (LDD) with a repeated 7 and blanks in between: the
+ * greedy result already fits and must come back as is, with its score
+ */
+void check_greedy_kept() {
+  const int frames[] = {7, 7, 0, 6, 0, 2};
+  const int time_steps = 6;
+  std::vector<float> probs(size_t(time_steps) * kClassNum, 0.02f);
+  for (int t = 0; t < time_steps; t++) {
+    probs[t * kClassNum + frames[t]] = 0.82f;
+  }
+  // A non-subset class beats everything on one frame; it must not matter
+  probs[3 * kClassNum + 8] = 0.9f;
+
+  CtcDecoder decoder;
+  configure(decoder, true);
+  std::vector<int> word = {42}; // results are appended
+  float score = 0.f;
+  decoder.decode(probs.data(), time_steps, kClassNum, word, score);
+  expect(word == std::vector<int>({42, 7, 6, 2}), "greedy kept", 0);
+  expect(std::fabs(score - 0.82f) < 1e-6, "greedy kept score", 0);
+}
+
+void check_subset_only(std::mt19937 &rng, int trials) {
+  CtcDecoder decoder;
+  configure(decoder, false);
+  for (int trial = 0; trial < trials; trial++) {
+    const int time_steps = 1 + trial % 12;
+    std::vector<float> probs = random_probs(time_steps, 4.f, rng);
+    // Outside classes get the highest probability on some frames
+    for (int t = 0; t < time_steps; t += 2) {
+      probs[t * kClassNum + kOutside[trial % kOutside.size()]] = 2.f;
+    }
+    std::vector<int> word;
+    float score = 0.f;
+    decoder.decode(probs.data(), time_steps, kClassNum, word, score);
+    bool inside = true;
+    for (int id : word) {
+      inside = inside && kind_of(id) >= 0;
+    }
+    expect(inside, "subset ids only", trial);
+    expect(word == greedy(probs, time_steps), "subset greedy", trial);
+  }
+}
+
+/**
+ * Two frames can not spell a three character plate: the greedy result is kept
+ * even though it does not match
+ */
+void check_short_input() {
+  const int time_steps = 2;
+  std::vector<float> probs(size_t(time_steps) * kClassNum, 0.05f);
+  probs[0 * kClassNum + 3] = 0.6f;
+  probs[1 * kClassNum + 5] = 0.6f;
+
+  CtcDecoder decoder;
+  configure(decoder, true);
+  std::vector<int> word;
+  float score = 0.f;
+  decoder.decode(probs.data(), time_steps, kClassNum, word, score);
+  expect(word == std::vector<int>({3, 5}), "short input keeps greedy", 0);
+  expect(std::fabs(score - 0.6f) < 1e-6, "short input score", 0);
+}
+
+} // namespace
+
+int main() {
+  std::mt19937 rng(7);
+  check_against_brute_force(rng, 600);
+  check_greedy_kept();
+  check_subset_only(rng, 200);
+  check_short_input();
+
+  if (failures > 0) {
+    std::printf("%d check(s) failed\n", failures);
+    return 1;
+  }
+  std::printf("all checks passed\n");
+  return 0;
+}
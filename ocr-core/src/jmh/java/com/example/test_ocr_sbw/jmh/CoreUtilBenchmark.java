@@ -0,0 +1,54 @@
+package com.example.test_ocr_sbw.jmh;
+
+import com.example.test_ocr_sbw.benchmark.LatencyHistogram;
+import com.example.test_ocr_sbw.utils.CsvResultWriter;
+import com.example.test_ocr_sbw.utils.PlateFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones por imagen del recorrido de carpetas: filtro de patente, escape CSV y registro de
+ * latencias.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CoreUtilBenchmark {
+
+    private final PlateFilter plateFilter = new PlateFilter();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final StringBuilder line = new StringBuilder();
+    private long sample = 0;
+
+    @Benchmark
+    public String plateFilterMatch() {
+        return plateFilter.extract("ABCD12");
+    }
+
+    @Benchmark
+    public String plateFilterMiss() {
+        return plateFilter.extract("CHILE ABCD12");
+    }
+
+    @Benchmark
+    public int csvEscape() {
+        line.setLength(0);
+        CsvResultWriter.appendEscaped(line, "ABCD12");
+        CsvResultWriter.appendEscaped(line, "texto, con \"comillas\"");
+        return line.length();
+    }
+
+    @Benchmark
+    public long histogramRecord() {
+        sample = (sample * 6364136223846793005L + 1442695040888963407L);
+        histogram.recordMicros((sample >>> 40) & 0xFFFFF);
+        return histogram.getCount();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.test_ocr_sbw.jmh;
+
+import com.example.test_ocr_sbw.yolo.BoundingBox;
+import com.example.test_ocr_sbw.yolo.ListNms;
+import com.example.test_ocr_sbw.yolo.NmsEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NMS de referencia sobre listas contra {@link NmsEngine}, con y sin grilla espacial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NmsBenchmark {
+
+    private static final float IOU_THRESHOLD = 0.5f;
+
+    @Param({"100", "1000", "5000"})
+    public int candidates;
+
+    private List<BoundingBox> boxes;
+    private NmsEngine linear;
+    private NmsEngine grid;
+
+    @Setup
+    public void setUp() {
+        boxes = Synthetic.boxes(7, candidates);
+        linear = new NmsEngine(IOU_THRESHOLD);
+        grid = new NmsEngine(IOU_THRESHOLD).setGridCellSize(0.125f);
+    }
+
+    @Benchmark
+    public List<BoundingBox> listNms() {
+        return ListNms.apply(boxes, IOU_THRESHOLD);
+    }
+
+    @Benchmark
+    public int nmsEngine() {
+        return run(linear);
+    }
+
+    @Benchmark
+    public int nmsEngineGrid() {
+        return run(grid);
+    }
+
+    private int run(NmsEngine engine) {
+        engine.clear();
+        for (int i = 0, n = boxes.size(); i < n; i++) {
+            BoundingBox box = boxes.get(i);
+            engine.add(box.getX1(), box.getY1(), box.getX2(), box.getY2(), box.getCnf(), box.getCls());
+        }
+        return engine.run();
+    }
+}
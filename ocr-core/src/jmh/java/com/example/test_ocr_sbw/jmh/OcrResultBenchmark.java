@@ -0,0 +1,78 @@
+package com.example.test_ocr_sbw.jmh;
+
+import com.example.test_ocr_sbw.LabelTable;
+import com.example.test_ocr_sbw.OcrResultReader;
+import com.example.test_ocr_sbw.StageTimings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura del buffer de resultados de Paddle y decodificación de etiquetas, tal como lo hacen
+ * {@code OCRPredictorNative.postprocess} y {@code Predictor.postprocess}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OcrResultBenchmark {
+
+    // Tamaño de ppocr_keys_v1.txt más blank y espacio
+    private static final int LABEL_COUNT = 6625;
+
+    @Param({"1", "20"})
+    public int results;
+
+    @Param({"8"})
+    public int words;
+
+    private ByteBuffer buffer;
+    private int length;
+    private LabelTable labels;
+    private final OcrResultReader reader = new OcrResultReader();
+    private final StageTimings timings = new StageTimings();
+    private final StringBuilder text = new StringBuilder();
+    private int[] points = new int[0];
+    private int[] indices = new int[0];
+
+    @Setup
+    public void setUp() {
+        buffer = Synthetic.nativeResults(3, results, words, LABEL_COUNT);
+        length = buffer.limit();
+        String[] table = new String[LABEL_COUNT];
+        for (int i = 0; i < LABEL_COUNT; i++) {
+            table[i] = String.valueOf((char) ('一' + i));
+        }
+        labels = LabelTable.of(table);
+    }
+
+    @Benchmark
+    public void parseAndDecode(Blackhole blackhole) {
+        reader.wrap(buffer, length);
+        reader.readStageTimings(timings);
+        for (int i = 0; i < reader.size(); i++) {
+            reader.moveTo(i);
+            if (points.length < reader.getPointCount() * 2) {
+                points = new int[reader.getPointCount() * 2];
+            }
+            reader.copyPoints(points, 0);
+            if (indices.length < reader.getWordCount()) {
+                indices = new int[reader.getWordCount()];
+            }
+            reader.copyWordIndices(indices, 0);
+            text.setLength(0);
+            labels.decode(indices, reader.getWordCount(), text);
+            blackhole.consume(text.toString());
+            blackhole.consume(reader.getConfidence());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.test_ocr_sbw.jmh;
+
+import com.example.test_ocr_sbw.yolo.BoundingBox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Datos de entrada para los benchmarks: salidas sintéticas con semilla fija o salidas grabadas
+ * desde el dispositivo (float32 little-endian, tal como quedan en el buffer del intérprete).
+ */
+final class Synthetic {
+
+    private Synthetic() {
+    }
+
+    /**
+     * Salida YOLO {@code [channels, elements]}: cajas pequeñas en [0, 1] y puntajes con casi todos
+     * los anchors por debajo del umbral, como en una imagen real con pocas patentes.
+     */
+    static float[] yoloOutput(long seed, int channels, int elements) {
+        Random random = new Random(seed);
+        float[] output = new float[channels * elements];
+        for (int c = 0; c < elements; c++) {
+            output[c] = random.nextFloat();
+            output[c + elements] = random.nextFloat();
+            output[c + elements * 2] = 0.02f + random.nextFloat() * 0.1f;
+            output[c + elements * 3] = 0.02f + random.nextFloat() * 0.1f;
+        }
+        for (int i = elements * 4; i < output.length; i++) {
+            output[i] = random.nextFloat() * 0.25f;
+        }
+        // ~1 % de los anchors con una clase sobre el umbral, agrupados en pocas zonas
+        int classes = channels - 4;
+        for (int c = 0; c < elements; c++) {
+            if (random.nextInt(100) == 0) {
+                output[c + elements * (4 + random.nextInt(classes))] = 0.3f + random.nextFloat() * 0.7f;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Carga una salida grabada; si {@code path} está vacío devuelve una sintética.
+     */
+    static float[] yoloOutputOrRecorded(String path, int channels, int elements) throws IOException {
+        if (path == null || path.isEmpty()) {
+            return yoloOutput(42, channels, elements);
+        }
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        if (bytes.length != channels * elements * 4) {
+            throw new IOException("Se esperaban " + channels * elements * 4 + " bytes en " + path
+                    + " y hay " + bytes.length);
+        }
+        float[] output = new float[channels * elements];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(output);
+        return output;
+    }
+
+    static List<BoundingBox> boxes(long seed, int n) {
+        Random random = new Random(seed);
+        List<BoundingBox> boxes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            float w = 0.02f + random.nextFloat() * 0.1f;
+            float h = 0.02f + random.nextFloat() * 0.1f;
+            float x1 = random.nextFloat() * (1f - w);
+            float y1 = random.nextFloat() * (1f - h);
+            float cnf = 0.3f + random.nextFloat() * 0.7f;
+            int cls = random.nextInt(36);
+            boxes.add(new BoundingBox(x1, y1, x1 + w, y1 + h, x1 + w / 2, y1 + h / 2, w, h, cnf, cls, "c" + cls));
+        }
+        return boxes;
+    }
+
+    /**
+     * Buffer con el formato que escribe {@code native.cpp}: {@code results} cajas de 4 vértices y
+     * {@code words} caracteres cada una, más el bloque de tiempos por etapa.
+     */
+    static ByteBuffer nativeResults(long seed, int results, int words, int labelCount) {
+        Random random = new Random(seed);
+        int stages = 8;
+        int size = 4 + results * (6 * 4 + (8 + words) * 4) + 4 + stages * 4;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        buffer.putInt(results);
+        for (int r = 0; r < results; r++) {
+            buffer.putInt(4).putInt(words).putFloat(random.nextFloat()).putInt(0).putFloat(1f).putFloat(1f);
+            for (int p = 0; p < 8; p++) {
+                buffer.putInt(random.nextInt(960));
+            }
+            for (int w = 0; w < words; w++) {
+                buffer.putInt(1 + random.nextInt(labelCount - 1));
+            }
+        }
+        buffer.putInt(stages);
+        for (int s = 0; s < stages; s++) {
+            buffer.putFloat(random.nextFloat());
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
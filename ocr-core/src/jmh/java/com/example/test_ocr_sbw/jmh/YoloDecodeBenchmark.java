@@ -0,0 +1,120 @@
+package com.example.test_ocr_sbw.jmh;
+
+import com.example.test_ocr_sbw.yolo.BoundingBox;
+import com.example.test_ocr_sbw.yolo.ListNms;
+import com.example.test_ocr_sbw.yolo.YoloOutputDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post-proceso completo de la salida YOLO (decodificación + NMS). {@code recordedOutput} permite
+ * usar una salida grabada en el dispositivo: {@code -Pjmh.params=recordedOutput=/ruta/salida.bin}
+ * o la opción {@code -p} de JMH.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YoloDecodeBenchmark {
+
+    private static final float CONFIDENCE_THRESHOLD = 0.3f;
+    private static final float IOU_THRESHOLD = 0.5f;
+
+    // 4 coordenadas + 36 clases (A-Z, 0-9) sobre 8400 anchors de una entrada de 640
+    @Param({"40"})
+    public int channels;
+
+    @Param({"8400"})
+    public int elements;
+
+    @Param({""})
+    public String recordedOutput;
+
+    private float[] array;
+    private FloatBuffer direct;
+    private List<String> labels;
+    private YoloOutputDecoder decoder;
+    private YoloOutputDecoder parallelDecoder;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        array = Synthetic.yoloOutputOrRecorded(recordedOutput, channels, elements);
+        direct = ByteBuffer.allocateDirect(array.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        direct.put(array).rewind();
+        labels = new ArrayList<>();
+        for (int i = 0; i < channels - 4; i++) {
+            labels.add("c" + i);
+        }
+        decoder = new YoloOutputDecoder(channels, elements, CONFIDENCE_THRESHOLD, IOU_THRESHOLD);
+        executor = Executors.newFixedThreadPool(4);
+        parallelDecoder = new YoloOutputDecoder(channels, elements, CONFIDENCE_THRESHOLD, IOU_THRESHOLD);
+        parallelDecoder.setExecutor(executor, 4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /** Recorrido por columnas del {@code bestBox} original sobre la copia float[], más NMS de listas. */
+    @Benchmark
+    public List<BoundingBox> columnWiseBaseline() {
+        float[] copy = new float[array.length];
+        direct.rewind();
+        direct.get(copy);
+        List<BoundingBox> boxes = new ArrayList<>();
+        for (int c = 0; c < elements; c++) {
+            float maxConf = CONFIDENCE_THRESHOLD;
+            int maxIdx = -1;
+            int arrayIdx = c + elements * 4;
+            for (int j = 4; j < channels; j++, arrayIdx += elements) {
+                if (copy[arrayIdx] > maxConf) {
+                    maxConf = copy[arrayIdx];
+                    maxIdx = j - 4;
+                }
+            }
+            if (maxConf > CONFIDENCE_THRESHOLD) {
+                float cx = copy[c];
+                float cy = copy[c + elements];
+                float w = copy[c + elements * 2];
+                float h = copy[c + elements * 3];
+                float x1 = cx - (w / 2f);
+                float y1 = cy - (h / 2f);
+                float x2 = cx + (w / 2f);
+                float y2 = cy + (h / 2f);
+                if (x1 < 0f || x1 > 1f || y1 < 0f || y1 > 1f || x2 < 0f || x2 > 1f || y2 < 0f || y2 > 1f) {
+                    continue;
+                }
+                boxes.add(new BoundingBox(x1, y1, x2, y2, cx, cy, w, h, maxConf, maxIdx, labels.get(maxIdx)));
+            }
+        }
+        return ListNms.apply(boxes, IOU_THRESHOLD);
+    }
+
+    @Benchmark
+    public List<BoundingBox> rowWiseDecoder() throws InterruptedException {
+        return decoder.decode(direct, labels);
+    }
+
+    @Benchmark
+    public List<BoundingBox> rowWiseDecoderParallel() throws InterruptedException {
+        return parallelDecoder.decode(direct, labels);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.test_ocr_sbw;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tabla inmutable de decodificación de etiquetas del reconocedor. Todas las etiquetas se guardan
+ * concatenadas en un único {@code char[]} con un arreglo de desplazamientos, de modo que
+ * decodificar un índice es un {@code append} de un rango, sin sincronización ni búsquedas.
+ * <p>
+ * El índice 0 corresponde al "blank" de CTC y el último a un espacio, igual que en la
+ * carga original de {@code ppocr_keys_v1.txt}.
+ */
+public final class LabelTable {
+
+    /** Carácter que se emite para índices fuera de la tabla. */
+    public static final char UNKNOWN = '×';
+
+    private static final String BLANK = "black";
+    private static final String SPACE = " ";
+
+    private final char[] data;
+    // offsets[i] .. offsets[i + 1] es el rango de la etiqueta i
+    private final int[] offsets;
+    private final int size;
+
+    private LabelTable(char[] data, int[] offsets, int size) {
+        this.data = data;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Lee un diccionario con una etiqueta por línea (UTF-8) y agrega el blank al inicio y el
+     * espacio al final. No depende de {@link InputStream#available()}, así que funciona con
+     * streams comprimidos o de tamaño desconocido.
+     */
+    public static LabelTable load(InputStream inputStream) throws IOException {
+        Builder builder = new Builder();
+        builder.add(BLANK);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            builder.add(line);
+        }
+        builder.add(SPACE);
+        return builder.build();
+    }
+
+    public static LabelTable of(String... labels) {
+        Builder builder = new Builder();
+        for (String label : labels) {
+            builder.add(label);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(int index) {
+        return new String(data, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    /**
+     * Índice de la etiqueta exacta, o -1 si no está en la tabla.
+     */
+    public int indexOf(String label) {
+        for (int i = 0; i < size; i++) {
+            int start = offsets[i];
+            int length = offsets[i + 1] - start;
+            if (length != label.length()) {
+                continue;
+            }
+            int c = 0;
+            while (c < length && data[start + c] == label.charAt(c)) {
+                c++;
+            }
+            if (c == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Agrega a {@code out} las etiquetas de los primeros {@code count} índices.
+     *
+     * @return cantidad de índices que no estaban en la tabla (se emiten como {@link #UNKNOWN}).
+     */
+    public int decode(int[] indices, int count, StringBuilder out) {
+        int unknown = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            if (index >= 0 && index < size) {
+                int start = offsets[index];
+                out.append(data, start, offsets[index + 1] - start);
+            } else {
+                out.append(UNKNOWN);
+                unknown++;
+            }
+        }
+        return unknown;
+    }
+
+    private static final class Builder {
+        private char[] data = new char[1024];
+        private int[] offsets = new int[256];
+        private int length = 0;
+        private int size = 0;
+
+        void add(String label) {
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            if (length + label.length() > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + label.length()));
+            }
+            label.getChars(0, label.length(), data, length);
+            length += label.length();
+            size++;
+            offsets[size] = length;
+        }
+
+        LabelTable build() {
+            return new LabelTable(Arrays.copyOf(data, length), Arrays.copyOf(offsets, size + 1), size);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.test_ocr_sbw;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lector "flyweight" sobre el formato binario que escribe {@code native.cpp} en el buffer directo
+ * de {@code OCRPredictorNative}. No copia ni crea objetos por resultado: {@link #moveTo(int)}
+ * sólo cambia el desplazamiento sobre el que leen los getters.
+ * <p>
+ * Formato (enteros y floats de 4 bytes, orden nativo):
+ * <pre>
+ * int32 count
+ * por resultado: int32 pointNum, int32 wordNum, float score, int32 clsLabel, float clsScore,
+ *                float recTime, int32 points[pointNum * 2], int32 wordIndex[wordNum]
+ * int32 stageNum, float stageMs[stageNum]
+ * </pre>
+ * El lector es válido hasta la siguiente inferencia sobre el mismo buffer.
+ */
+public final class OcrResultReader {
+
+    private static final int HEADER_BYTES = 4;
+    private static final int RESULT_FIXED_BYTES = 6 * 4;
+
+    private ByteBuffer buffer;
+    private int count = 0;
+    // Desplazamiento del bloque de tiempos por etapa que sigue a los resultados
+    private int stagesOffset = -1;
+    private int[] offsets = new int[16];
+
+    // Desplazamiento del resultado actual
+    private int current = -1;
+    private int pointNum;
+    private int wordNum;
+
+    /**
+     * Apunta el lector a los primeros {@code length} bytes del buffer y construye el índice de
+     * desplazamientos de cada resultado. El arreglo de índices se reutiliza entre llamadas.
+     */
+    public OcrResultReader wrap(ByteBuffer buffer, int length) {
+        if (buffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("El buffer debe estar en orden nativo");
+        }
+        this.buffer = buffer;
+        this.current = -1;
+        this.stagesOffset = -1;
+        if (length < HEADER_BYTES) {
+            count = 0;
+            return this;
+        }
+        count = buffer.getInt(0);
+        if (offsets.length < count) {
+            offsets = new int[Math.max(count, offsets.length * 2)];
+        }
+        int offset = HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = offset;
+            int points = buffer.getInt(offset);
+            int words = buffer.getInt(offset + 4);
+            offset += RESULT_FIXED_BYTES + (points * 2 + words) * 4;
+        }
+        if (offset > length) {
+            throw new IllegalStateException("Resultado nativo truncado: " + offset + " > " + length);
+        }
+        if (offset + 4 <= length) {
+            stagesOffset = offset;
+        }
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Posiciona el lector sobre el resultado {@code index}.
+     */
+    public OcrResultReader moveTo(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + count);
+        }
+        current = offsets[index];
+        pointNum = buffer.getInt(current);
+        wordNum = buffer.getInt(current + 4);
+        return this;
+    }
+
+    public int getPointCount() {
+        return pointNum;
+    }
+
+    public int getWordCount() {
+        return wordNum;
+    }
+
+    public float getConfidence() {
+        return buffer.getFloat(current + 8);
+    }
+
+    public int getClsIdx() {
+        return buffer.getInt(current + 12);
+    }
+
+    public float getClsConfidence() {
+        return buffer.getFloat(current + 16);
+    }
+
+    /**
+     * Tiempo en ms dedicado a esta caja (recorte, cls y rec; en lotes, la parte proporcional).
+     */
+    public float getRecTime() {
+        return buffer.getFloat(current + 20);
+    }
+
+    /**
+     * Copia los tiempos por etapa de la inferencia en {@code timings}.
+     */
+    public void readStageTimings(StageTimings timings) {
+        if (stagesOffset < 0) {
+            return;
+        }
+        int stages = Math.min(buffer.getInt(stagesOffset), StageTimings.NATIVE_STAGE_COUNT);
+        for (int i = 0; i < stages; i++) {
+            timings.set(i, buffer.getFloat(stagesOffset + 4 + i * 4));
+        }
+    }
+
+    public int getPointX(int point) {
+        return buffer.getInt(pointsOffset() + point * 8);
+    }
+
+    public int getPointY(int point) {
+        return buffer.getInt(pointsOffset() + point * 8 + 4);
+    }
+
+    public int getWordIndex(int word) {
+        return buffer.getInt(wordsOffset() + word * 4);
+    }
+
+    /**
+     * Copia las coordenadas intercaladas (x0, y0, x1, y1...) en {@code dst}.
+     */
+    public void copyPoints(int[] dst, int dstOffset) {
+        int base = pointsOffset();
+        for (int i = 0, n = pointNum * 2; i < n; i++) {
+            dst[dstOffset + i] = buffer.getInt(base + i * 4);
+        }
+    }
+
+    /**
+     * Copia los índices de caracteres reconocidos en {@code dst}.
+     */
+    public void copyWordIndices(int[] dst, int dstOffset) {
+        int base = wordsOffset();
+        for (int i = 0; i < wordNum; i++) {
+            dst[dstOffset + i] = buffer.getInt(base + i * 4);
+        }
+    }
+
+    private int pointsOffset() {
+        return current + RESULT_FIXED_BYTES;
+    }
+
+    private int wordsOffset() {
+        return current + RESULT_FIXED_BYTES + pointNum * 8;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.test_ocr_sbw;
+
+/**
+ * Desglose de latencia (en ms) de una inferencia de Paddle OCR. Las etapas nativas se miden con
+ * reloj monotónico en {@code ocr_ppredictor.cpp}; el orden de los índices coincide con el enum
+ * {@code OCR_STAGE} de C++.
+ */
+public class StageTimings {
+
+    public static final int DET_PRE = 0;
+    public static final int DET_INFER = 1;
+    public static final int DET_POST = 2;
+    public static final int CLS = 3;
+    public static final int REC_PRE = 4;
+    public static final int REC_INFER = 5;
+    public static final int REC_POST = 6;
+    public static final int NATIVE_TOTAL = 7;
+    public static final int NATIVE_STAGE_COUNT = 8;
+
+    private static final String[] NAMES = {
+            "DetPre", "DetInfer", "DetPost", "Cls", "RecPre", "RecInfer", "RecPost", "NativeTotal"
+    };
+
+    private final float[] nativeMs = new float[NATIVE_STAGE_COUNT];
+    // Decodificación de etiquetas y armado de resultados en Java
+    private float javaPostMs;
+
+    public float get(int stage) {
+        return nativeMs[stage];
+    }
+
+    public void set(int stage, float ms) {
+        nativeMs[stage] = ms;
+    }
+
+    public float getJavaPostMs() {
+        return javaPostMs;
+    }
+
+    public void setJavaPostMs(float javaPostMs) {
+        this.javaPostMs = javaPostMs;
+    }
+
+    public void copyFrom(StageTimings other) {
+        System.arraycopy(other.nativeMs, 0, nativeMs, 0, NATIVE_STAGE_COUNT);
+        javaPostMs = other.javaPostMs;
+    }
+
+    /**
+     * Columnas CSV del desglose, con el prefijo del motor (por ejemplo "Paddle").
+     */
+    public static String[] csvColumns(String prefix) {
+        String[] columns = new String[NATIVE_STAGE_COUNT + 1];
+        for (int i = 0; i < NATIVE_STAGE_COUNT; i++) {
+            columns[i] = prefix + NAMES[i] + "(ms)";
+        }
+        columns[NATIVE_STAGE_COUNT] = prefix + "JavaPost(ms)";
+        return columns;
+    }
+
+    /**
+     * Campos en el mismo orden que {@link #csvColumns(String)}.
+     */
+    public String[] toCsvFields() {
+        String[] fields = new String[NATIVE_STAGE_COUNT + 1];
+        for (int i = 0; i < NATIVE_STAGE_COUNT; i++) {
+            fields[i] = String.valueOf(nativeMs[i]);
+        }
+        fields[NATIVE_STAGE_COUNT] = String.valueOf(javaPostMs);
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("StageTimings{");
+        for (int i = 0; i < NATIVE_STAGE_COUNT; i++) {
+            text.append(NAMES[i]).append('=').append(nativeMs[i]).append(", ");
+        }
+        return text.append("JavaPost=").append(javaPostMs).append('}').toString();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Histograma de latencias de bajo costo, con cubetas log-lineales en microsegundos (estilo
+ * HdrHistogram): valores menores a 32 µs son exactos y por encima el error relativo es menor al
+ * 3,2 %. Registrar una muestra es O(1) y no reserva memoria, por lo que puede usarse dentro de
+ * la medición. No es seguro para uso concurrente: cada hilo debe tener el suyo y combinarlos con
+ * {@link #add(LatencyHistogram)}.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 32;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // Alcanza hasta ~2^36 µs (unas 19 horas); lo mayor se acumula en la última cubeta
+    private static final int MAX_SHIFT = 32;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + MAX_SHIFT * HALF;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros = 0;
+    private double sum = 0;
+    private double sumSquares = 0;
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000L);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[bucketIndex(micros)]++;
+        count++;
+        if (micros < minMicros) {
+            minMicros = micros;
+        }
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+        double ms = micros / 1000.0;
+        sum += ms;
+        sumSquares += ms * ms;
+    }
+
+    /**
+     * Acumula las muestras de {@code other} en este histograma.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        minMicros = Math.min(minMicros, other.minMicros);
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+        sum += other.sum;
+        sumSquares += other.sumSquares;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        minMicros = Long.MAX_VALUE;
+        maxMicros = 0;
+        sum = 0;
+        sumSquares = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMinMs() {
+        return count == 0 ? 0 : minMicros / 1000.0;
+    }
+
+    public double getMaxMs() {
+        return maxMicros / 1000.0;
+    }
+
+    public double getMeanMs() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Desviación estándar poblacional en ms.
+     */
+    public double getStdDevMs() {
+        if (count < 2) {
+            return 0;
+        }
+        double mean = sum / count;
+        return Math.sqrt(Math.max(0, sumSquares / count - mean * mean));
+    }
+
+    /**
+     * Percentil {@code percentile} (0-100) en ms, acotado por el mínimo y máximo observados.
+     */
+    public double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                long value = Math.max(minMicros, Math.min(maxMicros, bucketMidpoint(i)));
+                return value / 1000.0;
+            }
+        }
+        return getMaxMs();
+    }
+
+    public static String[] csvColumns(String prefix) {
+        return new String[]{
+                prefix + "Min(ms)", prefix + "P50(ms)", prefix + "P90(ms)", prefix + "P99(ms)",
+                prefix + "Max(ms)", prefix + "StdDev(ms)"
+        };
+    }
+
+    /**
+     * Campos en el mismo orden que {@link #csvColumns(String)}.
+     */
+    public String[] toCsvFields() {
+        return new String[]{
+                formatMs(getMinMs()), formatMs(getPercentileMs(50)), formatMs(getPercentileMs(90)),
+                formatMs(getPercentileMs(99)), formatMs(getMaxMs()), formatMs(getStdDevMs())
+        };
+    }
+
+    public static String formatMs(double ms) {
+        return String.format(Locale.US, "%.3f", ms);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d min=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f std=%.2f ms",
+                count, getMinMs(), getPercentileMs(50), getPercentileMs(90), getPercentileMs(99),
+                getMaxMs(), getStdDevMs());
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = magnitude - 4;
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((micros >> shift) - HALF);
+    }
+
+    static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long lower = ((long) ((index - SUB_BUCKETS) % HALF + HALF)) << shift;
+        return lower + (1L << (shift - 1));
+    }
+}
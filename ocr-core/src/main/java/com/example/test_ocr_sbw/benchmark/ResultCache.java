@@ -0,0 +1,357 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché persistente de resultados de inferencia, direccionada por contenido: la clave combina el
+ * hash de la imagen con la huella del motor (modelo y configuración), así que al cambiar un solo
+ * motor sólo ese motor se vuelve a calcular.
+ * <p>
+ * El índice vive en memoria como un LRU y en disco como un diario de sólo agregado
+ * ({@code journal.txt}): una línea por alta, acceso o desalojo. Al abrir se reproduce el diario
+ * (sólo las líneas terminadas en salto de línea: la última puede haber quedado cortada en el
+ * búfer de escritura) y se reescribe compactado en orden LRU, lo que descarta esa cola
+ * incompleta; también se compacta cuando crece mucho más que las entradas vivas. El
+ * tamaño total se limita a {@code maxBytes} (aproximado, en caracteres de las entradas)
+ * desalojando las menos usadas.
+ */
+public class ResultCache implements Closeable, Flushable {
+
+    private static final String JOURNAL = "journal.txt";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final char PUT = 'P';
+    private static final char READ = 'R';
+    private static final char REMOVE = 'D';
+    // Bytes de más por entrada (clave, separadores, estructuras en memoria)
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int MIN_COMPACT_LINES = 1000;
+
+    private static final class Entry {
+        final String[] fields;
+        final long size;
+
+        Entry(String[] fields, long size) {
+            this.fields = fields;
+            this.size = size;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    // accessOrder = true: la iteración va del menos al más recientemente usado
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private Writer journal;
+    private long bytes = 0;
+    private int journalLines = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    private ResultCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Abre (o crea) la caché en {@code dir}, con un tamaño máximo aproximado de {@code maxBytes}.
+     */
+    public static ResultCache open(File dir, long maxBytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear " + dir);
+        }
+        ResultCache cache = new ResultCache(dir, maxBytes);
+        File journal = new File(dir, JOURNAL);
+        if (journal.isFile()) {
+            cache.replay(journal);
+        }
+        cache.trimToSize();
+        cache.compact();
+        return cache;
+    }
+
+    private void replay(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = readCompleteLine(reader)) != null) {
+                journalLines++;
+                String[] parts = line.split("\t", -1);
+                if (parts.length < 2 || parts[0].length() != 1) {
+                    // Línea incompleta de una escritura interrumpida
+                    continue;
+                }
+                String key = parts[1];
+                switch (parts[0].charAt(0)) {
+                    case PUT:
+                        String[] fields = new String[parts.length - 2];
+                        for (int i = 0; i < fields.length; i++) {
+                            fields[i] = unescape(parts[i + 2]);
+                        }
+                        putEntry(key, fields, line.length());
+                        break;
+                    case READ:
+                        entries.get(key);
+                        break;
+                    case REMOVE:
+                        removeEntry(key);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Siguiente línea sin el salto de línea, o null al llegar al final. Una línea final sin salto
+     * es una escritura interrumpida y no se devuelve, aunque parezca completa.
+     */
+    private static String readCompleteLine(BufferedReader reader) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '\n') {
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return null;
+    }
+
+    /**
+     * Campos guardados para la clave, o null si no está.
+     */
+    public synchronized String[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        try {
+            appendLine(READ + "\t" + key);
+        } catch (IOException e) {
+            // Sólo se pierde la posición LRU del acceso
+        }
+        return entry.fields.clone();
+    }
+
+    public synchronized void put(String key, String[] fields) throws IOException {
+        StringBuilder line = new StringBuilder(64 + fields.length * 16).append(PUT).append('\t').append(key);
+        for (String field : fields) {
+            line.append('\t');
+            escape(field != null ? field : "", line);
+        }
+        putEntry(key, fields.clone(), line.length());
+        appendLine(line.toString());
+        trimToSize();
+        if (journalLines > MIN_COMPACT_LINES && journalLines > 2 * entries.size()) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void putEntry(String key, String[] fields, long lineLength) {
+        Entry previous = entries.put(key, new Entry(fields, lineLength + ENTRY_OVERHEAD));
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+        bytes += lineLength + ENTRY_OVERHEAD;
+    }
+
+    private void removeEntry(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+    }
+
+    private void trimToSize() throws IOException {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            bytes -= eldest.getValue().size;
+            it.remove();
+            if (journal != null) {
+                appendLine(REMOVE + "\t" + eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Reescribe el diario con sólo las entradas vivas, de la menos a la más usada.
+     */
+    private void compact() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        File tmp = new File(dir, JOURNAL_TMP);
+        try (Writer out = newWriter(tmp, false)) {
+            StringBuilder line = new StringBuilder(256);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                line.setLength(0);
+                line.append(PUT).append('\t').append(e.getKey());
+                for (String field : e.getValue().fields) {
+                    line.append('\t');
+                    escape(field != null ? field : "", line);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+        File file = new File(dir, JOURNAL);
+        if (!tmp.renameTo(file)) {
+            // En algunos sistemas renameTo no reemplaza un archivo existente
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("No se pudo reemplazar " + file);
+            }
+        }
+        journalLines = entries.size();
+        journal = newWriter(file, true);
+    }
+
+    private void appendLine(String line) throws IOException {
+        if (journal == null) {
+            journal = newWriter(new File(dir, JOURNAL), true);
+        }
+        journal.write(line);
+        journal.write('\n');
+        journalLines++;
+    }
+
+    private static Writer newWriter(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8),
+                16 * 1024);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Escapa tabuladores, saltos de línea y '%' para que cada entrada ocupe una línea.
+     */
+    static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '%':
+                    out.append("%25");
+                    break;
+                case '\t':
+                    out.append("%09");
+                    break;
+                case '\n':
+                    out.append("%0A");
+                    break;
+                case '\r':
+                    out.append("%0D");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                out.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Clave de caché: SHA-256 (hex) de las partes, separadas por un carácter nulo.
+     */
+    public static String key(String... parts) {
+        MessageDigest digest = sha256();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                digest.update((byte) 0);
+            }
+            digest.update(String.valueOf(parts[i]).getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * SHA-256 (hex) del contenido del stream, que se lee completo pero no se cierra.
+     */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import com.example.test_ocr_sbw.utils.CsvResultWriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resultados de un barrido de configuraciones: una fila por motor y combinación de parámetros,
+ * con latencia, imágenes por segundo y calidad sobre la misma muestra de imágenes. La latencia se
+ * mide con una imagen a la vez y las imágenes por segundo con varias en curso, así que miden
+ * cosas distintas: más instancias o hilos pueden subir el rendimiento y a la vez la latencia.
+ * <p>
+ * La calidad es la exactitud contra la patente esperada cuando la muestra tiene etiquetas, o si
+ * no la fracción de imágenes en que el motor leyó alguna patente válida. Por motor se marca el
+ * frente de Pareto (ninguna otra configuración es a la vez igual o mejor en latencia p50,
+ * imágenes por segundo y calidad, y mejor en alguna) y se recomienda la configuración del frente
+ * con mejor calidad; entre las que quedan a menos de {@link #QUALITY_TOLERANCE} de ella, la de
+ * menor latencia.
+ */
+public final class SweepMatrix {
+
+    /** Diferencia de calidad que se considera empate al recomendar. */
+    public static final double QUALITY_TOLERANCE = 0.01;
+
+    public static final class Row {
+        public final String engine;
+        // Nombre y valor de cada parámetro, en el orden del barrido
+        public final Map<String, String> params;
+        public final LatencyHistogram latency = new LatencyHistogram();
+        // Tiempo de construcción del motor; 0 si se reutilizó el de la fila anterior
+        public long loadMs;
+        // Rendimiento con inFlight imágenes en curso
+        public double imagesPerSecond;
+        public int inFlight;
+        public int images;
+        // Imágenes con patente esperada, y cuántas de ellas se leyeron bien
+        public int labeled;
+        public int correct;
+        // Imágenes en que se leyó alguna patente válida
+        public int plates;
+        public int errors;
+
+        public Row(String engine, Map<String, String> params) {
+            this.engine = engine;
+            this.params = new LinkedHashMap<>(params);
+        }
+
+        public double getAccuracy() {
+            return labeled > 0 ? correct / (double) labeled : -1;
+        }
+
+        public double getPlateRate() {
+            return images > 0 ? plates / (double) images : 0;
+        }
+
+        /**
+         * Exactitud si hay etiquetas; si no, tasa de patentes leídas.
+         */
+        public double getQuality() {
+            return labeled > 0 ? getAccuracy() : getPlateRate();
+        }
+
+        /**
+         * Igual o mejor en latencia, rendimiento y calidad, y estrictamente mejor en alguna.
+         */
+        boolean dominates(Row other) {
+            double p50 = latency.getPercentileMs(50);
+            double otherP50 = other.latency.getPercentileMs(50);
+            boolean noWorse = p50 <= otherP50 && imagesPerSecond >= other.imagesPerSecond
+                    && getQuality() >= other.getQuality();
+            boolean better = p50 < otherP50 || imagesPerSecond > other.imagesPerSecond
+                    || getQuality() > other.getQuality();
+            return noWorse && better;
+        }
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+
+    public synchronized void add(Row row) {
+        rows.add(row);
+    }
+
+    public synchronized List<Row> getRows() {
+        return new ArrayList<>(rows);
+    }
+
+    /**
+     * Filas del motor que no están dominadas por otra del mismo motor; las que fallaron en todas
+     * las imágenes no cuentan.
+     */
+    public synchronized List<Row> paretoFront(String engine) {
+        List<Row> candidates = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.engine.equals(engine) && row.errors < row.images) {
+                candidates.add(row);
+            }
+        }
+        List<Row> front = new ArrayList<>();
+        for (Row row : candidates) {
+            boolean dominated = false;
+            for (Row other : candidates) {
+                if (other != row && other.dominates(row)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                front.add(row);
+            }
+        }
+        return front;
+    }
+
+    /**
+     * Configuración recomendada para el motor, o null si no tiene filas válidas.
+     */
+    public synchronized Row recommend(String engine) {
+        List<Row> front = paretoFront(engine);
+        double bestQuality = Double.NEGATIVE_INFINITY;
+        for (Row row : front) {
+            bestQuality = Math.max(bestQuality, row.getQuality());
+        }
+        Row best = null;
+        for (Row row : front) {
+            if (row.getQuality() >= bestQuality - QUALITY_TOLERANCE
+                    && (best == null || row.latency.getPercentileMs(50) < best.latency.getPercentileMs(50))) {
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    public synchronized List<String> getEngines() {
+        Set<String> engines = new LinkedHashSet<>();
+        for (Row row : rows) {
+            engines.add(row.engine);
+        }
+        return new ArrayList<>(engines);
+    }
+
+    /**
+     * Matriz completa: una columna por parámetro (vacía si no aplica al motor), las métricas y si
+     * la fila está en el frente de Pareto o es la recomendada.
+     */
+    public synchronized String toCsv() {
+        Set<String> paramNames = new LinkedHashSet<>();
+        for (Row row : rows) {
+            paramNames.addAll(row.params.keySet());
+        }
+        StringBuilder csv = new StringBuilder("Engine");
+        for (String name : paramNames) {
+            csv.append(',').append(CsvResultWriter.escape(name));
+        }
+        csv.append(",Images,Errors,LoadMs,Mean(ms),P50(ms),P90(ms),P99(ms),ImagesPerSecond,InFlight,Labeled,"
+                + "Accuracy,PlateRate,Pareto,Recommended");
+        for (String engine : getEngines()) {
+            List<Row> front = paretoFront(engine);
+            Row recommended = recommend(engine);
+            for (Row row : rows) {
+                if (!row.engine.equals(engine)) {
+                    continue;
+                }
+                csv.append('\n').append(CsvResultWriter.escape(row.engine));
+                for (String name : paramNames) {
+                    String value = row.params.get(name);
+                    csv.append(',').append(value != null ? CsvResultWriter.escape(value) : "");
+                }
+                csv.append(',').append(row.images)
+                        .append(',').append(row.errors)
+                        .append(',').append(row.loadMs)
+                        .append(',').append(LatencyHistogram.formatMs(row.latency.getMeanMs()))
+                        .append(',').append(LatencyHistogram.formatMs(row.latency.getPercentileMs(50)))
+                        .append(',').append(LatencyHistogram.formatMs(row.latency.getPercentileMs(90)))
+                        .append(',').append(LatencyHistogram.formatMs(row.latency.getPercentileMs(99)))
+                        .append(',').append(String.format(Locale.US, "%.2f", row.imagesPerSecond))
+                        .append(',').append(row.inFlight)
+                        .append(',').append(row.labeled)
+                        .append(',').append(row.labeled > 0 ? String.format(Locale.US, "%.3f", row.getAccuracy()) : "")
+                        .append(',').append(String.format(Locale.US, "%.3f", row.getPlateRate()))
+                        .append(',').append(front.contains(row) ? 1 : 0)
+                        .append(',').append(row == recommended ? 1 : 0);
+            }
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Una línea por motor con la configuración recomendada, para mostrar al terminar.
+     */
+    public synchronized String describeRecommendations() {
+        StringBuilder text = new StringBuilder();
+        for (String engine : getEngines()) {
+            Row row = recommend(engine);
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(engine).append(": ");
+            if (row == null) {
+                text.append("sin resultados válidos");
+                continue;
+            }
+            text.append(row.params)
+                    .append(" p50=").append(LatencyHistogram.formatMs(row.latency.getPercentileMs(50))).append(" ms")
+                    .append(' ').append(String.format(Locale.US, "%.2f", row.imagesPerSecond)).append(" img/s")
+                    .append(row.labeled > 0 ? " exactitud=" : " patentes=")
+                    .append(String.format(Locale.US, "%.3f", row.getQuality()));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.test_ocr_sbw.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Escritor CSV en streaming y sólo de agregado: cada fila se escapa según RFC 4180 y se escribe a
+ * un buffer que se vacía al disco cada {@code flushEvery} filas, así que el reporte nunca está
+ * completo en memoria y una caída pierde como mucho las últimas filas sin vaciar.
+ * <p>
+ * Al abrir en modo reanudación, si el archivo ya existe con la misma cabecera se conservan sus
+ * filas, se descarta una última fila incompleta y {@link #isCompleted(String)} indica qué claves
+ * (primera columna, el nombre de archivo) ya fueron procesadas.
+ */
+public class CsvResultWriter implements Closeable, Flushable {
+
+    public static final int DEFAULT_FLUSH_EVERY = 16;
+
+    private final Writer writer;
+    private final Set<String> completedKeys;
+    private final int flushEvery;
+    private int pendingRows = 0;
+    private int writtenRows = 0;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private CsvResultWriter(Writer writer, Set<String> completedKeys, int flushEvery) {
+        this.writer = writer;
+        this.completedKeys = completedKeys;
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /**
+     * Abre {@code file} para escribir filas con las columnas dadas.
+     *
+     * @param resume si es true y el archivo tiene la misma cabecera, se agregan filas al final en
+     *               vez de sobrescribirlo.
+     */
+    public static CsvResultWriter open(File file, List<String> columns, boolean resume, int flushEvery)
+            throws IOException {
+        Set<String> completed = new HashSet<>();
+        boolean append = false;
+        if (resume && file.isFile() && file.length() > 0) {
+            append = readExisting(file, columns, completed);
+        }
+        if (!append) {
+            completed.clear();
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8), 64 * 1024);
+        CsvResultWriter csv = new CsvResultWriter(out, completed, flushEvery);
+        if (!append) {
+            csv.writeRecord(columns);
+            csv.flush();
+        }
+        return csv;
+    }
+
+    public static CsvResultWriter open(File file, List<String> columns, boolean resume) throws IOException {
+        return open(file, columns, resume, DEFAULT_FLUSH_EVERY);
+    }
+
+    /**
+     * Indica si la clave (primera columna) ya estaba en el archivo al reanudar.
+     */
+    public boolean isCompleted(String key) {
+        return completedKeys.contains(key);
+    }
+
+    public Set<String> getCompletedKeys() {
+        return Collections.unmodifiableSet(completedKeys);
+    }
+
+    /** Filas escritas por esta instancia (sin contar las reanudadas). */
+    public int getWrittenRows() {
+        return writtenRows;
+    }
+
+    public synchronized void writeRow(List<String> fields) throws IOException {
+        writeRecord(fields);
+        writtenRows++;
+        if (++pendingRows >= flushEvery) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        writer.flush();
+        pendingRows = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeRecord(List<String> fields) throws IOException {
+        line.setLength(0);
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendEscaped(line, fields.get(i));
+        }
+        line.append("\r\n");
+        writer.append(line);
+    }
+
+    /**
+     * Agrega el campo entre comillas sólo si contiene coma, comillas o saltos de línea; las
+     * comillas internas se duplican.
+     */
+    public static void appendEscaped(StringBuilder out, String field) {
+        if (field == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(field);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    public static String escape(String field) {
+        StringBuilder out = new StringBuilder();
+        appendEscaped(out, field);
+        return out.toString();
+    }
+
+    /**
+     * Lee el archivo existente. Devuelve false si la cabecera no coincide (hay que empezar de
+     * cero); si la última fila quedó cortada, trunca el archivo al final de la última completa.
+     */
+    private static boolean readExisting(File file, List<String> columns, Set<String> completed)
+            throws IOException {
+        long completeBytes;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            RecordParser parser = new RecordParser(reader);
+            List<String> header = parser.next();
+            if (header == null || !header.equals(columns)) {
+                return false;
+            }
+            List<String> record;
+            while ((record = parser.next()) != null) {
+                if (!record.isEmpty() && !record.get(0).isEmpty()) {
+                    completed.add(record.get(0));
+                }
+            }
+            completeBytes = parser.completeBytes;
+        }
+        if (completeBytes < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(completeBytes);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lector mínimo de registros RFC 4180. Sólo entrega registros terminados en salto de línea y
+     * lleva la cuenta de bytes UTF-8 hasta el final del último registro completo.
+     */
+    static final class RecordParser {
+        private final Reader reader;
+        long completeBytes = 0;
+        private long bytes = 0;
+
+        RecordParser(Reader reader) {
+            this.reader = reader;
+        }
+
+        List<String> next() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int c;
+            while ((c = read()) != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') {
+                            field.append('"');
+                            continue;
+                        }
+                        quoted = false;
+                        if (n == -1) {
+                            break;
+                        }
+                        c = n;
+                    } else {
+                        field.append((char) c);
+                        continue;
+                    }
+                }
+                if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    fields.add(field.toString());
+                    completeBytes = bytes;
+                    return fields;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            // Fin de archivo sin salto de línea: registro incompleto
+            return null;
+        }
+
+        private int read() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return -1;
+            }
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate((char) c)) {
+                // Cada mitad de un par sustituto cuenta la mitad de sus 4 bytes
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.test_ocr_sbw.utils;
+
+/**
+ * Distribución de varias imágenes chicas en un solo lienzo de detección (mosaico): una grilla de
+ * celdas iguales, cada imagen escalada para caber en la suya (sin deformarla, centrada) y
+ * separada de las vecinas por un margen negro, para que la detección no una texto de dos celdas.
+ * <p>
+ * Las cajas detectadas sobre el lienzo se asignan a la celda que las contiene por completo
+ * ({@link #cellOf}) y se llevan a coordenadas de la imagen original ({@link #toSourceX},
+ * {@link #toSourceY}). Una caja que cruza el borde de una celda no pertenece a ninguna imagen y
+ * se descarta.
+ */
+public final class MosaicLayout {
+
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private final int cols;
+    private final int rows;
+    private final int cellWidth;
+    private final int cellHeight;
+    // Por imagen: escala y posición de su esquina superior izquierda en el lienzo
+    private final float[] scales;
+    private final int[] lefts;
+    private final int[] tops;
+    private final int[] widths;
+    private final int[] heights;
+
+    private MosaicLayout(int canvasWidth, int canvasHeight, int cols, int rows, int gutter, int[] widths,
+                         int[] heights) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellWidth = canvasWidth / cols;
+        this.cellHeight = canvasHeight / rows;
+        this.widths = widths.clone();
+        this.heights = heights.clone();
+        int count = widths.length;
+        scales = new float[count];
+        lefts = new int[count];
+        tops = new int[count];
+        // El margen se reparte a ambos lados de cada celda
+        int innerWidth = Math.max(1, cellWidth - gutter);
+        int innerHeight = Math.max(1, cellHeight - gutter);
+        for (int i = 0; i < count; i++) {
+            float scale = Math.min(innerWidth / (float) widths[i], innerHeight / (float) heights[i]);
+            int drawnWidth = Math.max(1, Math.round(widths[i] * scale));
+            int drawnHeight = Math.max(1, Math.round(heights[i] * scale));
+            scales[i] = scale;
+            lefts[i] = (i % cols) * cellWidth + (cellWidth - drawnWidth) / 2;
+            tops[i] = (i / cols) * cellHeight + (cellHeight - drawnHeight) / 2;
+        }
+    }
+
+    /**
+     * Elige la grilla que deja las imágenes más grandes en un lienzo de
+     * {@code canvasWidth x canvasHeight}: se prueban todas las cantidades de columnas y se queda
+     * con la de mayor escala mínima entre las imágenes.
+     *
+     * @param widths  anchos de las imágenes, en el orden en que ocupan las celdas.
+     * @param heights altos de las imágenes.
+     * @param gutter  píxeles libres entre celdas vecinas.
+     */
+    public static MosaicLayout forImages(int canvasWidth, int canvasHeight, int[] widths, int[] heights,
+                                         int gutter) {
+        int count = widths.length;
+        if (count == 0 || heights.length != count) {
+            throw new IllegalArgumentException("Se necesita al menos una imagen con ancho y alto");
+        }
+        int bestCols = 1;
+        float bestScale = -1;
+        for (int cols = 1; cols <= count; cols++) {
+            int rows = (count + cols - 1) / cols;
+            float innerWidth = canvasWidth / cols - gutter;
+            float innerHeight = canvasHeight / rows - gutter;
+            if (innerWidth <= 0 || innerHeight <= 0) {
+                continue;
+            }
+            float minScale = Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                minScale = Math.min(minScale, Math.min(innerWidth / widths[i], innerHeight / heights[i]));
+            }
+            if (minScale > bestScale) {
+                bestScale = minScale;
+                bestCols = cols;
+            }
+        }
+        int rows = (count + bestCols - 1) / bestCols;
+        return new MosaicLayout(canvasWidth, canvasHeight, bestCols, rows, bestScale > 0 ? gutter : 0, widths,
+                heights);
+    }
+
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getImageCount() {
+        return scales.length;
+    }
+
+    /**
+     * Factor por el que se multiplica la imagen {@code index} al dibujarla.
+     */
+    public float getScale(int index) {
+        return scales[index];
+    }
+
+    /**
+     * Rectángulo donde se dibuja la imagen {@code index}: {left, top, right, bottom} en el lienzo.
+     */
+    public int[] getDrawRect(int index) {
+        return new int[]{lefts[index], tops[index],
+                lefts[index] + Math.max(1, Math.round(widths[index] * scales[index])),
+                tops[index] + Math.max(1, Math.round(heights[index] * scales[index]))};
+    }
+
+    /**
+     * Celda que contiene todos los puntos ({@code xs[i]}, {@code ys[i]}), o -1 si la caja cruza un
+     * borde, queda fuera del lienzo o cae en una celda sin imagen.
+     */
+    public int cellOf(int[] xs, int[] ys, int count) {
+        if (count <= 0) {
+            return -1;
+        }
+        int cell = cellAt(xs[0], ys[0]);
+        for (int i = 1; i < count && cell >= 0; i++) {
+            if (cellAt(xs[i], ys[i]) != cell) {
+                return -1;
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * Celda del punto, o -1 si está fuera de la grilla o de las celdas con imagen.
+     */
+    public int cellAt(int x, int y) {
+        if (x < 0 || y < 0) {
+            return -1;
+        }
+        int col = x / cellWidth;
+        int row = y / cellHeight;
+        if (col >= cols || row >= rows) {
+            return -1;
+        }
+        int cell = row * cols + col;
+        return cell < scales.length ? cell : -1;
+    }
+
+    /**
+     * Coordenada x del lienzo llevada a la imagen {@code index}, recortada a sus bordes.
+     */
+    public int toSourceX(int index, int x) {
+        int sx = Math.round((x - lefts[index]) / scales[index]);
+        return Math.max(0, Math.min(widths[index], sx));
+    }
+
+    /**
+     * Coordenada y del lienzo llevada a la imagen {@code index}, recortada a sus bordes.
+     */
+    public int toSourceY(int index, int y) {
+        int sy = Math.round((y - tops[index]) / scales[index]);
+        return Math.max(0, Math.min(heights[index], sy));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.test_ocr_sbw.utils;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filtro de patentes chilenas sobre el texto reconocido: formato nuevo (4 letras y 2 dígitos) o
+ * antiguo (2 letras y 4 dígitos). El texto completo debe ser la patente.
+ */
+public final class PlateFilter {
+
+    public static final Pattern CHILEAN_PLATE = Pattern.compile("^([A-Z]{4}[0-9]{2}|[A-Z]{2}[0-9]{4})$");
+    // Los mismos formatos para el decodificador CTC nativo: L = letra, D = dígito
+    public static final String CHILEAN_PLATE_GRAMMAR = "LLLLDD|LLDDDD";
+
+    private final Pattern pattern;
+
+    public PlateFilter() {
+        this(CHILEAN_PLATE);
+    }
+
+    public PlateFilter(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Devuelve la patente contenida en {@code text}, o una cadena vacía si no calza.
+     */
+    public String extract(String text) {
+        if (text == null) {
+            return "";
+        }
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(0) : "";
+    }
+
+    /**
+     * Mayúsculas y sin separadores: "ab-cd 12" queda "ABCD12". Sirve para el texto de motores que
+     * separan la patente en varias líneas y para nombres de archivo usados como etiqueta.
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : text.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]", "");
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public boolean matches(String text) {
+        return text != null && pattern.matcher(text).find();
+    }
+}
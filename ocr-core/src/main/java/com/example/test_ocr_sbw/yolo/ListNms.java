@@ -0,0 +1,60 @@
+package com.example.test_ocr_sbw.yolo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Implementación original de NMS sobre listas de {@link BoundingBox}. Se conserva como referencia
+ * para comparar resultados y tiempos con {@link NmsEngine}.
+ */
+public final class ListNms {
+
+    private ListNms() {
+        throw new UnsupportedOperationException("No se puede instanciar ListNms");
+    }
+
+    /**
+     * Aplica el algoritmo Non-Maximum Suppression (NMS) para filtrar cajas superpuestas.
+     */
+    public static List<BoundingBox> apply(List<BoundingBox> boxes, float iouThreshold) {
+        List<BoundingBox> sortedBoxes = new ArrayList<>(boxes);
+        Collections.sort(sortedBoxes, new Comparator<BoundingBox>() {
+            @Override
+            public int compare(BoundingBox b1, BoundingBox b2) {
+                return Float.compare(b2.getCnf(), b1.getCnf());
+            }
+        });
+        List<BoundingBox> selectedBoxes = new ArrayList<>();
+        while (!sortedBoxes.isEmpty()) {
+            BoundingBox first = sortedBoxes.get(0);
+            selectedBoxes.add(first);
+            sortedBoxes.remove(0);
+            Iterator<BoundingBox> iterator = sortedBoxes.iterator();
+            while (iterator.hasNext()) {
+                BoundingBox nextBox = iterator.next();
+                float iou = calculateIoU(first, nextBox);
+                if (iou >= iouThreshold) {
+                    iterator.remove();
+                }
+            }
+        }
+        return selectedBoxes;
+    }
+
+    /**
+     * Calcula la Intersección sobre Unión (IoU) entre dos cajas.
+     */
+    public static float calculateIoU(BoundingBox box1, BoundingBox box2) {
+        float x1 = Math.max(box1.getX1(), box2.getX1());
+        float y1 = Math.max(box1.getY1(), box2.getY1());
+        float x2 = Math.min(box1.getX2(), box2.getX2());
+        float y2 = Math.min(box1.getY2(), box2.getY2());
+        float intersectionArea = Math.max(0f, x2 - x1) * Math.max(0f, y2 - y1);
+        float box1Area = box1.getW() * box1.getH();
+        float box2Area = box2.getW() * box2.getH();
+        return intersectionArea / (box1Area + box2Area - intersectionArea);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.test_ocr_sbw.yolo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Interpretación de los nombres de clase de un modelo YOLO, sin dependencias de Android. La
+ * lectura de la metadata del modelo y de los assets queda en {@link MetaData}.
+ */
+public final class MetaDataParser {
+
+    private static final Pattern NAMES_PATTERN = Pattern.compile("'names': \\{(.*?)\\}", Pattern.DOTALL);
+    // Se admiten cadenas entre comillas dobles o simples
+    private static final Pattern VALUE_PATTERN = Pattern.compile("\"([^\"]*)\"|'([^']*)'");
+
+    // Evitamos la instanciación
+    private MetaDataParser() {
+        throw new UnsupportedOperationException("No se puede instanciar MetaDataParser");
+    }
+
+    /**
+     * Extrae los nombres del bloque {@code 'names': {0: 'A', 1: 'B', ...}} de la metadata
+     * exportada por Ultralytics.
+     *
+     * @return Lista de nombres o una lista vacía si no hay bloque de nombres.
+     */
+    public static List<String> parseNames(String metadata) {
+        Matcher matcher = NAMES_PATTERN.matcher(metadata);
+        if (!matcher.find()) {
+            return Collections.emptyList();
+        }
+        String namesContent = matcher.group(1);
+        if (namesContent == null) {
+            return Collections.emptyList();
+        }
+        Matcher valueMatcher = VALUE_PATTERN.matcher(namesContent);
+        List<String> list = new ArrayList<>();
+        while (valueMatcher.find()) {
+            // Si el grupo 1 está vacío se usa el grupo 2
+            String value = valueMatcher.group(1);
+            if (value == null || value.isEmpty()) {
+                value = valueMatcher.group(2);
+            }
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Lee un archivo de labels con un nombre por línea, hasta la primera línea vacía.
+     */
+    public static List<String> readLabels(Reader input) throws IOException {
+        List<String> labels = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            labels.add(line);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.test_ocr_sbw.yolo;
+
+import java.util.Arrays;
+
+/**
+ * Non-Maximum Suppression sobre arreglos primitivos paralelos (coordenadas, puntajes y clases).
+ * Los candidatos se ordenan por índice (una clave {@code long} por candidato, sin objetos), las
+ * cajas descartadas se marcan en un bitset y no se mueve ningún elemento, así que no hay el costo
+ * cuadrático de {@code ArrayList.remove}. Opcionalmente:
+ * <ul>
+ *     <li>{@link #setPerClass(boolean)}: una caja sólo suprime cajas de su misma clase.</li>
+ *     <li>{@link #setGridCellSize(float)}: las cajas se agrupan en una grilla espacial y cada caja
+ *     conservada sólo se compara con las que comparten alguna celda.</li>
+ * </ul>
+ * El resultado es el mismo que el NMS voraz de {@link ListNms}: se recorren las cajas de mayor a
+ * menor puntaje (empates en orden de inserción) y se descartan las que tienen IoU mayor o igual
+ * al umbral con una caja ya conservada.
+ * <p>
+ * Los arreglos se reutilizan entre llamadas; una instancia no es segura para varios hilos.
+ */
+public final class NmsEngine {
+
+    // Límite de celdas por lado de la grilla, para no reservar grillas enormes
+    private static final int MAX_GRID_SIDE = 64;
+
+    private float iouThreshold;
+    private boolean perClass = false;
+    private float gridCellSize = 0f;
+
+    private float[] x1 = new float[0];
+    private float[] y1 = new float[0];
+    private float[] x2 = new float[0];
+    private float[] y2 = new float[0];
+    private float[] scores = new float[0];
+    private float[] areas = new float[0];
+    private int[] classes = new int[0];
+    private int count = 0;
+
+    private long[] sortKeys = new long[0];
+    private int[] order = new int[0];
+    // Posición de cada candidato en el orden por puntaje
+    private int[] rank = new int[0];
+    private long[] suppressed = new long[0];
+    private int[] kept = new int[0];
+    private int keptCount = 0;
+
+    // Grilla en formato CSR: cellStart[c] .. cellStart[c + 1] indexa cellItems
+    private int[] cellStart = new int[0];
+    private int[] cellItems = new int[0];
+    private int[] cellFill = new int[0];
+    private int[] boxCells = new int[0];
+
+    public NmsEngine(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+    }
+
+    public NmsEngine setIouThreshold(float iouThreshold) {
+        this.iouThreshold = iouThreshold;
+        return this;
+    }
+
+    public NmsEngine setPerClass(boolean perClass) {
+        this.perClass = perClass;
+        return this;
+    }
+
+    /**
+     * Tamaño de celda de la grilla espacial, en las mismas unidades que las coordenadas; 0
+     * desactiva la grilla. Conviene un valor del orden del tamaño típico de una caja.
+     */
+    public NmsEngine setGridCellSize(float gridCellSize) {
+        this.gridCellSize = gridCellSize;
+        return this;
+    }
+
+    /** Descarta los candidatos cargados, conservando los arreglos reservados. */
+    public void clear() {
+        count = 0;
+        keptCount = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Agrega un candidato y devuelve su índice.
+     */
+    public int add(float left, float top, float right, float bottom, float score, int cls) {
+        if (count == x1.length) {
+            grow(Math.max(64, count * 2));
+        }
+        x1[count] = left;
+        y1[count] = top;
+        x2[count] = right;
+        y2[count] = bottom;
+        scores[count] = score;
+        classes[count] = cls;
+        areas[count] = Math.max(0f, right - left) * Math.max(0f, bottom - top);
+        return count++;
+    }
+
+    /**
+     * Ejecuta el NMS sobre los candidatos cargados.
+     *
+     * @return cantidad de cajas conservadas; ver {@link #getKept(int)}.
+     */
+    public int run() {
+        keptCount = 0;
+        if (count == 0) {
+            return 0;
+        }
+        sortByScore();
+        int words = (count + 63) >>> 6;
+        if (suppressed.length < words) {
+            suppressed = new long[words];
+        } else {
+            Arrays.fill(suppressed, 0, words, 0L);
+        }
+        // Con umbral <= 0 también se suprimen cajas disjuntas, así que la grilla no aplica
+        if (gridCellSize > 0f && iouThreshold > 0f && count > 1) {
+            runWithGrid();
+        } else {
+            runLinear();
+        }
+        return keptCount;
+    }
+
+    /**
+     * Índice (según {@link #add}) de la {@code i}-ésima caja conservada, en orden de puntaje.
+     */
+    public int getKept(int i) {
+        return kept[i];
+    }
+
+    public int getKeptCount() {
+        return keptCount;
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    public int getClass(int index) {
+        return classes[index];
+    }
+
+    private void runLinear() {
+        for (int r = 0; r < count; r++) {
+            int i = order[r];
+            if (isSuppressed(i)) {
+                continue;
+            }
+            kept[keptCount++] = i;
+            for (int s = r + 1; s < count; s++) {
+                int j = order[s];
+                if (!isSuppressed(j) && overlaps(i, j)) {
+                    suppress(j);
+                }
+            }
+        }
+    }
+
+    private void runWithGrid() {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, x1[i]);
+            minY = Math.min(minY, y1[i]);
+            maxX = Math.max(maxX, x2[i]);
+            maxY = Math.max(maxY, y2[i]);
+        }
+        float cell = gridCellSize;
+        int cols = clampSide((int) ((maxX - minX) / cell) + 1);
+        int rows = clampSide((int) ((maxY - minY) / cell) + 1);
+        float cellW = Math.max((maxX - minX) / cols, Float.MIN_NORMAL);
+        float cellH = Math.max((maxY - minY) / rows, Float.MIN_NORMAL);
+        int cells = cols * rows;
+
+        // Cada caja ocupa el rectángulo de celdas [c0, c1] x [r0, r1]; boxCells guarda los límites
+        if (boxCells.length < count * 4) {
+            boxCells = new int[count * 4];
+        }
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            int c0 = clampIndex((int) ((x1[i] - minX) / cellW), cols);
+            int c1 = clampIndex((int) ((x2[i] - minX) / cellW), cols);
+            int r0 = clampIndex((int) ((y1[i] - minY) / cellH), rows);
+            int r1 = clampIndex((int) ((y2[i] - minY) / cellH), rows);
+            boxCells[i * 4] = c0;
+            boxCells[i * 4 + 1] = c1;
+            boxCells[i * 4 + 2] = r0;
+            boxCells[i * 4 + 3] = r1;
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellStart[r * cols + c + 1]++;
+                }
+            }
+            total += (c1 - c0 + 1) * (r1 - r0 + 1);
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        if (cellItems.length < total) {
+            cellItems = new int[total];
+        }
+        // Se insertan en orden de puntaje para que cada celda quede ordenada por rango
+        if (cellFill.length < cells) {
+            cellFill = new int[cells];
+        }
+        System.arraycopy(cellStart, 0, cellFill, 0, cells);
+        for (int r = 0; r < count; r++) {
+            int i = order[r];
+            int base = i * 4;
+            for (int row = boxCells[base + 2]; row <= boxCells[base + 3]; row++) {
+                for (int col = boxCells[base]; col <= boxCells[base + 1]; col++) {
+                    cellItems[cellFill[row * cols + col]++] = i;
+                }
+            }
+        }
+
+        for (int r = 0; r < count; r++) {
+            int i = order[r];
+            if (isSuppressed(i)) {
+                continue;
+            }
+            kept[keptCount++] = i;
+            int base = i * 4;
+            for (int row = boxCells[base + 2]; row <= boxCells[base + 3]; row++) {
+                for (int col = boxCells[base]; col <= boxCells[base + 1]; col++) {
+                    int c = row * cols + col;
+                    for (int k = cellStart[c], end = cellStart[c + 1]; k < end; k++) {
+                        int j = cellItems[k];
+                        if (rank[j] > r && !isSuppressed(j) && overlaps(i, j)) {
+                            suppress(j);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean overlaps(int i, int j) {
+        if (perClass && classes[i] != classes[j]) {
+            return false;
+        }
+        float w = Math.min(x2[i], x2[j]) - Math.max(x1[i], x1[j]);
+        if (w <= 0f) {
+            return iouThreshold <= 0f;
+        }
+        float h = Math.min(y2[i], y2[j]) - Math.max(y1[i], y1[j]);
+        if (h <= 0f) {
+            return iouThreshold <= 0f;
+        }
+        float intersection = w * h;
+        return intersection / (areas[i] + areas[j] - intersection) >= iouThreshold;
+    }
+
+    /**
+     * Ordena por puntaje descendente; empates en orden de inserción. La clave combina los bits
+     * del puntaje (transformados para que el orden de enteros coincida con el de floats) con el
+     * índice, y se ordena un {@code long[]} sin comparadores ni boxing.
+     */
+    private void sortByScore() {
+        for (int i = 0; i < count; i++) {
+            int bits = Float.floatToIntBits(scores[i]);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            sortKeys[i] = ((long) bits << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(sortKeys, 0, count);
+        for (int r = 0; r < count; r++) {
+            int i = Integer.MAX_VALUE - (int) sortKeys[count - 1 - r];
+            order[r] = i;
+            rank[i] = r;
+        }
+    }
+
+    private boolean isSuppressed(int i) {
+        return (suppressed[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void suppress(int i) {
+        suppressed[i >>> 6] |= 1L << i;
+    }
+
+    private static int clampSide(int side) {
+        return Math.max(1, Math.min(MAX_GRID_SIDE, side));
+    }
+
+    private static int clampIndex(int index, int side) {
+        return Math.max(0, Math.min(side - 1, index));
+    }
+
+    private void grow(int capacity) {
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        areas = Arrays.copyOf(areas, capacity);
+        classes = Arrays.copyOf(classes, capacity);
+        sortKeys = Arrays.copyOf(sortKeys, capacity);
+        order = Arrays.copyOf(order, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+        kept = Arrays.copyOf(kept, capacity);
+    }
+}
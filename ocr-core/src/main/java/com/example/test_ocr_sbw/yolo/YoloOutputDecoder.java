@@ -0,0 +1,150 @@
+package com.example.test_ocr_sbw.yolo;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decodifica la salida {@code [numChannel, numElements]} de YOLO (filas 0-3: cx, cy, w, h; filas
+ * 4..: puntaje de cada clase) directamente desde el buffer del intérprete, sin copiarla.
+ * <p>
+ * Las filas de clases se recorren de forma secuencial (una fila completa por clase) manteniendo
+ * el mejor puntaje por anchor en arreglos primitivos, en vez de saltar {@code numElements}
+ * posiciones por cada clase de cada anchor. Sólo los anchors que superan el umbral leen sus
+ * coordenadas y pasan al {@link NmsEngine}; los {@link BoundingBox} se crean únicamente para las
+ * cajas que sobreviven al NMS. Con un {@link ExecutorService} el rango de anchors se divide en
+ * bloques contiguos, uno por hilo.
+ * <p>
+ * El resultado es el mismo que el {@code bestBox} original: puntaje estrictamente mayor al umbral,
+ * empate de clases a favor de la primera y cajas fuera de [0, 1] descartadas.
+ */
+public final class YoloOutputDecoder {
+
+    private final int numChannel;
+    private final int numElements;
+    private final float confidenceThreshold;
+    private final NmsEngine nms;
+
+    private final float[] bestScore;
+    private final int[] bestClass;
+    // Anchor de cada candidato cargado en el NMS
+    private final int[] candidateAnchor;
+
+    private ExecutorService executor;
+    private int parallelism = 1;
+
+    public YoloOutputDecoder(int numChannel, int numElements, float confidenceThreshold, float iouThreshold) {
+        this.numChannel = numChannel;
+        this.numElements = numElements;
+        this.confidenceThreshold = confidenceThreshold;
+        this.nms = new NmsEngine(iouThreshold);
+        this.bestScore = new float[numElements];
+        this.bestClass = new int[numElements];
+        this.candidateAnchor = new int[numElements];
+    }
+
+    /**
+     * Reparte el barrido de puntajes en {@code parallelism} bloques sobre {@code executor}. Con
+     * {@code null} o {@code parallelism <= 1} el barrido es secuencial en el hilo llamador.
+     */
+    public void setExecutor(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public NmsEngine getNmsEngine() {
+        return nms;
+    }
+
+    /**
+     * Decodifica la salida y aplica NMS.
+     *
+     * @param output salida del intérprete, leída con accesos absolutos (no cambia su posición).
+     * @param labels nombres de clase; las clases fuera de rango se nombran "Unknown".
+     * @return cajas conservadas, ordenadas por puntaje descendente; vacía si no hay detecciones.
+     */
+    public List<BoundingBox> decode(FloatBuffer output, List<String> labels) throws InterruptedException {
+        scanScores(output);
+
+        nms.clear();
+        final int n = numElements;
+        for (int c = 0; c < n; c++) {
+            if (bestClass[c] < 0) {
+                continue;
+            }
+            float cx = output.get(c);
+            float cy = output.get(c + n);
+            float w = output.get(c + n * 2);
+            float h = output.get(c + n * 3);
+            float x1 = cx - (w / 2f);
+            float y1 = cy - (h / 2f);
+            float x2 = cx + (w / 2f);
+            float y2 = cy + (h / 2f);
+            if (x1 < 0f || x1 > 1f) continue;
+            if (y1 < 0f || y1 > 1f) continue;
+            if (x2 < 0f || x2 > 1f) continue;
+            if (y2 < 0f || y2 > 1f) continue;
+            candidateAnchor[nms.add(x1, y1, x2, y2, bestScore[c], bestClass[c])] = c;
+        }
+
+        int kept = nms.run();
+        List<BoundingBox> boxes = new ArrayList<>(kept);
+        for (int k = 0; k < kept; k++) {
+            int c = candidateAnchor[nms.getKept(k)];
+            float cx = output.get(c);
+            float cy = output.get(c + n);
+            float w = output.get(c + n * 2);
+            float h = output.get(c + n * 3);
+            int cls = bestClass[c];
+            String clsName = (cls < labels.size()) ? labels.get(cls) : "Unknown";
+            boxes.add(new BoundingBox(cx - (w / 2f), cy - (h / 2f), cx + (w / 2f), cy + (h / 2f),
+                    cx, cy, w, h, bestScore[c], cls, clsName));
+        }
+        return boxes;
+    }
+
+    private void scanScores(final FloatBuffer output) throws InterruptedException {
+        if (executor == null || parallelism <= 1) {
+            scanRange(output, 0, numElements);
+            return;
+        }
+        final int chunk = (numElements + parallelism - 1) / parallelism;
+        final CountDownLatch done = new CountDownLatch(parallelism);
+        for (int t = 0; t < parallelism; t++) {
+            final int from = Math.min(numElements, t * chunk);
+            final int to = Math.min(numElements, from + chunk);
+            executor.execute(() -> {
+                try {
+                    scanRange(output, from, to);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * Barre las filas de clase para los anchors {@code [from, to)}. Cada hilo escribe sólo su
+     * rango de {@code bestScore}/{@code bestClass}; los accesos absolutos al buffer no comparten
+     * estado entre hilos.
+     */
+    private void scanRange(FloatBuffer output, int from, int to) {
+        Arrays.fill(bestScore, from, to, confidenceThreshold);
+        Arrays.fill(bestClass, from, to, -1);
+        for (int j = 4; j < numChannel; j++) {
+            final int cls = j - 4;
+            int index = j * numElements + from;
+            for (int c = from; c < to; c++, index++) {
+                float score = output.get(index);
+                if (score > bestScore[c]) {
+                    bestScore[c] = score;
+                    bestClass[c] = cls;
+                }
+            }
+        }
+    }
+}
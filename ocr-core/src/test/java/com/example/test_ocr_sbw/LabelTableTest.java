@@ -0,0 +1,104 @@
+package com.example.test_ocr_sbw;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class LabelTableTest {
+
+    // Gradle corre los tests desde el directorio del módulo
+    private static final File DICTIONARY = new File("../app/src/main/assets/labels/ppocr_keys_v1.txt");
+
+    private static LabelTable load(String dictionary) throws IOException {
+        return LabelTable.load(new ByteArrayInputStream(dictionary.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Carga de etiquetas original de Predictor: "black", una etiqueta por línea y " " al final.
+     */
+    private static List<String> baselineLabels(byte[] dictionary) {
+        List<String> labels = new ArrayList<>();
+        labels.add("black");
+        for (String content : new String(dictionary, StandardCharsets.UTF_8).split("\n")) {
+            labels.add(content);
+        }
+        labels.add(" ");
+        return labels;
+    }
+
+    @Test
+    public void blankFirstAndSpaceLast() throws IOException {
+        LabelTable table = load("A\nB\nab\n");
+        assertEquals(5, table.size());
+        assertEquals("black", table.get(0));
+        assertEquals("A", table.get(1));
+        assertEquals("ab", table.get(3));
+        assertEquals(" ", table.get(4));
+    }
+
+    @Test
+    public void decodeJoinsLabelsAndReplacesUnknownIndices() throws IOException {
+        LabelTable table = load("ab\nc\nééé\n");
+        StringBuilder out = new StringBuilder("x");
+        int[] indices = {1, 2, 3, -1, 99, 2, 4, 1};
+
+        // Sólo se decodifican los primeros count índices; los de fuera de la tabla se cuentan y
+        // se reemplazan por UNKNOWN, sin cortar el resto, como en la carga original
+        int unknown = table.decode(indices, 7, out);
+        assertEquals(2, unknown);
+        assertEquals("xabcééé" + LabelTable.UNKNOWN + LabelTable.UNKNOWN + "c ", out.toString());
+        assertEquals(0, table.decode(indices, 0, out));
+    }
+
+    @Test
+    public void indexOfMatchesWholeLabels() throws IOException {
+        LabelTable table = load("AB\nA\n1\nA\n");
+        assertEquals(0, table.indexOf("black"));
+        assertEquals(1, table.indexOf("AB"));
+        // La primera coincidencia exacta, no un prefijo de otra etiqueta
+        assertEquals(2, table.indexOf("A"));
+        assertEquals(3, table.indexOf("1"));
+        assertEquals(-1, table.indexOf("B"));
+        assertEquals(5, table.indexOf(" "));
+    }
+
+    /**
+     * Con el diccionario de la app: mismas etiquetas que la carga original, y los 36 caracteres
+     * de patente que usa Predictor.setPlateDecoding están, cada uno en su índice original.
+     */
+    @Test
+    public void appDictionaryMatchesBaselineLoader() throws IOException {
+        assumeTrue(DICTIONARY.isFile());
+        byte[] bytes = Files.readAllBytes(DICTIONARY.toPath());
+        List<String> baseline = baselineLabels(bytes);
+        LabelTable table;
+        try (InputStream in = new FileInputStream(DICTIONARY)) {
+            table = LabelTable.load(in);
+        }
+
+        assertEquals(baseline.size(), table.size());
+        for (int i = 0; i < baseline.size(); i++) {
+            assertEquals(baseline.get(i), table.get(i));
+        }
+        String plateAlphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int i = 0; i < plateAlphabet.length(); i++) {
+            String label = String.valueOf(plateAlphabet.charAt(i));
+            int index = table.indexOf(label);
+            assertEquals(label, baseline.indexOf(label), index);
+            assertEquals(label, table.get(index));
+        }
+        assertEquals(25, table.indexOf("2"));
+        assertEquals(1221, table.indexOf("A"));
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.test_ocr_sbw;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class OcrResultReaderTest {
+
+    private static final float[] STAGE_MS = {1.5f, 20f, 3.25f, 0.5f, 2f, 11f, 0.75f, 39f};
+
+    private static final class Result {
+        final int[] points;
+        final int[] words;
+        final float score;
+        final int clsLabel;
+        final float clsScore;
+        final float recTime;
+
+        Result(int[] points, int[] words, float score, int clsLabel, float clsScore, float recTime) {
+            this.points = points;
+            this.words = words;
+            this.score = score;
+            this.clsLabel = clsLabel;
+            this.clsScore = clsScore;
+            this.recTime = recTime;
+        }
+    }
+
+    // Cajas de 4 y 5 puntos y un resultado sin puntos ni caracteres, para que los registros
+    // tengan largos distintos
+    private static final Result[] RESULTS = {
+            new Result(new int[]{10, 20, 110, 20, 110, 60, 10, 60}, new int[]{3, 7}, 0.9f, 0, 0.99f, 4.5f),
+            new Result(new int[0], new int[0], 0f, 1, 0.5f, 0f),
+            new Result(new int[]{0, 0, 5, 1, 9, 9, 4, 12, 1, 7}, new int[]{11, 12, 13, 14, 15, 16}, 0.75f, 1,
+                    0.8f, 2.25f),
+    };
+
+    @Before
+    public void nativeOrderIsLittleEndian() {
+        // native.cpp escribe en orden nativo, que es little-endian en todas las ABI de Android
+        assumeTrue(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Escribe los resultados como {@code serialize_results} de native.cpp; devuelve el largo.
+     */
+    private static int serialize(ByteBuffer out, Result[] results, boolean withStages) {
+        out.putInt(results.length);
+        for (Result r : results) {
+            out.putInt(r.points.length / 2);
+            out.putInt(r.words.length);
+            out.putFloat(r.score);
+            out.putInt(r.clsLabel);
+            out.putFloat(r.clsScore);
+            out.putFloat(r.recTime);
+            for (int value : r.points) {
+                out.putInt(value);
+            }
+            for (int word : r.words) {
+                out.putInt(word);
+            }
+        }
+        if (withStages) {
+            out.putInt(STAGE_MS.length);
+            for (float ms : STAGE_MS) {
+                out.putFloat(ms);
+            }
+        }
+        return out.position();
+    }
+
+    private static ByteBuffer newBuffer() {
+        // Más grande que lo escrito, como el buffer directo que se reutiliza entre inferencias
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0x7F);
+        }
+        return buffer;
+    }
+
+    private static void assertResult(Result expected, OcrResultReader reader) {
+        assertEquals(expected.points.length / 2, reader.getPointCount());
+        assertEquals(expected.words.length, reader.getWordCount());
+        assertEquals(expected.score, reader.getConfidence(), 0);
+        assertEquals(expected.clsLabel, reader.getClsIdx());
+        assertEquals(expected.clsScore, reader.getClsConfidence(), 0);
+        assertEquals(expected.recTime, reader.getRecTime(), 0);
+        for (int p = 0; p < reader.getPointCount(); p++) {
+            assertEquals(expected.points[2 * p], reader.getPointX(p));
+            assertEquals(expected.points[2 * p + 1], reader.getPointY(p));
+        }
+        for (int w = 0; w < reader.getWordCount(); w++) {
+            assertEquals(expected.words[w], reader.getWordIndex(w));
+        }
+        // Con desplazamiento en el destino, como al llenar arreglos compartidos
+        int[] points = new int[expected.points.length + 1];
+        reader.copyPoints(points, 1);
+        assertArrayEquals(expected.points, Arrays.copyOfRange(points, 1, points.length));
+        int[] words = new int[expected.words.length + 2];
+        reader.copyWordIndices(words, 2);
+        assertArrayEquals(expected.words, Arrays.copyOfRange(words, 2, words.length));
+    }
+
+    @Test
+    public void readsEveryFieldOfVariableLengthResults() {
+        ByteBuffer buffer = newBuffer();
+        int length = serialize(buffer, RESULTS, true);
+        OcrResultReader reader = new OcrResultReader().wrap(buffer, length);
+
+        assertEquals(RESULTS.length, reader.size());
+        for (int i = 0; i < RESULTS.length; i++) {
+            assertResult(RESULTS[i], reader.moveTo(i));
+        }
+        // moveTo no depende del orden de recorrido
+        assertResult(RESULTS[2], reader.moveTo(2));
+        assertResult(RESULTS[0], reader.moveTo(0));
+
+        StageTimings timings = new StageTimings();
+        reader.readStageTimings(timings);
+        for (int i = 0; i < StageTimings.NATIVE_STAGE_COUNT; i++) {
+            assertEquals(STAGE_MS[i], timings.get(i), 0);
+        }
+    }
+
+    @Test
+    public void rewrapReusesTheReaderForAnotherInference() {
+        ByteBuffer buffer = newBuffer();
+        OcrResultReader reader = new OcrResultReader();
+        reader.wrap(buffer, serialize(buffer, RESULTS, true));
+
+        buffer.clear();
+        Result[] next = {RESULTS[2]};
+        reader.wrap(buffer, serialize(buffer, next, false));
+        assertEquals(1, reader.size());
+        assertResult(RESULTS[2], reader.moveTo(0));
+        // Sin bloque de etapas los tiempos quedan como estaban
+        StageTimings timings = new StageTimings();
+        timings.set(StageTimings.DET_INFER, 42f);
+        reader.readStageTimings(timings);
+        assertEquals(42f, timings.get(StageTimings.DET_INFER), 0);
+        assertEquals(0f, timings.get(StageTimings.NATIVE_TOTAL), 0);
+    }
+
+    @Test
+    public void emptyBufferHasNoResults() {
+        ByteBuffer buffer = newBuffer();
+        assertEquals(0, new OcrResultReader().wrap(buffer, 0).size());
+        assertEquals(0, new OcrResultReader().wrap(buffer, serialize(buffer, new Result[0], true)).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void truncatedResultsAreRejected() {
+        ByteBuffer buffer = newBuffer();
+        int length = serialize(buffer, RESULTS, false);
+        new OcrResultReader().wrap(buffer, length - 4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void moveToOutOfRangeThrows() {
+        ByteBuffer buffer = newBuffer();
+        new OcrResultReader().wrap(buffer, serialize(buffer, RESULTS, true)).moveTo(RESULTS.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonNativeOrderIsRejected() {
+        new OcrResultReader().wrap(ByteBuffer.allocateDirect(64).order(ByteOrder.BIG_ENDIAN), 4);
+    }
+}
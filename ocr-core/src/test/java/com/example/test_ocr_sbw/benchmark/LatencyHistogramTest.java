@@ -0,0 +1,47 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordMicros(ms * 1000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1.0, histogram.getMinMs(), 1e-9);
+        assertEquals(100.0, histogram.getMaxMs(), 1e-9);
+        assertEquals(50.0, histogram.getPercentileMs(50), 50.0 * 0.04);
+        assertEquals(90.0, histogram.getPercentileMs(90), 90.0 * 0.04);
+        assertEquals(99.0, histogram.getPercentileMs(99), 99.0 * 0.04);
+        assertEquals(50.5, histogram.getMeanMs(), 1e-6);
+        assertEquals(28.866, histogram.getStdDevMs(), 1e-3);
+    }
+
+    @Test
+    public void addMergesSamples() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.recordMicros(10);
+        b.recordMicros(20_000);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(0.010, a.getMinMs(), 1e-9);
+        assertEquals(20.0, a.getMaxMs(), 1e-9);
+    }
+
+    @Test
+    public void bucketsAreMonotonic() {
+        int previous = -1;
+        for (long micros = 0; micros < 1_000_000L; micros += 7) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertEquals(true, index >= previous);
+            assertEquals(true, LatencyHistogram.bucketMidpoint(index) >= micros - micros / 32);
+            previous = index;
+        }
+    }
+}
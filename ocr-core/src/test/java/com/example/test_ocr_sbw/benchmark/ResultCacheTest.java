@@ -0,0 +1,91 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveReopenWithEscapedFields() throws Exception {
+        File dir = folder.newFolder("cache");
+        String[] fields = {"AB\tCD", "two\nlines", "100%", ""};
+        try (ResultCache cache = ResultCache.open(dir, 1 << 20)) {
+            cache.put("k1", fields);
+            assertNull(cache.get("missing"));
+            assertEquals(1, cache.getMisses());
+        }
+        try (ResultCache cache = ResultCache.open(dir, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(fields, cache.get("k1"));
+            assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAcrossReopen() throws Exception {
+        File dir = folder.newFolder("cache");
+        long maxBytes;
+        try (ResultCache cache = ResultCache.open(dir, Long.MAX_VALUE)) {
+            cache.put("a", new String[]{"1"});
+            maxBytes = cache.getBytes() * 2;
+        }
+        try (ResultCache cache = ResultCache.open(dir, maxBytes)) {
+            cache.put("b", new String[]{"2"});
+            // El acceso a "a" la vuelve la más reciente: al entrar "c" sale "b"
+            cache.get("a");
+            cache.put("c", new String[]{"3"});
+            assertEquals(2, cache.size());
+            assertNull(cache.get("b"));
+        }
+        try (ResultCache cache = ResultCache.open(dir, maxBytes)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(new String[]{"1"}, cache.get("a"));
+            assertArrayEquals(new String[]{"3"}, cache.get("c"));
+        }
+    }
+
+    @Test
+    public void truncatedLastLineIsDiscarded() throws Exception {
+        File dir = folder.newFolder("cache");
+        try (ResultCache cache = ResultCache.open(dir, 1 << 20)) {
+            cache.put("a", new String[]{"ABCD12", "0.9"});
+        }
+        // Alta cortada al vaciar el búfer: tiene clave y campos pero le falta el último y el salto
+        File journal = new File(dir, "journal.txt");
+        try (OutputStream out = new FileOutputStream(journal, true)) {
+            out.write("P\tb\tWXYZ".getBytes(StandardCharsets.UTF_8));
+        }
+        try (ResultCache cache = ResultCache.open(dir, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertNull(cache.get("b"));
+            cache.put("c", new String[]{"LLDD10", "0.8"});
+        }
+        // La cola descartada no se pega a la línea siguiente
+        try (ResultCache cache = ResultCache.open(dir, 1 << 20)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(new String[]{"ABCD12", "0.9"}, cache.get("a"));
+            assertArrayEquals(new String[]{"LLDD10", "0.8"}, cache.get("c"));
+        }
+    }
+
+    @Test
+    public void keyDependsOnEveryPart() {
+        assertEquals(ResultCache.key("img", "paddle"), ResultCache.key("img", "paddle"));
+        assertNotEquals(ResultCache.key("img", "paddle"), ResultCache.key("img", "yolo"));
+        assertNotEquals(ResultCache.key("ab", "c"), ResultCache.key("a", "bc"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.test_ocr_sbw.benchmark;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SweepMatrixTest {
+
+    private static SweepMatrix.Row row(String engine, String threads, long latencyMs, double imagesPerSecond,
+                                       int correct) {
+        SweepMatrix.Row row = new SweepMatrix.Row(engine, Collections.singletonMap("threads", threads));
+        row.latency.recordMicros(latencyMs * 1000);
+        row.imagesPerSecond = imagesPerSecond;
+        row.images = 100;
+        row.labeled = 100;
+        row.correct = correct;
+        return row;
+    }
+
+    @Test
+    public void dominatedRowsAreLeftOutOfTheFront() {
+        SweepMatrix matrix = new SweepMatrix();
+        SweepMatrix.Row fast = row("Paddle", "4", 50, 20, 80);
+        SweepMatrix.Row accurate = row("Paddle", "2", 90, 11, 95);
+        SweepMatrix.Row worse = row("Paddle", "1", 120, 8, 90);
+        SweepMatrix.Row otherEngine = row("YOLO", "4", 10, 100, 10);
+        matrix.add(fast);
+        matrix.add(accurate);
+        matrix.add(worse);
+        matrix.add(otherEngine);
+
+        List<SweepMatrix.Row> front = matrix.paretoFront("Paddle");
+        assertEquals(2, front.size());
+        assertTrue(front.contains(fast));
+        assertTrue(front.contains(accurate));
+        assertFalse(front.contains(worse));
+        assertSame(otherEngine, matrix.recommend("YOLO"));
+    }
+
+    @Test
+    public void higherThroughputKeepsASlowerRowInTheFront() {
+        // Dos instancias: cada imagen tarda más, pero con varias en curso salen más por segundo
+        SweepMatrix matrix = new SweepMatrix();
+        SweepMatrix.Row oneInstance = row("Paddle", "4", 50, 18, 90);
+        SweepMatrix.Row twoInstances = row("Paddle", "2", 70, 27, 90);
+        matrix.add(oneInstance);
+        matrix.add(twoInstances);
+
+        List<SweepMatrix.Row> front = matrix.paretoFront("Paddle");
+        assertEquals(2, front.size());
+        assertSame(oneInstance, matrix.recommend("Paddle"));
+    }
+
+    @Test
+    public void recommendationPrefersQualityThenLatency() {
+        SweepMatrix matrix = new SweepMatrix();
+        matrix.add(row("Paddle", "1", 200, 5, 95));
+        SweepMatrix.Row almostAsGood = row("Paddle", "4", 60, 16, 95);
+        matrix.add(almostAsGood);
+        matrix.add(row("Paddle", "2", 40, 25, 70));
+
+        assertSame(almostAsGood, matrix.recommend("Paddle"));
+        assertNull(matrix.recommend("MLKit"));
+    }
+
+    @Test
+    public void csvHasOneColumnPerParameterAndMarksTheRecommendation() {
+        SweepMatrix matrix = new SweepMatrix();
+        matrix.add(row("Paddle", "4", 50, 20, 80));
+        SweepMatrix.Row failed = row("Paddle", "1", 10, 0, 0);
+        failed.errors = failed.images;
+        matrix.add(failed);
+
+        String[] lines = matrix.toCsv().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("Engine,threads,Images,"));
+        assertTrue(lines[0].endsWith(",Pareto,Recommended"));
+        assertTrue(lines[1].startsWith("Paddle,4,100,0,"));
+        assertTrue(lines[1].endsWith(",0.800,0.000,1,1"));
+        // Una configuración que falló en todas las imágenes no entra al frente
+        assertTrue(lines[2].endsWith(",0,0"));
+    }
+}
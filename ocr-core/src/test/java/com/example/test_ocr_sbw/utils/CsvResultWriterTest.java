@@ -0,0 +1,68 @@
+package com.example.test_ocr_sbw.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvResultWriterTest {
+
+    private static final List<String> COLUMNS = Arrays.asList("FileName", "Text");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void escapesSpecialCharacters() {
+        assertEquals("plain", CsvResultWriter.escape("plain"));
+        assertEquals("\"a,b\"", CsvResultWriter.escape("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", CsvResultWriter.escape("say \"hi\""));
+        assertEquals("\"two\nlines\"", CsvResultWriter.escape("two\nlines"));
+    }
+
+    @Test
+    public void resumeSkipsWrittenRowsAndDropsPartialLine() throws Exception {
+        File file = folder.newFile("results.csv");
+        try (CsvResultWriter writer = CsvResultWriter.open(file, COLUMNS, false)) {
+            writer.writeRow(Arrays.asList("a,1.jpg", "ABCD12"));
+            writer.writeRow(Arrays.asList("b.jpg", "multi\nline"));
+        }
+        // Simula una caída a mitad de fila
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("c.jpg,TRUNC".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (CsvResultWriter writer = CsvResultWriter.open(file, COLUMNS, true)) {
+            assertTrue(writer.isCompleted("a,1.jpg"));
+            assertTrue(writer.isCompleted("b.jpg"));
+            assertFalse(writer.isCompleted("c.jpg"));
+            writer.writeRow(Arrays.asList("c.jpg", "ñandú"));
+        }
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals("FileName,Text\r\n\"a,1.jpg\",ABCD12\r\nb.jpg,\"multi\nline\"\r\nc.jpg,ñandú\r\n", content);
+    }
+
+    @Test
+    public void differentHeaderStartsOver() throws Exception {
+        File file = folder.newFile("results.csv");
+        try (CsvResultWriter writer = CsvResultWriter.open(file, Arrays.asList("FileName"), false)) {
+            writer.writeRow(Arrays.asList("a.jpg"));
+        }
+        try (CsvResultWriter writer = CsvResultWriter.open(file, COLUMNS, true)) {
+            assertFalse(writer.isCompleted("a.jpg"));
+        }
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals("FileName,Text\r\n", content);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.test_ocr_sbw.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MosaicLayoutTest {
+
+    @Test
+    public void widePlatesAreStackedInRows() {
+        // Recortes de patente 300x100: en un lienzo cuadrado conviene apilarlos
+        int[] widths = {300, 300, 300, 300};
+        int[] heights = {100, 100, 100, 100};
+        MosaicLayout layout = MosaicLayout.forImages(960, 960, widths, heights, 16);
+
+        assertEquals(1, layout.getCols());
+        assertEquals(4, layout.getRows());
+        // Celdas de 960x240 menos el margen: manda el alto, 224 / 100
+        assertEquals(2.24f, layout.getScale(0), 1e-4f);
+        assertArrayEquals(new int[]{144, 248, 816, 472}, layout.getDrawRect(1));
+    }
+
+    @Test
+    public void boxesMapBackToTheirImage() {
+        int[] widths = {200, 200};
+        int[] heights = {100, 100};
+        MosaicLayout layout = MosaicLayout.forImages(400, 400, widths, heights, 0);
+        assertEquals(1, layout.getCols());
+        assertEquals(2, layout.getRows());
+        assertEquals(2f, layout.getScale(1), 0);
+
+        // Caja dentro de la segunda celda (y de 200 a 400)
+        int[] xs = {40, 360, 360, 40};
+        int[] ys = {220, 220, 380, 380};
+        assertEquals(1, layout.cellOf(xs, ys, 4));
+        assertEquals(20, layout.toSourceX(1, 40));
+        assertEquals(10, layout.toSourceY(1, 220));
+        assertEquals(180, layout.toSourceX(1, 360));
+        assertEquals(90, layout.toSourceY(1, 380));
+    }
+
+    @Test
+    public void boxesCrossingCellsOrOutsideImagesAreDropped() {
+        int[] widths = {100, 100, 100};
+        int[] heights = {100, 100, 100};
+        MosaicLayout layout = MosaicLayout.forImages(400, 400, widths, heights, 8);
+        assertEquals(2, layout.getCols());
+        assertEquals(2, layout.getRows());
+
+        assertEquals(-1, layout.cellOf(new int[]{150, 250}, new int[]{10, 10}, 2));
+        // La cuarta celda no tiene imagen
+        assertEquals(-1, layout.cellOf(new int[]{250, 300}, new int[]{250, 300}, 2));
+        assertEquals(-1, layout.cellOf(new int[]{-1, 10}, new int[]{10, 10}, 2));
+        assertEquals(2, layout.cellOf(new int[]{10, 190}, new int[]{210, 390}, 2));
+        // Las coordenadas en el margen se recortan al borde de la imagen
+        assertEquals(0, layout.toSourceX(2, 0));
+        assertEquals(100, layout.toSourceY(2, 399));
+    }
+}
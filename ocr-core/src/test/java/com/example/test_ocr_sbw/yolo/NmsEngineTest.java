@@ -0,0 +1,80 @@
+package com.example.test_ocr_sbw.yolo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NmsEngineTest {
+
+    private static List<BoundingBox> randomBoxes(long seed, int n) {
+        Random random = new Random(seed);
+        List<BoundingBox> boxes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // Cuartos de píxel en [0, 1] para que x2 - x1 == w sea exacto
+            float w = (1 + random.nextInt(40)) / 256f;
+            float h = (1 + random.nextInt(40)) / 256f;
+            float x1 = random.nextInt(256 - 40) / 256f;
+            float y1 = random.nextInt(256 - 40) / 256f;
+            // Puntajes repetidos para ejercitar los empates
+            float cnf = 0.3f + random.nextInt(50) / 100f;
+            int cls = random.nextInt(3);
+            boxes.add(new BoundingBox(x1, y1, x1 + w, y1 + h, x1 + w / 2, y1 + h / 2, w, h, cnf, cls, "c" + cls));
+        }
+        return boxes;
+    }
+
+    private static List<BoundingBox> runEngine(NmsEngine engine, List<BoundingBox> boxes) {
+        engine.clear();
+        for (BoundingBox box : boxes) {
+            engine.add(box.getX1(), box.getY1(), box.getX2(), box.getY2(), box.getCnf(), box.getCls());
+        }
+        int kept = engine.run();
+        List<BoundingBox> result = new ArrayList<>(kept);
+        for (int i = 0; i < kept; i++) {
+            result.add(boxes.get(engine.getKept(i)));
+        }
+        return result;
+    }
+
+    private static void assertSameBoxes(List<BoundingBox> expected, List<BoundingBox> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void matchesListNms() {
+        NmsEngine engine = new NmsEngine(0.5f);
+        for (long seed = 0; seed < 20; seed++) {
+            List<BoundingBox> boxes = randomBoxes(seed, 500);
+            assertSameBoxes(ListNms.apply(boxes, 0.5f), runEngine(engine, boxes));
+        }
+    }
+
+    @Test
+    public void gridMatchesLinear() {
+        NmsEngine linear = new NmsEngine(0.3f);
+        NmsEngine grid = new NmsEngine(0.3f).setGridCellSize(0.1f);
+        for (long seed = 0; seed < 20; seed++) {
+            List<BoundingBox> boxes = randomBoxes(seed, 2000);
+            assertSameBoxes(runEngine(linear, boxes), runEngine(grid, boxes));
+        }
+    }
+
+    @Test
+    public void perClassOnlySuppressesSameClass() {
+        NmsEngine engine = new NmsEngine(0.5f).setPerClass(true);
+        engine.add(0, 0, 10, 10, 0.9f, 0);
+        engine.add(0, 0, 10, 10, 0.8f, 1);
+        engine.add(1, 1, 10, 10, 0.7f, 0);
+        assertEquals(2, engine.run());
+        assertEquals(0, engine.getKept(0));
+        assertEquals(1, engine.getKept(1));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.test_ocr_sbw.yolo;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class YoloOutputDecoderTest {
+
+    private static final int CHANNELS = 4 + 6;
+    private static final int ELEMENTS = 2100;
+    private static final List<String> LABELS = Arrays.asList("A", "B", "C", "D", "E");
+
+    private static float[] randomOutput(long seed) {
+        Random random = new Random(seed);
+        float[] output = new float[CHANNELS * ELEMENTS];
+        for (int c = 0; c < ELEMENTS; c++) {
+            output[c] = random.nextFloat();
+            output[c + ELEMENTS] = random.nextFloat();
+            output[c + ELEMENTS * 2] = random.nextFloat() * 0.2f;
+            output[c + ELEMENTS * 3] = random.nextFloat() * 0.2f;
+        }
+        for (int i = ELEMENTS * 4; i < output.length; i++) {
+            output[i] = random.nextFloat() * random.nextFloat();
+        }
+        return output;
+    }
+
+    /** Recorrido por columnas del bestBox original, seguido del NMS de referencia. */
+    private static List<BoundingBox> reference(float[] array, float threshold, float iou) {
+        List<BoundingBox> boxes = new ArrayList<>();
+        for (int c = 0; c < ELEMENTS; c++) {
+            float maxConf = threshold;
+            int maxIdx = -1;
+            for (int j = 4; j < CHANNELS; j++) {
+                if (array[c + ELEMENTS * j] > maxConf) {
+                    maxConf = array[c + ELEMENTS * j];
+                    maxIdx = j - 4;
+                }
+            }
+            if (maxConf > threshold) {
+                String clsName = (maxIdx >= 0 && maxIdx < LABELS.size()) ? LABELS.get(maxIdx) : "Unknown";
+                float cx = array[c];
+                float cy = array[c + ELEMENTS];
+                float w = array[c + ELEMENTS * 2];
+                float h = array[c + ELEMENTS * 3];
+                float x1 = cx - (w / 2f);
+                float y1 = cy - (h / 2f);
+                float x2 = cx + (w / 2f);
+                float y2 = cy + (h / 2f);
+                if (x1 < 0f || x1 > 1f || y1 < 0f || y1 > 1f || x2 < 0f || x2 > 1f || y2 < 0f || y2 > 1f) {
+                    continue;
+                }
+                boxes.add(new BoundingBox(x1, y1, x2, y2, cx, cy, w, h, maxConf, maxIdx, clsName));
+            }
+        }
+        return ListNms.apply(boxes, iou);
+    }
+
+    @Test
+    public void matchesColumnWiseDecoding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            YoloOutputDecoder sequential = new YoloOutputDecoder(CHANNELS, ELEMENTS, 0.3f, 0.5f);
+            YoloOutputDecoder parallel = new YoloOutputDecoder(CHANNELS, ELEMENTS, 0.3f, 0.5f);
+            parallel.setExecutor(executor, 3);
+            for (long seed = 0; seed < 10; seed++) {
+                float[] output = randomOutput(seed);
+                List<BoundingBox> expected = reference(output, 0.3f, 0.5f);
+                assertEquals(expected, sequential.decode(FloatBuffer.wrap(output), LABELS));
+                assertEquals(expected, parallel.decode(FloatBuffer.wrap(output), LABELS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}